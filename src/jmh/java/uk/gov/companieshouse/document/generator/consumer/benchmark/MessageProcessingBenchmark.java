@@ -0,0 +1,270 @@
+package uk.gov.companieshouse.document.generator.consumer.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.companieshouse.document.generation.request.RenderSubmittedDataDocument;
+import uk.gov.companieshouse.document.generator.consumer.cache.CompletedRequestCache;
+import uk.gov.companieshouse.document.generator.consumer.configuration.KafkaConfiguration;
+import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentResponse;
+import uk.gov.companieshouse.document.generator.consumer.document.models.Links;
+import uk.gov.companieshouse.document.generator.consumer.document.service.GenerateDocument;
+import uk.gov.companieshouse.document.generator.consumer.document.service.impl.MessageServiceImpl;
+import uk.gov.companieshouse.document.generator.consumer.kafka.AvroCodecRegistry;
+import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaConsumerService;
+import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaProducerService;
+import uk.gov.companieshouse.document.generator.consumer.metrics.ConsumerProgress;
+import uk.gov.companieshouse.document.generator.consumer.metrics.DocumentGeneratorMetrics;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.AdaptivePollTimeout;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.MessageProcessorImpl;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.RetryPolicy;
+import uk.gov.companieshouse.document.generator.consumer.transformers.DocumentGenerationTransformer;
+import uk.gov.companieshouse.kafka.message.Message;
+
+/**
+ * Measures {@link MessageProcessorImpl#processKafkaMessage()} on the path a message takes through the service:
+ * deserialising the request, transforming and serialising the started and completed messages, and recording the
+ * offset. Kafka and the document generator api are replaced by in memory stand-ins that respond immediately, so the
+ * numbers are the service's own cost per message.
+ * <p>
+ * Each benchmark thread has its own consumer and message processor, as each runner does, while the codecs, message
+ * service and metrics are shared between threads as they are in the service. Run with {@code -prof gc} for the
+ * allocation per message ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageProcessingBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @State(Scope.Benchmark)
+    public static class SharedState {
+
+        private MessageServiceImpl messageService;
+
+        private AvroCodecRegistry avroCodecRegistry;
+
+        private DocumentGeneratorMetrics metrics;
+
+        private ConsumerProgress consumerProgress;
+
+        /**
+         * Holds nothing, as the same requests are processed on every invocation and would otherwise all be cache hits
+         */
+        private CompletedRequestCache completedRequestCache;
+
+        private List<byte[]> requests;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            avroCodecRegistry = new KafkaConfiguration().avroCodecRegistry("", 60000);
+            metrics = new DocumentGeneratorMetrics(new SimpleMeterRegistry());
+            consumerProgress = new ConsumerProgress(new SimpleMeterRegistry());
+            completedRequestCache = new CompletedRequestCache(0, Duration.ZERO, null, new SimpleMeterRegistry());
+
+            messageService = new MessageServiceImpl();
+            ReflectionTestUtils.setField(messageService, "avroCodecRegistry", avroCodecRegistry);
+            ReflectionTestUtils.setField(messageService, "transformer", new DocumentGenerationTransformer());
+
+            requests = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                RenderSubmittedDataDocument document = RenderSubmittedDataDocument.newBuilder()
+                        .setId("id-" + i)
+                        .setResource("/transactions/091174-913515-326060/accounts/" + i)
+                        .setContentType("application/pdf")
+                        .setDocumentType("accounts")
+                        .setUserId("1vKD26OwehmZI6MpGz9D02-dmCI")
+                        .build();
+                requests.add(avroCodecRegistry.getCodec(RenderSubmittedDataDocument.class).encode(document));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ProcessorState {
+
+        private MessageProcessorImpl messageProcessor;
+
+        private InMemoryConsumerService consumerService;
+
+        @Setup(Level.Trial)
+        public void setUp(SharedState shared) {
+            consumerService = new InMemoryConsumerService(shared.requests);
+            messageProcessor = new MessageProcessorImpl(shared.messageService, new ImmediateGenerateDocument(),
+                    consumerService, new AcknowledgingProducerService(), shared.avroCodecRegistry.getCodec(
+                            RenderSubmittedDataDocument.class),
+                    new AdaptivePollTimeout(Duration.ofMillis(1), Duration.ofMillis(1)), shared.metrics,
+                    shared.consumerProgress, RetryPolicy.noRetries(), shared.completedRequestCache);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    @Threads(1)
+    public void processMessages(ProcessorState state, Blackhole blackhole) throws InterruptedException {
+        state.messageProcessor.processKafkaMessage();
+        blackhole.consume(state.consumerService.committed);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    @Threads(4)
+    public void processMessagesFourThreads(ProcessorState state, Blackhole blackhole) throws InterruptedException {
+        state.messageProcessor.processKafkaMessage();
+        blackhole.consume(state.consumerService.committed);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    @Threads(Threads.MAX)
+    public void processMessagesAllThreads(ProcessorState state, Blackhole blackhole) throws InterruptedException {
+        state.messageProcessor.processKafkaMessage();
+        blackhole.consume(state.consumerService.committed);
+    }
+
+    /**
+     * Returns the same batch of requests on every poll, with increasing offsets
+     */
+    private static final class InMemoryConsumerService implements KafkaConsumerService {
+
+        private final List<byte[]> requests;
+
+        private long offset;
+
+        private long committed;
+
+        private InMemoryConsumerService(List<byte[]> requests) {
+            this.requests = requests;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public List<Message> consume(Duration timeout) {
+            List<Message> messages = new ArrayList<>(requests.size());
+            for (byte[] request : requests) {
+                Message message = new Message();
+                message.setTopic("render-submitted-data-document");
+                message.setPartition(0);
+                message.setOffset(offset++);
+                message.setTimestamp(System.currentTimeMillis());
+                message.setValue(request);
+                messages.add(message);
+            }
+
+            return messages;
+        }
+
+        @Override
+        public void commit(Message message) {
+            committed = message.getOffset();
+        }
+
+        @Override
+        public void pause() {
+        }
+
+        @Override
+        public void resume() {
+        }
+
+        @Override
+        public boolean isPaused() {
+            return false;
+        }
+
+        @Override
+        public Map<TopicPartition, Long> getLag() {
+            return Map.of();
+        }
+
+        @Override
+        public void wakeup() {
+        }
+
+        @Override
+        public void closeConsumer() {
+        }
+
+        @Override
+        public void setCallback(Consumer<Message> callback) {
+        }
+
+        @Override
+        public void setPartitionsRevokedCallback(Consumer<Collection<TopicPartition>> callback) {
+        }
+    }
+
+    private static final class AcknowledgingProducerService implements KafkaProducerService {
+
+        private static final CompletableFuture<RecordMetadata> ACKNOWLEDGED = CompletableFuture.completedFuture(null);
+
+        @Override
+        public CompletableFuture<RecordMetadata> send(Message kafkaMessage) {
+            return ACKNOWLEDGED;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class ImmediateGenerateDocument implements GenerateDocument {
+
+        private final ResponseEntity<GenerateDocumentResponse> response;
+
+        private ImmediateGenerateDocument() {
+            Links links = new Links();
+            links.setLocation("s3://document-generator/accounts/document.pdf");
+
+            GenerateDocumentResponse body = new GenerateDocumentResponse();
+            body.setLinks(links);
+            body.setSize("12345");
+            body.setDescription("Accounts");
+            body.setDescriptionIdentifier("accounts");
+            body.setDescriptionValues(Map.of("date", "2026-10-17"));
+
+            response = new ResponseEntity<>(body, HttpStatus.CREATED);
+        }
+
+        @Override
+        public ResponseEntity<GenerateDocumentResponse> requestGenerateDocument(
+                RenderSubmittedDataDocument renderSubmittedDataDocument) {
+            return response;
+        }
+    }
+}
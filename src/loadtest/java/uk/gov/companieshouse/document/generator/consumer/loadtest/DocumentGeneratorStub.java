@@ -0,0 +1,121 @@
+package uk.gov.companieshouse.document.generator.consumer.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for the document generator api, listening on a local port. Each request is answered after a latency
+ * drawn from a log-normal distribution, set by its median and 99th percentile, so most calls are quick with a long
+ * tail of slow ones as from the real api. A configured fraction of requests fail with {@code 500 Internal Server Error}
+ * and another fraction with {@code 429 Too Many Requests}; every other request gets a generated document.
+ */
+public class DocumentGeneratorStub implements AutoCloseable {
+
+    /**
+     * The z-score of the 99th percentile of the standard normal distribution
+     */
+    private static final double P99_Z_SCORE = 2.326;
+
+    private static final String RESPONSE_BODY = """
+            {"links":{"location":"s3://document-api-images/docs/load-test.pdf"},"size":"12345",\
+            "description":"Load test document","description_identifier":"load-test",\
+            "description_values":{"date":"2024-01-01"}}""";
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final double mu;
+
+    private final double sigma;
+
+    private final double errorRate;
+
+    private final double throttleRate;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * @param medianLatency the median time taken to answer a request
+     * @param p99Latency    the 99th percentile time taken to answer a request, at least the median
+     * @param errorRate     the fraction of requests answered with a server error
+     * @param throttleRate  the fraction of requests answered with too many requests
+     */
+    public DocumentGeneratorStub(Duration medianLatency, Duration p99Latency, double errorRate, double throttleRate)
+            throws IOException {
+        if (p99Latency.compareTo(medianLatency) < 0 || errorRate + throttleRate > 1.0) {
+            throw new IllegalArgumentException("Stub p99 latency must be at least its median, and its error and"
+                    + " throttle rates no more than 1 together");
+        }
+
+        double medianMillis = Math.max(medianLatency.toNanos() / 1e6, 0.001);
+        this.mu = Math.log(medianMillis);
+        this.sigma = Math.log(Math.max(p99Latency.toNanos() / 1e6, medianMillis) / medianMillis) / P99_Z_SCORE;
+        this.errorRate = errorRate;
+        this.throttleRate = throttleRate;
+
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return the root uri of the stub, to be used as the document generator api root uri
+     */
+    public String getRootUri() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange; InputStream body = exchange.getRequestBody()) {
+            body.transferTo(OutputStream.nullOutputStream());
+            requests.incrementAndGet();
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Thread.sleep(Math.round(Math.exp(mu + sigma * random.nextGaussian())));
+
+            double outcome = random.nextDouble();
+            if (outcome < errorRate) {
+                errors.incrementAndGet();
+                exchange.sendResponseHeaders(500, -1);
+            } else if (outcome < errorRate + throttleRate) {
+                errors.incrementAndGet();
+                exchange.sendResponseHeaders(429, -1);
+            } else {
+                byte[] response = RESPONSE_BODY.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(201, response.length);
+                exchange.getResponseBody().write(response);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
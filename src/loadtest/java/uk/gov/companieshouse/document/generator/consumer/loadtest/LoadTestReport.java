@@ -0,0 +1,126 @@
+package uk.gov.companieshouse.document.generator.consumer.loadtest;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The results of a load test run: how many requests finished and how, how fast, and how far the service's consumer
+ * group fell behind on the broker.
+ */
+public class LoadTestReport {
+
+    private final int messages;
+
+    private final int completed;
+
+    private final int failed;
+
+    private final Duration elapsed;
+
+    /**
+     * The end to end latencies of the finished requests in nanoseconds, in ascending order
+     */
+    private final long[] latencies;
+
+    private final long maxLag;
+
+    private final long finalLag;
+
+    private final long stubRequests;
+
+    private final long stubErrors;
+
+    /**
+     * @param messages     the number of requests produced
+     * @param completed    the number of requests that completed
+     * @param failed       the number of requests that failed
+     * @param elapsed      the time from the first request being produced to the last one finishing
+     * @param latencies    the end to end latency of each finished request in nanoseconds
+     * @param maxLag       the most requests waiting on the broker at any sample
+     * @param finalLag     the requests left waiting on the broker once all had finished
+     * @param stubRequests the number of calls made to the document generator api stub
+     * @param stubErrors   the number of those calls the stub failed
+     */
+    public LoadTestReport(int messages, int completed, int failed, Duration elapsed, Collection<Long> latencies,
+                          long maxLag, long finalLag, long stubRequests, long stubErrors) {
+        this.messages = messages;
+        this.completed = completed;
+        this.failed = failed;
+        this.elapsed = elapsed;
+        this.latencies = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        this.maxLag = maxLag;
+        this.finalLag = finalLag;
+        this.stubRequests = stubRequests;
+        this.stubErrors = stubErrors;
+    }
+
+    /**
+     * @return the finished requests per second, 0 if none finished
+     */
+    public double getThroughput() {
+        if (completed + failed == 0 || elapsed.isNegative() || elapsed.isZero()) {
+            return 0;
+        }
+
+        return (completed + failed) / (elapsed.toNanos() / 1e9);
+    }
+
+    /**
+     * @return the fraction of finished requests that failed, 0 if none finished
+     */
+    public double getFailureRate() {
+        return completed + failed == 0 ? 0 : (double) failed / (completed + failed);
+    }
+
+    /**
+     * @param percentile the percentile, from 0 to 1
+     * @return the nearest rank latency at the percentile, zero if no requests finished
+     */
+    public Duration getLatencyPercentile(double percentile) {
+        if (latencies.length == 0) {
+            return Duration.ZERO;
+        }
+
+        int rank = (int) Math.ceil(percentile * latencies.length);
+        return Duration.ofNanos(latencies[Math.clamp(rank - 1, 0, latencies.length - 1)]);
+    }
+
+    public long getMaxLag() {
+        return maxLag;
+    }
+
+    public long getFinalLag() {
+        return finalLag;
+    }
+
+    /**
+     * @return the report as text, with the service configuration it was run with
+     */
+    public String format(int partitions, int concurrency, boolean asyncProcessing) {
+        return String.join(System.lineSeparator(),
+                "",
+                "Load test: %d requests over %d partitions, %d consumers, async processing %s"
+                        .formatted(messages, partitions, concurrency, asyncProcessing),
+                "  throughput       : %.1f requests/s over %.1f s"
+                        .formatted(getThroughput(), elapsed.toMillis() / 1000.0),
+                "  finished         : %d completed, %d failed (%.2f%%), %d unfinished"
+                        .formatted(completed, failed, getFailureRate() * 100, messages - completed - failed),
+                "  latency (ms)     : p50 %d, p90 %d, p95 %d, p99 %d, max %d"
+                        .formatted(millis(0.50), millis(0.90), millis(0.95), millis(0.99), millis(1.0)),
+                "  consumer lag     : max %d, final %d".formatted(maxLag, finalLag),
+                "  api stub         : %d calls, %d failed".formatted(stubRequests, stubErrors),
+                "");
+    }
+
+    private long millis(double percentile) {
+        return getLatencyPercentile(percentile).toMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "LoadTestReport{messages=" + messages + ", completed=" + completed + ", failed=" + failed
+                + ", elapsed=" + elapsed + ", p99=" + getLatencyPercentile(0.99) + ", maxLag=" + maxLag
+                + ", finalLag=" + finalLag + "}";
+    }
+}
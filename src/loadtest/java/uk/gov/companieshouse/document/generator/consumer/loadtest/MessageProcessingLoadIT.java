@@ -0,0 +1,464 @@
+package uk.gov.companieshouse.document.generator.consumer.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import uk.gov.companieshouse.document.generation.request.RenderSubmittedDataDocument;
+import uk.gov.companieshouse.document.generation.status.DocumentGenerationCompleted;
+import uk.gov.companieshouse.document.generation.status.DocumentGenerationFailed;
+import uk.gov.companieshouse.document.generation.status.DocumentGenerationStarted;
+import uk.gov.companieshouse.document.generator.consumer.kafka.AvroCodecRegistry;
+import uk.gov.companieshouse.kafka.exceptions.DeserializationException;
+
+/**
+ * Drives a burst of requests through the whole service, from the request topic through to the status topics, against
+ * an embedded Kafka broker and a {@link DocumentGeneratorStub} in place of the document generator api. It reports the
+ * sustained throughput, the end to end latency percentiles from each request being produced to its completed or
+ * failed message being consumed, and the lag of the service's consumer group on the broker, and fails when any of them
+ * is outside its threshold.
+ * <p>
+ * The load, the stub and the thresholds are set with system properties, passed as {@code -D} options to maven:
+ * <ul>
+ * <li>{@code loadtest.messages}, the number of requests (5000), produced at up to {@code loadtest.rate} requests per
+ * second (0, as fast as possible), waiting up to {@code loadtest.timeout-seconds} (300) for them all to finish</li>
+ * <li>{@code loadtest.stub.median-latency-ms} (50) and {@code loadtest.stub.p99-latency-ms} (500), the latency
+ * distribution of the stub, and {@code loadtest.stub.error-rate} (0.01) and {@code loadtest.stub.throttle-rate} (0),
+ * the fractions of calls it fails</li>
+ * <li>{@code loadtest.min-throughput} (100 requests per second), {@code loadtest.max-p99-latency-ms} (5000),
+ * {@code loadtest.max-failure-rate} (0.01) and {@code loadtest.max-final-lag} (0), the thresholds</li>
+ * </ul>
+ * The service itself is configured by its usual variables, such as {@code -DASYNC_PROCESSING=true}.
+ */
+@SpringBootTest(properties = "logging.level.document-generator-consumer=${loadtest.log-level:WARN}")
+@EmbeddedKafka(
+        partitions = MessageProcessingLoadIT.PARTITIONS,
+        topics = {MessageProcessingLoadIT.REQUEST_TOPIC, MessageProcessingLoadIT.STARTED_TOPIC,
+                MessageProcessingLoadIT.COMPLETED_TOPIC, MessageProcessingLoadIT.FAILED_TOPIC},
+        bootstrapServersProperty = "spring.kafka.bootstrap-servers"
+)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+@ActiveProfiles("test")
+class MessageProcessingLoadIT {
+
+    static final int PARTITIONS = 6;
+
+    static final String REQUEST_TOPIC = "render-submitted-data-document";
+
+    static final String STARTED_TOPIC = "document-generation-started";
+
+    static final String COMPLETED_TOPIC = "document-generation-completed";
+
+    static final String FAILED_TOPIC = "document-generation-failed";
+
+    private static final String WARM_UP_ID = "warm-up-";
+
+    private static final Duration WARM_UP_TIMEOUT = Duration.ofSeconds(60);
+
+    private static final Duration FINAL_LAG_TIMEOUT = Duration.ofSeconds(15);
+
+    private static final Path REPORT_FILE = Path.of("target", "load-test-report.txt");
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageProcessingLoadIT.class);
+
+    private static DocumentGeneratorStub stub;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private AvroCodecRegistry avroCodecRegistry;
+
+    @Value("${spring.kafka.consumer.groupId}")
+    private String groupId;
+
+    @Value("${spring.kafka.consumer.concurrency:1}")
+    private int concurrency;
+
+    @Value("${spring.kafka.consumer.async-processing:false}")
+    private boolean asyncProcessing;
+
+    private final List<TopicPartition> requestPartitions = IntStream.range(0, PARTITIONS)
+            .mapToObj(partition -> new TopicPartition(REQUEST_TOPIC, partition))
+            .toList();
+
+    @DynamicPropertySource
+    static void documentGeneratorStub(DynamicPropertyRegistry registry) {
+        try {
+            stub = new DocumentGeneratorStub(
+                    Duration.ofMillis(Long.getLong("loadtest.stub.median-latency-ms", 50)),
+                    Duration.ofMillis(Long.getLong("loadtest.stub.p99-latency-ms", 500)),
+                    doubleProperty("loadtest.stub.error-rate", 0.01),
+                    doubleProperty("loadtest.stub.throttle-rate", 0.0));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        registry.add("documentgeneration.rootUri", stub::getRootUri);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @Test
+    void sustainsThroughputAndLatencyWithinThresholds() throws Exception {
+        int messages = Integer.getInteger("loadtest.messages", 5000);
+        int rate = Integer.getInteger("loadtest.rate", 0);
+        Duration timeout = Duration.ofSeconds(Long.getLong("loadtest.timeout-seconds", 300));
+
+        try (Producer<String, byte[]> producer = createProducer();
+             Admin admin = Admin.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG,
+                     broker.getBrokersAsString()))) {
+
+            StatusCollector collector = new StatusCollector(createStatusConsumer());
+            Thread collectorThread = Thread.ofPlatform().name("load-test-status-collector").start(collector);
+
+            ScheduledExecutorService lagSampler = Executors.newSingleThreadScheduledExecutor();
+            AtomicLong maxLag = new AtomicLong();
+            try {
+                warmUp(producer, collector);
+
+                lagSampler.scheduleAtFixedRate(() -> maxLag.accumulateAndGet(lag(admin), Math::max),
+                        0, 500, TimeUnit.MILLISECONDS);
+
+                long start = System.nanoTime();
+                produce(producer, collector, messages, rate, start);
+                boolean finished = collector.awaitFinished(messages, timeout);
+                long finishedAt = collector.getLastFinishedAt();
+
+                lagSampler.shutdownNow();
+                long finalLag = awaitFinalLag(admin);
+
+                collector.stop();
+                collectorThread.join();
+
+                LoadTestReport report = new LoadTestReport(messages, collector.getCompleted(),
+                        collector.getFailed(), Duration.ofNanos(finishedAt - start), collector.getLatencies(),
+                        maxLag.get(), finalLag, stub.getRequests(), stub.getErrors());
+                writeReport(report.format(PARTITIONS, concurrency, asyncProcessing));
+
+                assertTrue(finished, "Only " + (collector.getCompleted() + collector.getFailed()) + " of "
+                        + messages + " requests finished within " + timeout.toSeconds() + " seconds");
+                assertTrue(report.getThroughput() >= doubleProperty("loadtest.min-throughput", 100),
+                        "Throughput below threshold");
+                assertTrue(report.getLatencyPercentile(0.99).toMillis()
+                        <= Long.getLong("loadtest.max-p99-latency-ms", 5000), "p99 latency above threshold");
+                assertTrue(report.getFailureRate() <= doubleProperty("loadtest.max-failure-rate", 0.01),
+                        "Failure rate above threshold");
+                assertTrue(finalLag <= Long.getLong("loadtest.max-final-lag", 0), "Consumer lag left behind");
+            } finally {
+                lagSampler.shutdownNow();
+                collector.stop();
+            }
+        }
+    }
+
+    /**
+     * Log the report, which isn't hidden with the service's logging, and keep a copy in the build directory, so the
+     * results of the last run can be looked at or archived once the build has finished
+     */
+    private void writeReport(String report) throws IOException {
+        LOG.info(report);
+        Files.createDirectories(REPORT_FILE.getParent());
+        Files.writeString(REPORT_FILE, report);
+    }
+
+    /**
+     * Send a request to each partition, again every few seconds, until the started message for each has been seen.
+     * The service's consumers start from the latest offset once assigned, so this is how the test knows every
+     * partition is being consumed before the timed requests are produced.
+     */
+    private void warmUp(Producer<String, byte[]> producer, StatusCollector collector) throws Exception {
+        long deadline = System.nanoTime() + WARM_UP_TIMEOUT.toNanos();
+        while (collector.getWarmedUpPartitions().size() < PARTITIONS) {
+            if (System.nanoTime() > deadline) {
+                fail("Service did not consume from every partition within " + WARM_UP_TIMEOUT.toSeconds()
+                        + " seconds, only from " + collector.getWarmedUpPartitions());
+            }
+            for (TopicPartition partition : requestPartitions) {
+                if (!collector.getWarmedUpPartitions().contains(partition.partition())) {
+                    producer.send(new ProducerRecord<>(REQUEST_TOPIC, partition.partition(), null,
+                            encodeRequest(WARM_UP_ID + partition.partition())));
+                }
+            }
+            producer.flush();
+            Thread.sleep(2000);
+        }
+    }
+
+    /**
+     * Produce the requests, spread evenly over time at the given rate, or as fast as possible if the rate is 0. Each
+     * request's send time is recorded before it is sent.
+     */
+    private void produce(Producer<String, byte[]> producer, StatusCollector collector, int messages, int rate,
+                         long start) throws Exception {
+        for (int i = 0; i < messages; i++) {
+            if (rate > 0) {
+                long due = start + TimeUnit.SECONDS.toNanos(i) / rate;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+
+            String id = "load-test-" + i;
+            byte[] request = encodeRequest(id);
+            collector.sent(id);
+            producer.send(new ProducerRecord<>(REQUEST_TOPIC, id, request));
+        }
+        producer.flush();
+    }
+
+    /**
+     * Each request has its own resource, so no two are coalesced into one document generator api call
+     */
+    private byte[] encodeRequest(String id) throws Exception {
+        return avroCodecRegistry.getCodec(RenderSubmittedDataDocument.class).encode(
+                RenderSubmittedDataDocument.newBuilder()
+                        .setId(id)
+                        .setResource("/transactions/load-test/resources/" + id)
+                        .setContentType("application/pdf")
+                        .setDocumentType("accounts")
+                        .setUserId("load-test-user")
+                        .build());
+    }
+
+    /**
+     * Wait for the service to commit the offsets of the requests it has finished, up to a few commit intervals
+     *
+     * @return the lag left on the broker
+     */
+    private long awaitFinalLag(Admin admin) throws InterruptedException {
+        long deadline = System.nanoTime() + FINAL_LAG_TIMEOUT.toNanos();
+        long lag = lag(admin);
+        while (lag > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(500);
+            lag = lag(admin);
+        }
+
+        return lag;
+    }
+
+    /**
+     * @return the number of requests on the broker past the offsets committed by the service's consumer group
+     */
+    private long lag(Admin admin) {
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(groupId)
+                    .partitionsToOffsetAndMetadata().get();
+            Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+            requestPartitions.forEach(partition -> latest.put(partition, OffsetSpec.latest()));
+            ListOffsetsResult endOffsets = admin.listOffsets(latest);
+
+            long lag = 0;
+            for (TopicPartition partition : requestPartitions) {
+                OffsetAndMetadata committedOffset = committed.get(partition);
+                lag += endOffsets.partitionResult(partition).get().offset()
+                        - (committedOffset == null ? 0 : committedOffset.offset());
+            }
+            return lag;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to read consumer group lag", e);
+        }
+    }
+
+    private Producer<String, byte[]> createProducer() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        properties.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+
+        return new KafkaProducer<>(properties, new StringSerializer(), new ByteArraySerializer());
+    }
+
+    private Consumer<String, byte[]> createStatusConsumer() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+
+        Consumer<String, byte[]> consumer = new KafkaConsumer<>(properties, new StringDeserializer(),
+                new ByteArrayDeserializer());
+        List<TopicPartition> statusPartitions = new ArrayList<>();
+        for (String topic : List.of(STARTED_TOPIC, COMPLETED_TOPIC, FAILED_TOPIC)) {
+            consumer.partitionsFor(topic).forEach(info -> statusPartitions.add(
+                    new TopicPartition(topic, info.partition())));
+        }
+        consumer.assign(statusPartitions);
+        consumer.seekToBeginning(statusPartitions);
+
+        return consumer;
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value == null || value.isBlank() ? defaultValue : Double.parseDouble(value);
+    }
+
+    /**
+     * Consumes the status topics on its own thread, recording which partitions have been warmed up and when each
+     * timed request finished.
+     */
+    private final class StatusCollector implements Runnable {
+
+        private final Consumer<String, byte[]> consumer;
+
+        private final Map<String, Long> sentAt = new ConcurrentHashMap<>();
+
+        private final Set<Integer> warmedUpPartitions = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Written by the collector thread only, and read by the test once that thread has finished
+         */
+        private final List<Long> latencies = new ArrayList<>();
+
+        private final AtomicInteger completed = new AtomicInteger();
+
+        private final AtomicInteger failed = new AtomicInteger();
+
+        private volatile long lastFinishedAt;
+
+        private volatile boolean stopped;
+
+        private StatusCollector(Consumer<String, byte[]> consumer) {
+            this.consumer = consumer;
+        }
+
+        void sent(String id) {
+            sentAt.put(id, System.nanoTime());
+        }
+
+        @Override
+        public void run() {
+            try (consumer) {
+                while (!stopped) {
+                    for (ConsumerRecord<String, byte[]> record : consumer.poll(Duration.ofMillis(100))) {
+                        onStatus(record);
+                    }
+                }
+            }
+        }
+
+        private void onStatus(ConsumerRecord<String, byte[]> record) {
+            try {
+                switch (record.topic()) {
+                    case STARTED_TOPIC -> {
+                        String id = avroCodecRegistry.getCodec(DocumentGenerationStarted.class)
+                                .decode(record.value()).getId();
+                        if (id.startsWith(WARM_UP_ID)) {
+                            warmedUpPartitions.add(Integer.parseInt(id.substring(WARM_UP_ID.length())));
+                        }
+                    }
+                    case COMPLETED_TOPIC -> finished(avroCodecRegistry.getCodec(DocumentGenerationCompleted.class)
+                            .decode(record.value()).getId(), completed);
+                    case FAILED_TOPIC -> finished(avroCodecRegistry.getCodec(DocumentGenerationFailed.class)
+                            .decode(record.value()).getId(), failed);
+                    default -> {
+                    }
+                }
+            } catch (DeserializationException e) {
+                throw new IllegalStateException("Unreadable status message on " + record.topic(), e);
+            }
+        }
+
+        /**
+         * Record a timed request finishing, once only even if its status message is sent again on redelivery
+         */
+        private void finished(String id, AtomicInteger outcome) {
+            Long sent = sentAt.remove(id);
+            if (sent != null) {
+                long now = System.nanoTime();
+                latencies.add(now - sent);
+                lastFinishedAt = now;
+                outcome.incrementAndGet();
+            }
+        }
+
+        boolean awaitFinished(int messages, Duration timeout) throws InterruptedException {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            while (completed.get() + failed.get() < messages) {
+                if (System.nanoTime() > deadline) {
+                    return false;
+                }
+                Thread.sleep(100);
+            }
+
+            return true;
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        Set<Integer> getWarmedUpPartitions() {
+            return warmedUpPartitions;
+        }
+
+        int getCompleted() {
+            return completed.get();
+        }
+
+        int getFailed() {
+            return failed.get();
+        }
+
+        long getLastFinishedAt() {
+            return lastFinishedAt;
+        }
+
+        List<Long> getLatencies() {
+            return latencies;
+        }
+    }
+}
@@ -1,20 +1,21 @@
 package uk.gov.companieshouse.document.generator.consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import uk.gov.companieshouse.document.generator.consumer.interceptor.LoggingInterceptor;
-import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaConsumerService;
 import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaProducerService;
-import uk.gov.companieshouse.document.generator.consumer.processor.MessageProcessorRunner;
+import uk.gov.companieshouse.document.generator.consumer.processor.MessageProcessorRunnerGroup;
 import uk.gov.companieshouse.environment.EnvironmentReader;
 import uk.gov.companieshouse.environment.impl.EnvironmentReaderImpl;
 import uk.gov.companieshouse.logging.Logger;
 import uk.gov.companieshouse.logging.LoggerFactory;
 
 import jakarta.annotation.PreDestroy;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -39,14 +40,14 @@ public class DocumentGeneratorConsumerApplication implements WebMvcConfigurer {
     private LoggingInterceptor loggingInterceptor;
 
     @Autowired
-    private MessageProcessorRunner messageProcessorRunner;
-
-    @Autowired
-    private KafkaConsumerService kafkaConsumerService;
+    private MessageProcessorRunnerGroup messageProcessorRunnerGroup;
 
     @Autowired
     private KafkaProducerService kafkaProducerService;
 
+    @Value("${spring.kafka.consumer.shutdown-timeout-ms:20000}")
+    private long shutdownTimeoutMillis;
+
     private static EnvironmentReader reader;
 
     public static void main(String[] args) {
@@ -106,29 +107,28 @@ public class DocumentGeneratorConsumerApplication implements WebMvcConfigurer {
 
     /**
      * Called when application shutdown is requested to ensure that the current processes are completed before exit.
+     * Polling stops straight away and messages being processed are given up to the shutdown timeout to complete.
      */
     @PreDestroy
     public void onExit() {
 
-        LOGGER.info("Setting active flag in " + messageProcessorRunner.getClass() + " to trigger a graceful shutdown");
-        messageProcessorRunner.setActive(false);
-
-        while(messageProcessorRunner.isProcessing()) {
-            LOGGER.info("Waiting for current processing to complete before shutting down...");
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                Map<String, Object> data = new HashMap<>();
-                data.put("message", "InterruptionException");
+        LOGGER.info("Stopping " + messageProcessorRunnerGroup.getRunners().size() + " message processor runner(s),"
+                + " waiting up to " + shutdownTimeoutMillis + " ms for current processing to complete");
 
-                LOGGER.error(e, data);
-                Thread.currentThread().interrupt();
+        // Each runner commits its offsets and closes its own consumer connection once its processing is complete
+        try {
+            if (messageProcessorRunnerGroup.shutdown(Duration.ofMillis(shutdownTimeoutMillis))) {
+                LOGGER.info("Finished closing Document Generator Consumer message processors");
+            } else {
+                LOGGER.error("Document Generator Consumer message processors did not close within the shutdown timeout");
             }
-        }
-        LOGGER.info("Finished closing Document Generator Consumer message processor");
+        } catch (InterruptedException e) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("message", "InterruptionException");
 
-        LOGGER.info("Proceed to close consumer connection");
-        kafkaConsumerService.closeConsumer();
+            LOGGER.error(e, data);
+            Thread.currentThread().interrupt();
+        }
 
         LOGGER.info("Proceed to close producer connection");
         kafkaProducerService.close();
@@ -0,0 +1,346 @@
+package uk.gov.companieshouse.document.generator.consumer.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
+import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentResponse;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * The responses to recently completed requests, by request id, so a request that is delivered again after a rebalance
+ * or restart can have its completed message sent again without regenerating the document.
+ * <p>
+ * Up to the maximum entries are held in memory, oldest first, and each expires once the time to live has passed since
+ * its request completed. When a file is configured every completed request is also appended to it, one JSON object per
+ * line, and the file is read back on start up so the cache survives a restart. The file is rewritten with only the live
+ * entries on start up and whenever it has grown to twice the maximum entries. If the file can't be written the cache
+ * carries on in memory only.
+ * <p>
+ * The file is written by a background thread, in batches flushed once each, so threads completing requests never wait
+ * on the disk and the lock guarding the entries in memory is never held for I/O. A completed request still waiting to be
+ * written when the service stops, or when too many are waiting, is only lost from the file, at worst leaving its
+ * document to be generated again.
+ */
+public class CompletedRequestCache implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
+
+    public static final String LOOKUP_METRIC = "document.generator.completed.cache";
+
+    public static final String SIZE_METRIC = "document.generator.completed.cache.size";
+
+    private static final int MAX_PENDING_WRITES = 10000;
+
+    private static final int WRITE_BATCH_SIZE = 500;
+
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final int maxEntries;
+
+    private final long timeToLiveMillis;
+
+    private final Path file;
+
+    private final Clock clock;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    /**
+     * Completed requests waiting to be appended to the file by the writer thread
+     */
+    private final BlockingQueue<Entry> pendingWrites = new LinkedBlockingQueue<>(MAX_PENDING_WRITES);
+
+    private final Thread writerThread;
+
+    private volatile boolean closed;
+
+    /**
+     * Only used while loading the file and then by the writer thread
+     */
+    private BufferedWriter writer;
+
+    private int linesWritten;
+
+    /**
+     * @param maxEntries the most completed requests to remember, none if 0
+     * @param timeToLive how long a completed request is remembered for
+     * @param file the file the cache is kept in across restarts, or null to only keep it in memory
+     */
+    public CompletedRequestCache(int maxEntries, Duration timeToLive, Path file, MeterRegistry meterRegistry) {
+        this(maxEntries, timeToLive, file, meterRegistry, Clock.systemUTC());
+    }
+
+    CompletedRequestCache(int maxEntries, Duration timeToLive, Path file, MeterRegistry meterRegistry, Clock clock) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Maximum entries must not be negative but was " + maxEntries);
+        }
+
+        this.maxEntries = maxEntries;
+        this.timeToLiveMillis = timeToLive.toMillis();
+        this.file = maxEntries > 0 ? file : null;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CompletedRequestCache.this.maxEntries;
+            }
+        };
+
+        this.hits = Counter.builder(LOOKUP_METRIC)
+                .description("Requests looked up in the cache of completed requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder(LOOKUP_METRIC)
+                .description("Requests looked up in the cache of completed requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder(SIZE_METRIC, this, CompletedRequestCache::size)
+                .description("Completed requests held in the cache")
+                .register(meterRegistry);
+
+        if (this.file != null) {
+            load();
+            this.writerThread = Thread.ofPlatform().daemon().name("completed-request-cache-writer")
+                    .start(this::writeEntries);
+        } else {
+            this.writerThread = null;
+        }
+    }
+
+    /**
+     * @return the response to the request with the id, if it completed within the time to live
+     */
+    public Optional<GenerateDocumentResponse> get(String requestId) {
+        if (maxEntries == 0 || requestId == null) {
+            return Optional.empty();
+        }
+
+        lock.lock();
+        try {
+            Entry entry = entries.get(requestId);
+            if (entry != null && isExpired(entry, clock.millis())) {
+                entries.remove(requestId);
+                entry = null;
+            }
+
+            (entry == null ? misses : hits).increment();
+            return entry == null ? Optional.empty() : Optional.of(entry.response());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remember the response to a completed request
+     */
+    public void put(String requestId, GenerateDocumentResponse response) {
+        if (maxEntries == 0 || requestId == null || response == null) {
+            return;
+        }
+
+        Entry entry = new Entry(requestId, clock.millis(), response);
+
+        lock.lock();
+        try {
+            // Re-inserting moves the request to the back of the eviction order
+            entries.remove(requestId);
+            entries.put(requestId, entry);
+        } finally {
+            lock.unlock();
+        }
+
+        if (writerThread != null && !closed && !pendingWrites.offer(entry)) {
+            LOG.debug("Too many completed requests waiting to be written to " + file + ", not writing " + requestId);
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the completed requests still waiting to the file, waiting a few seconds at most, and close it
+     */
+    @Override
+    public void close() {
+        if (writerThread == null || closed) {
+            return;
+        }
+
+        closed = true;
+        try {
+            if (!writerThread.join(Duration.ofMillis(CLOSE_TIMEOUT_MILLIS))) {
+                LOG.error("Timed out writing completed requests to " + file);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.completedAt() >= timeToLiveMillis;
+    }
+
+    /**
+     * Read the live entries back from the file, then rewrite it with only those entries
+     */
+    private void load() {
+        long now = clock.millis();
+
+        if (Files.exists(file)) {
+            try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+                lines.forEach(line -> {
+                    try {
+                        Entry entry = objectMapper.readValue(line, Entry.class);
+                        if (entry.requestId() != null && !isExpired(entry, now)) {
+                            entries.remove(entry.requestId());
+                            entries.put(entry.requestId(), entry);
+                        }
+                    } catch (IOException e) {
+                        LOG.debug("Skipping unreadable line in completed request cache file " + file);
+                    }
+                });
+            } catch (IOException | UncheckedIOException e) {
+                LOG.error("Unable to read completed request cache file " + file + ": " + e.getMessage());
+            }
+        }
+
+        LOG.info("Loaded " + entries.size() + " completed request(s) from " + file);
+        compact();
+    }
+
+    /**
+     * Run by the writer thread, appending the completed requests to the file in batches until the cache is closed and
+     * none are left waiting
+     */
+    private void writeEntries() {
+        List<Entry> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        try {
+            while (!closed || !pendingWrites.isEmpty()) {
+                Entry entry = pendingWrites.poll(100, TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    continue;
+                }
+
+                batch.add(entry);
+                pendingWrites.drainTo(batch, WRITE_BATCH_SIZE - 1);
+                if (writer != null) {
+                    append(batch);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeWriter();
+        }
+    }
+
+    private void append(List<Entry> batch) {
+        try {
+            for (Entry entry : batch) {
+                writer.write(objectMapper.writeValueAsString(entry));
+                writer.newLine();
+            }
+            writer.flush();
+
+            linesWritten += batch.size();
+            if (linesWritten >= maxEntries * 2) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to write completed request cache file " + file + ", carrying on in memory only: "
+                    + e.getMessage());
+            closeWriter();
+        }
+    }
+
+    /**
+     * Replace the file with one holding only the entries in memory, then carry on appending to it. The entries are
+     * copied under the lock and written without it.
+     */
+    private void compact() {
+        closeWriter();
+
+        List<Entry> live;
+        lock.lock();
+        try {
+            live = List.copyOf(entries.values());
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+
+            Path compacted = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (BufferedWriter out = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+                for (Entry entry : live) {
+                    out.write(objectMapper.writeValueAsString(entry));
+                    out.newLine();
+                }
+            }
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            linesWritten = live.size();
+        } catch (IOException e) {
+            LOG.error("Unable to write completed request cache file " + file + ", carrying on in memory only: "
+                    + e.getMessage());
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+
+        try {
+            writer.close();
+        } catch (IOException e) {
+            LOG.error("Unable to close completed request cache file " + file + ": " + e.getMessage());
+        }
+        writer = null;
+    }
+
+    record Entry(String requestId, long completedAt, GenerateDocumentResponse response) {
+    }
+}
@@ -0,0 +1,214 @@
+package uk.gov.companieshouse.document.generator.consumer.coalescer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import org.springframework.http.ResponseEntity;
+import uk.gov.companieshouse.document.generation.request.RenderSubmittedDataDocument;
+import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentResponse;
+import uk.gov.companieshouse.document.generator.consumer.exception.GenerateDocumentException;
+
+/**
+ * Coalesces identical requests to the document generator api, those for the same resource, content type and document
+ * type, so only one is made at a time.
+ * <p>
+ * The first request for a key makes the call. Requests for the same key made while it is in flight wait for it and are
+ * given its response, and, for the reuse period after it succeeds, are given the response without waiting. A failure
+ * is passed to the requests waiting on the call but isn't reused, so the next request makes a new call.
+ * <p>
+ * The requests that joined a call in flight and those that reused a completed one are published as metrics.
+ */
+public class RequestCoalescer {
+
+    public static final String COALESCED_METRIC = "document.generator.coalesced";
+
+    private final boolean enabled;
+
+    private final long reuseNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<RequestKey, Call> calls = new HashMap<>();
+
+    private final Counter joined;
+
+    private final Counter reused;
+
+    /**
+     * @param enabled whether identical requests are coalesced, or every request makes its own call
+     * @param reuseFor how long the response to a call is given to identical requests after it succeeds
+     */
+    public RequestCoalescer(boolean enabled, Duration reuseFor, MeterRegistry meterRegistry) {
+        this(enabled, reuseFor, meterRegistry, System::nanoTime);
+    }
+
+    RequestCoalescer(boolean enabled, Duration reuseFor, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        if (reuseFor.isNegative()) {
+            throw new IllegalArgumentException("Reuse period must not be negative but was " + reuseFor);
+        }
+
+        this.enabled = enabled;
+        this.reuseNanos = reuseFor.toNanos();
+        this.nanoClock = nanoClock;
+
+        this.joined = Counter.builder(COALESCED_METRIC)
+                .description("Document generator api requests given the response to an identical request")
+                .tag("result", "joined")
+                .register(meterRegistry);
+        this.reused = Counter.builder(COALESCED_METRIC)
+                .description("Document generator api requests given the response to an identical request")
+                .tag("result", "reused")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Make the api call for the request, unless an identical one is in flight or recently succeeded, in which case
+     * its response is returned instead.
+     */
+    public ResponseEntity<GenerateDocumentResponse> execute(RenderSubmittedDataDocument renderSubmittedDataDocument,
+            ApiCall apiCall) throws GenerateDocumentException {
+
+        if (!enabled) {
+            return apiCall.call();
+        }
+
+        RequestKey key = RequestKey.of(renderSubmittedDataDocument);
+        Call call;
+        boolean leader;
+
+        lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            call = calls.get(key);
+            if (call != null && call.isExpired(now)) {
+                calls.remove(key);
+                call = null;
+            }
+
+            leader = call == null;
+            if (leader) {
+                // The map only holds calls in flight and those within the reuse period, so it stays small
+                calls.values().removeIf(expired -> expired.isExpired(now));
+                call = new Call();
+                calls.put(key, call);
+            } else {
+                (call.isCompleted() ? reused : joined).increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return leader ? lead(key, call, apiCall) : await(call);
+    }
+
+    /**
+     * @return the number of calls in flight or within their reuse period
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return calls.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ResponseEntity<GenerateDocumentResponse> lead(RequestKey key, Call call, ApiCall apiCall)
+            throws GenerateDocumentException {
+
+        ResponseEntity<GenerateDocumentResponse> response;
+        try {
+            response = apiCall.call();
+        } catch (GenerateDocumentException | RuntimeException | Error e) {
+            forget(key, call);
+            call.result.completeExceptionally(e);
+            throw e;
+        }
+
+        lock.lock();
+        try {
+            call.completed = true;
+            call.completedAt = nanoClock.getAsLong();
+            if (reuseNanos == 0) {
+                calls.remove(key, call);
+            }
+        } finally {
+            lock.unlock();
+        }
+        call.result.complete(response);
+
+        return response;
+    }
+
+    private ResponseEntity<GenerateDocumentResponse> await(Call call) throws GenerateDocumentException {
+        try {
+            return call.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GenerateDocumentException("Interrupted while waiting for an identical request to the document" +
+                    " generator api", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            boolean retryable = cause instanceof GenerateDocumentException gde && gde.isRetryable();
+            throw new GenerateDocumentException("An identical request to the document generator api failed", cause,
+                    retryable);
+        }
+    }
+
+    private void forget(RequestKey key, Call call) {
+        lock.lock();
+        try {
+            calls.remove(key, call);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The api call being coalesced
+     */
+    @FunctionalInterface
+    public interface ApiCall {
+
+        ResponseEntity<GenerateDocumentResponse> call() throws GenerateDocumentException;
+    }
+
+    /**
+     * The fields of a request that make up the body sent to the document generator api
+     */
+    private record RequestKey(String resource, String contentType, String documentType) {
+
+        static RequestKey of(RenderSubmittedDataDocument renderSubmittedDataDocument) {
+            return new RequestKey(renderSubmittedDataDocument.getResource(),
+                    renderSubmittedDataDocument.getContentType(), renderSubmittedDataDocument.getDocumentType());
+        }
+    }
+
+    private class Call {
+
+        private final CompletableFuture<ResponseEntity<GenerateDocumentResponse>> result = new CompletableFuture<>();
+
+        /**
+         * Whether the call succeeded, and the nano time it did. Only read and written holding the lock.
+         */
+        private boolean completed;
+
+        private long completedAt;
+
+        boolean isCompleted() {
+            return completed;
+        }
+
+        boolean isExpired(long now) {
+            return isCompleted() && now - completedAt >= reuseNanos;
+        }
+    }
+}
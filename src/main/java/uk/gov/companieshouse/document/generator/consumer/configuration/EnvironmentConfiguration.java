@@ -1,8 +1,11 @@
 package uk.gov.companieshouse.document.generator.consumer.configuration;
 
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
+import uk.gov.companieshouse.document.generator.consumer.interceptor.HttpClientTimeoutInterceptor;
 import uk.gov.companieshouse.environment.EnvironmentReader;
 import uk.gov.companieshouse.environment.impl.EnvironmentReaderImpl;
 
@@ -15,7 +18,12 @@ public class EnvironmentConfiguration {
     }
 
     @Bean
-    RestTemplate restTemplate() {
-        return new RestTemplate();
+    RestTemplate restTemplate(RestTemplateBuilder restTemplateBuilder,
+            ClientHttpRequestFactory documentGeneratorRequestFactory,
+            HttpClientTimeoutInterceptor httpClientTimeoutInterceptor) {
+        return restTemplateBuilder
+                .requestFactory(() -> documentGeneratorRequestFactory)
+                .additionalInterceptors(httpClientTimeoutInterceptor)
+                .build();
     }
 }
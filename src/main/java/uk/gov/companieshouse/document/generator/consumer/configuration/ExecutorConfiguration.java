@@ -1,35 +1,36 @@
 package uk.gov.companieshouse.document.generator.consumer.configuration;
 
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.core.task.TaskExecutor;
-import uk.gov.companieshouse.document.generator.consumer.processor.MessageProcessorRunner;
+import uk.gov.companieshouse.document.generator.consumer.processor.MessageProcessorRunnerGroup;
 
 /**
  * Configuration for executor class - called once application is
- * running, to start the message processor
+ * running, to start the message processors
  */
 @Configuration
 public class ExecutorConfiguration {
 
-    private final MessageProcessorRunner messageProcessorRunner;
+    private final MessageProcessorRunnerGroup messageProcessorRunnerGroup;
 
-    public ExecutorConfiguration(final MessageProcessorRunner newRunner) {
-        this.messageProcessorRunner = newRunner;
+    public ExecutorConfiguration(final MessageProcessorRunnerGroup newRunnerGroup) {
+        this.messageProcessorRunnerGroup = newRunnerGroup;
     }
 
     @Bean(name = "taskExecutor")
     public TaskExecutor taskExecutor() {
-        return new SimpleAsyncTaskExecutor();
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor();
+        executor.setThreadNamePrefix("message-processor-");
+        return executor;
     }
 
     @Bean
     public CommandLineRunner schedulingRunner(@Qualifier("taskExecutor") TaskExecutor executor) {
-        return args -> executor.execute(messageProcessorRunner);
+        return args -> messageProcessorRunnerGroup.start(executor);
     }
 
 }
@@ -0,0 +1,124 @@
+package uk.gov.companieshouse.document.generator.consumer.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import uk.gov.companieshouse.document.generator.consumer.coalescer.RequestCoalescer;
+import uk.gov.companieshouse.document.generator.consumer.interceptor.HttpClientTimeoutInterceptor;
+import uk.gov.companieshouse.document.generator.consumer.limiter.AdaptiveConcurrencyLimiter;
+
+@Configuration
+public class HttpClientConfiguration {
+
+    private static final String POOL_NAME = "document-generator";
+
+    /**
+     * Idle pooled connections are checked before being reused once they have been idle for this long
+     */
+    private static final TimeValue VALIDATE_AFTER_INACTIVITY = TimeValue.ofSeconds(2);
+
+    /**
+     * Request factory for calls to the document generator api. By default requests are sent over HTTP/1.1 from a pool of
+     * kept alive connections, so a connection is only opened when none is free, with its usage published as metrics.
+     * With HTTP/2 enabled every request is multiplexed over a single connection by the JDK client instead.
+     * <p>
+     * Every request is bounded by the connect and read timeouts, and by the time allowed to wait for a pooled
+     * connection, so a hung document generator can't hold a processing thread indefinitely.
+     */
+    @Bean
+    public ClientHttpRequestFactory documentGeneratorRequestFactory(
+            @Value("${documentgeneration.http.http2-enabled:false}") boolean http2Enabled,
+            @Value("${documentgeneration.http.max-connections:50}") int maxConnections,
+            @Value("${documentgeneration.http.connect-timeout-ms:2000}") long connectTimeoutMillis,
+            @Value("${documentgeneration.http.read-timeout-ms:30000}") long readTimeoutMillis,
+            @Value("${documentgeneration.http.pool-timeout-ms:5000}") long poolTimeoutMillis,
+            @Value("${documentgeneration.http.keep-alive-ms:30000}") long keepAliveMillis,
+            MeterRegistry meterRegistry) {
+
+        if (http2Enabled) {
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                    .build();
+
+            JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+            requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMillis));
+            return requestFactory;
+        }
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMillis))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMillis))
+                        .setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY)
+                        .build())
+                .build();
+
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, POOL_NAME).bindTo(meterRegistry);
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolTimeoutMillis))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMillis))
+                        .setDefaultKeepAlive(keepAliveMillis, TimeUnit.MILLISECONDS)
+                        .build())
+                .evictIdleConnections(TimeValue.ofMilliseconds(keepAliveMillis))
+                .build();
+
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    @Bean
+    public HttpClientTimeoutInterceptor httpClientTimeoutInterceptor(MeterRegistry meterRegistry) {
+        return new HttpClientTimeoutInterceptor(meterRegistry);
+    }
+
+    /**
+     * Limit on the requests made to the document generator api at the same time, across every consumer in this
+     * instance, which is raised while the api keeps up and cut when it slows down or fails under load.
+     */
+    @Bean
+    public AdaptiveConcurrencyLimiter documentGeneratorConcurrencyLimiter(
+            @Value("${documentgeneration.limiter.initial-limit:10}") int initialLimit,
+            @Value("${documentgeneration.limiter.min-limit:1}") int minLimit,
+            @Value("${documentgeneration.limiter.max-limit:50}") int maxLimit,
+            @Value("${documentgeneration.limiter.backoff-ratio:0.9}") double backoffRatio,
+            @Value("${documentgeneration.limiter.latency-tolerance:2.0}") double latencyTolerance,
+            @Value("${documentgeneration.limiter.max-wait-ms:30000}") long maxWaitMillis,
+            MeterRegistry meterRegistry) {
+        return new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, backoffRatio, latencyTolerance,
+                maxWaitMillis, meterRegistry);
+    }
+
+    /**
+     * Coalesces identical requests to the document generator api, so a burst of resubmissions for the same document
+     * makes one call rather than one each. It is off unless enabled, and a response is only reused after its call
+     * completes when a reuse period is set, as a deliberate resubmission would otherwise get the previous document.
+     */
+    @Bean
+    public RequestCoalescer documentGeneratorRequestCoalescer(
+            @Value("${documentgeneration.coalescing.enabled:false}") boolean enabled,
+            @Value("${documentgeneration.coalescing.reuse-ms:0}") long reuseMillis,
+            MeterRegistry meterRegistry) {
+        return new RequestCoalescer(enabled, Duration.ofMillis(reuseMillis), meterRegistry);
+    }
+}
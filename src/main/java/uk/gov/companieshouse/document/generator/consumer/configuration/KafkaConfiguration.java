@@ -1,43 +1,126 @@
 package uk.gov.companieshouse.document.generator.consumer.configuration;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.message.SchemaStore;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.RoundRobinPartitioner;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import uk.gov.companieshouse.kafka.consumer.ConsumerConfig;
-import uk.gov.companieshouse.kafka.producer.Acks;
-import uk.gov.companieshouse.kafka.producer.ProducerConfig;
+import uk.gov.companieshouse.document.generation.request.RenderSubmittedDataDocument;
+import uk.gov.companieshouse.document.generation.status.DocumentGenerationCompleted;
+import uk.gov.companieshouse.document.generation.status.DocumentGenerationFailed;
+import uk.gov.companieshouse.document.generation.status.DocumentGenerationStarted;
+import uk.gov.companieshouse.document.generator.consumer.kafka.AvroCodec;
+import uk.gov.companieshouse.document.generator.consumer.kafka.AvroCodecRegistry;
+import uk.gov.companieshouse.document.generator.consumer.kafka.AvroSchemaDirectory;
+import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaConsumerServiceFactory;
+import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaProducerService;
+import uk.gov.companieshouse.document.generator.consumer.kafka.impl.KafkaProducerServiceImpl;
+import uk.gov.companieshouse.document.generator.consumer.kafka.impl.TransactionalKafkaProducerService;
 
 @Configuration
 public class KafkaConfiguration {
 
     @Bean
-    public ConsumerConfig kafkaConsumerConfig(@Value("${spring.kafka.bootstrap-servers}") String bootstrapServers,
+    public KafkaConsumerServiceFactory kafkaConsumerServiceFactory(
+            @Value("${spring.kafka.bootstrap-servers}") String bootstrapServers,
             @Value("${spring.kafka.consumer.topic}") String topicName,
-            @Value("${spring.kafka.consumer.groupId}") String groupName) {
-        ConsumerConfig consumerConfig = new ConsumerConfig();
-        consumerConfig.setTopics(Collections.singletonList(topicName));
-        consumerConfig.setGroupName(groupName);
-        consumerConfig.setResetOffset(false);
-        consumerConfig.setBrokerAddresses(bootstrapServers.split(","));
+            @Value("${spring.kafka.consumer.groupId}") String groupName,
+            @Value("${spring.kafka.consumer.commit-batch-size:100}") int commitBatchSize,
+            @Value("${spring.kafka.consumer.commit-interval-ms:1000}") long commitIntervalMillis,
+            @Value("${spring.kafka.producer.linger-ms:5}") int lingerMillis,
+            @Value("${spring.kafka.producer.transactional-id-prefix:document-generator-consumer}")
+            String transactionalIdPrefix,
+            KafkaProducerService kafkaProducerService) {
+        Map<String, Object> consumerProperties = new HashMap<>();
+        consumerProperties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        consumerProperties.put(ConsumerConfig.GROUP_ID_CONFIG, groupName);
+        // Offsets are committed by the consumer service once each message has been processed
+        consumerProperties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        consumerProperties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
 
-        //ConsumerConfigHelper.assignBrokerAddresses(consumerConfig);
+        if (kafkaProducerService instanceof TransactionalKafkaProducerService transactionalProducerService) {
+            // Skip messages, such as those sent to the retry topic, in transactions that were aborted
+            consumerProperties.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
 
-        return consumerConfig;
+            Map<String, Object> producerProperties = producerProperties(bootstrapServers, "all", lingerMillis);
+            producerProperties.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+
+            return new KafkaConsumerServiceFactory(consumerProperties, Collections.singletonList(topicName),
+                    commitBatchSize, commitIntervalMillis, transactionalProducerService, producerProperties,
+                    transactionalIdPrefix);
+        }
+
+        return new KafkaConsumerServiceFactory(consumerProperties, Collections.singletonList(topicName),
+                commitBatchSize, commitIntervalMillis, kafkaProducerService);
     }
 
-    @Bean
-    public ProducerConfig kafkaProducerConfig(@Value("${spring.kafka.bootstrap-servers}") String bootstrapServers) {
-        ProducerConfig producerConfig = new ProducerConfig();
+    /**
+     * The producer is shared by every message processor. Sends don't wait to be acknowledged, so records sent while
+     * processing many messages are batched and pipelined to the brokers, with up to {@code linger.ms} spent waiting
+     * to fill a batch.
+     * <p>
+     * In transactional mode the status messages are instead held until their consumed message is committed, then
+     * sent in the same transaction as its offset by the consumer's own transactional producer. Transactions are only
+     * supported when messages are processed synchronously, as a failed transaction rewinds the consumer.
+     */
+    @Bean(destroyMethod = "")
+    public KafkaProducerService kafkaProducerService(@Value("${spring.kafka.bootstrap-servers}") String bootstrapServers,
+            @Value("${spring.kafka.producer.acks:all}") String acks,
+            @Value("${spring.kafka.producer.linger-ms:5}") int lingerMillis,
+            @Value("${spring.kafka.producer.transactional:false}") boolean transactional,
+            @Value("${spring.kafka.consumer.async-processing:false}") boolean asyncProcessing) {
+        if (transactional) {
+            if (asyncProcessing) {
+                throw new IllegalArgumentException("Transactional mode can't be used with asynchronous processing");
+            }
+            return new TransactionalKafkaProducerService();
+        }
 
-        producerConfig.setRoundRobinPartitioner(true);
-        producerConfig.setAcks(Acks.WAIT_FOR_ALL);
-        producerConfig.setRetries(10);
-        producerConfig.setEnableIdempotence(false);
-        producerConfig.setBrokerAddresses(bootstrapServers.split(","));
+        Map<String, Object> producerProperties = producerProperties(bootstrapServers, acks, lingerMillis);
+        producerProperties.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, false);
+
+        return new KafkaProducerServiceImpl(new KafkaProducer<>(producerProperties, new StringSerializer(),
+                new ByteArraySerializer()));
+    }
 
-        //ProducerConfigHelper.assignBrokerAddresses(producerConfig);
+    private static Map<String, Object> producerProperties(String bootstrapServers, String acks, int lingerMillis) {
+        Map<String, Object> producerProperties = new HashMap<>();
+        producerProperties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        producerProperties.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, RoundRobinPartitioner.class);
+        producerProperties.put(ProducerConfig.ACKS_CONFIG, acks);
+        producerProperties.put(ProducerConfig.RETRIES_CONFIG, 10);
+        producerProperties.put(ProducerConfig.LINGER_MS_CONFIG, lingerMillis);
+
+        return producerProperties;
+    }
+
+    /**
+     * Consumed requests can also be read when written with another version of their schema, found in the writer
+     * schema directory when one is configured.
+     */
+    @Bean
+    public AvroCodecRegistry avroCodecRegistry(
+            @Value("${documentgeneration.avro.writer-schema-dir:}") String writerSchemaDirectory,
+            @Value("${documentgeneration.avro.writer-schema-rescan-ms:60000}") long writerSchemaRescanMillis) {
+        SchemaStore writerSchemas = writerSchemaDirectory.isEmpty() ? null
+                : new AvroSchemaDirectory(Path.of(writerSchemaDirectory), Duration.ofMillis(writerSchemaRescanMillis));
 
-        return producerConfig;
+        return new AvroCodecRegistry(List.of(
+                new AvroCodec<>(RenderSubmittedDataDocument.class, RenderSubmittedDataDocument.getClassSchema(),
+                        writerSchemas),
+                new AvroCodec<>(DocumentGenerationStarted.class, DocumentGenerationStarted.getClassSchema()),
+                new AvroCodec<>(DocumentGenerationCompleted.class, DocumentGenerationCompleted.getClassSchema()),
+                new AvroCodec<>(DocumentGenerationFailed.class, DocumentGenerationFailed.getClassSchema())));
     }
 }
@@ -0,0 +1,17 @@
+package uk.gov.companieshouse.document.generator.consumer.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import uk.gov.companieshouse.document.generator.consumer.logging.LogGuard;
+
+/**
+ * Configuration for the sampling of the info lines logged for every message. The log output itself is configured in
+ * logback-spring.xml.
+ */
+@Configuration
+public class LoggingConfiguration {
+
+    public LoggingConfiguration(@Value("${documentgeneration.logging.message-sample-rate:1.0}") double messageSampleRate) {
+        LogGuard.setMessageSampleRate(messageSampleRate);
+    }
+}
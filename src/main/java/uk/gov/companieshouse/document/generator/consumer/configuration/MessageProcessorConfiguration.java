@@ -1,23 +1,152 @@
 package uk.gov.companieshouse.document.generator.consumer.configuration;
 
-import java.util.Collections;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
-import uk.gov.companieshouse.document.generator.consumer.processor.MessageProcessor;
+import uk.gov.companieshouse.document.generation.request.RenderSubmittedDataDocument;
+import uk.gov.companieshouse.document.generator.consumer.cache.CompletedRequestCache;
+import uk.gov.companieshouse.document.generator.consumer.document.service.GenerateDocument;
+import uk.gov.companieshouse.document.generator.consumer.document.service.MessageService;
+import uk.gov.companieshouse.document.generator.consumer.kafka.AvroCodec;
+import uk.gov.companieshouse.document.generator.consumer.kafka.AvroCodecRegistry;
+import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaConsumerService;
+import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaConsumerServiceFactory;
+import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaProducerService;
+import uk.gov.companieshouse.document.generator.consumer.metrics.ConsumerProgress;
+import uk.gov.companieshouse.document.generator.consumer.metrics.DocumentGeneratorMetrics;
 import uk.gov.companieshouse.document.generator.consumer.processor.MessageProcessorRunner;
-import uk.gov.companieshouse.environment.EnvironmentReader;
-import uk.gov.companieshouse.kafka.consumer.CHKafkaConsumerGroup;
-import uk.gov.companieshouse.kafka.consumer.ConsumerConfig;
-import uk.gov.companieshouse.kafka.consumer.ConsumerConfigHelper;
+import uk.gov.companieshouse.document.generator.consumer.processor.MessageProcessorRunnerGroup;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.AdaptivePollTimeout;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.Backpressure;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.InFlightTracker;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.MessageProcessorImpl;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.ProcessingLanes;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.RetryPolicy;
 
 @Configuration
 public class MessageProcessorConfiguration {
 
+    /**
+     * Executor used to process messages when asynchronous processing is enabled. Each message gets its own virtual
+     * thread, so the blocking document generator api call doesn't hold on to a platform thread.
+     */
+    @Bean(name = "messageProcessingExecutor", destroyMethod = "shutdown")
+    public ExecutorService messageProcessingExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("message-processing-", 0).factory());
+    }
+
+    /**
+     * How requests that fail with a transient error are retried, in place and then on the retry topic if one is
+     * configured, and where messages that can never succeed are sent
+     */
     @Bean
-    public MessageProcessorRunner messageProcessorRunner() {
-        return new MessageProcessorRunner();
+    public RetryPolicy retryPolicy(
+            @Value("${documentgeneration.retry.max-attempts:3}") int maxAttempts,
+            @Value("${documentgeneration.retry.initial-backoff-ms:200}") long initialBackoffMillis,
+            @Value("${documentgeneration.retry.max-backoff-ms:2000}") long maxBackoffMillis,
+            @Value("${documentgeneration.retry.topic:}") String retryTopic,
+            @Value("${documentgeneration.retry.topic-max-attempts:5}") int maxRetryTopicAttempts,
+            @Value("${documentgeneration.retry.topic-initial-delay-ms:30000}") long initialRetryTopicDelayMillis,
+            @Value("${documentgeneration.retry.topic-max-delay-ms:600000}") long maxRetryTopicDelayMillis,
+            @Value("${documentgeneration.retry.dead-letter-topic:}") String deadLetterTopic) {
+        return new RetryPolicy(maxAttempts, Duration.ofMillis(initialBackoffMillis), Duration.ofMillis(maxBackoffMillis),
+                retryTopic, maxRetryTopicAttempts, Duration.ofMillis(initialRetryTopicDelayMillis),
+                Duration.ofMillis(maxRetryTopicDelayMillis), deadLetterTopic);
+    }
+
+    /**
+     * Requests completed recently, so a request delivered again isn't generated again. The cache is only kept across
+     * restarts when a file is configured, and is closed once the runners using it have stopped, writing out the
+     * completed requests still waiting to be written.
+     */
+    @Bean(destroyMethod = "close")
+    public CompletedRequestCache completedRequestCache(
+            @Value("${documentgeneration.completed-cache.max-entries:10000}") int maxEntries,
+            @Value("${documentgeneration.completed-cache.ttl-ms:86400000}") long timeToLiveMillis,
+            @Value("${documentgeneration.completed-cache.file:}") String file,
+            MeterRegistry meterRegistry) {
+        return new CompletedRequestCache(maxEntries, Duration.ofMillis(timeToLiveMillis),
+                file.isEmpty() ? null : Path.of(file), meterRegistry);
     }
 
+    /**
+     * Create one runner per configured consumer, each with its own consumer and message processor, plus a runner for
+     * the retry topic when one is configured. The producer and the services used to process a message are shared
+     * between the runners, as is the process wide limit on the number of messages processed asynchronously at the
+     * same time, and the lanes messages are dispatched through by document type. Each consumer processing
+     * asynchronously is paused while its backlog is above the watermarks, and tells its message processor when
+     * partitions are revoked so their queued messages are dropped.
+     */
+    @Bean
+    public MessageProcessorRunnerGroup messageProcessorRunnerGroup(
+            @Value("${spring.kafka.consumer.concurrency:1}") int concurrency,
+            @Value("${spring.kafka.consumer.async-processing:false}") boolean asyncProcessing,
+            @Value("${spring.kafka.consumer.max-in-flight:100}") int maxInFlight,
+            @Value("${spring.kafka.consumer.max-in-flight-per-partition:10}") int maxInFlightPerPartition,
+            @Value("${spring.kafka.consumer.pause-high-watermark:500}") int pauseHighWatermark,
+            @Value("${spring.kafka.consumer.resume-low-watermark:250}") int resumeLowWatermark,
+            @Value("${spring.kafka.consumer.lanes:}") String lanes,
+            @Value("${spring.kafka.consumer.min-poll-timeout-ms:100}") long minPollTimeoutMillis,
+            @Value("${spring.kafka.consumer.max-poll-timeout-ms:1000}") long maxPollTimeoutMillis,
+            @Qualifier("messageProcessingExecutor") ExecutorService messageProcessingExecutor,
+            KafkaConsumerServiceFactory kafkaConsumerServiceFactory, KafkaProducerService kafkaProducerService,
+            MessageService messageService, GenerateDocument generateDocument, AvroCodecRegistry avroCodecRegistry,
+            DocumentGeneratorMetrics metrics, ConsumerProgress consumerProgress, RetryPolicy retryPolicy,
+            CompletedRequestCache completedRequestCache, MeterRegistry meterRegistry) {
+
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Consumer concurrency must be at least 1 but was " + concurrency);
+        }
+        if (asyncProcessing && (maxInFlight < 1 || maxInFlightPerPartition < 1)) {
+            throw new IllegalArgumentException("Maximum messages in flight must be at least 1 but was " + maxInFlight
+                    + " per process and " + maxInFlightPerPartition + " per partition");
+        }
+
+        Backpressure backpressure = asyncProcessing ? new Backpressure(pauseHighWatermark, resumeLowWatermark) : null;
+        ProcessingLanes processingLanes = asyncProcessing
+                ? new ProcessingLanes(ProcessingLanes.parse(lanes), maxInFlight, meterRegistry)
+                : null;
+
+        AvroCodec<RenderSubmittedDataDocument> requestCodec = avroCodecRegistry.getCodec(RenderSubmittedDataDocument.class);
+        Semaphore processPermits = new Semaphore(maxInFlight);
+        List<KafkaConsumerService> kafkaConsumerServices = new ArrayList<>(concurrency + 1);
+        for (int i = 0; i < concurrency; i++) {
+            kafkaConsumerServices.add(kafkaConsumerServiceFactory.createConsumerService());
+        }
+        if (retryPolicy.isRetryTopicEnabled()) {
+            kafkaConsumerServices.add(kafkaConsumerServiceFactory.createRetryConsumerService(
+                    retryPolicy.getRetryTopic()));
+        }
+
+        List<MessageProcessorRunner> runners = new ArrayList<>(kafkaConsumerServices.size());
+        for (KafkaConsumerService kafkaConsumerService : kafkaConsumerServices) {
+            AdaptivePollTimeout pollTimeout = new AdaptivePollTimeout(Duration.ofMillis(minPollTimeoutMillis),
+                    Duration.ofMillis(maxPollTimeoutMillis));
+            MessageProcessorImpl messageProcessor = asyncProcessing
+                    ? new MessageProcessorImpl(messageService, generateDocument, kafkaConsumerService,
+                            kafkaProducerService, requestCodec, pollTimeout, metrics, consumerProgress,
+                            retryPolicy, completedRequestCache, messageProcessingExecutor,
+                            new InFlightTracker(processPermits, maxInFlightPerPartition), backpressure,
+                            processingLanes)
+                    : new MessageProcessorImpl(messageService, generateDocument, kafkaConsumerService,
+                            kafkaProducerService, requestCodec, pollTimeout, metrics, consumerProgress,
+                            retryPolicy, completedRequestCache);
+            if (asyncProcessing) {
+                kafkaConsumerService.setPartitionsRevokedCallback(messageProcessor::onPartitionsRevoked);
+            }
+
+            runners.add(new MessageProcessorRunner(messageProcessor, kafkaConsumerService));
+        }
+
+        return new MessageProcessorRunnerGroup(runners);
+    }
 }
@@ -7,6 +7,11 @@ import java.util.Map;
 
 public class GenerateDocumentResponse {
 
+    /**
+     * Shared by every response, Gson being thread safe and costly to create
+     */
+    private static final Gson GSON = new Gson();
+
     @JsonProperty("links")
     private Links links;
 
@@ -64,6 +69,6 @@ public class GenerateDocumentResponse {
 
     @Override
     public String toString() {
-        return new Gson().toJson(this);
+        return GSON.toJson(this);
     }
 }
\ No newline at end of file
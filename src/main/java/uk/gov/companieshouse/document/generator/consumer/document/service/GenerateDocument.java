@@ -8,8 +8,8 @@ import uk.gov.companieshouse.document.generator.consumer.exception.GenerateDocum
 public interface GenerateDocument {
 
     /**
-     * Populates GenerateDocumentRequest object with info from the deserialised Kafka message to be sent to the document
-     * generator api to generate a document.
+     * Requests the generation of a document from the document generator api with the info from the deserialised Kafka
+     * message.
      *
      * @param renderSubmittedDataDocument The message deserialised from Kafka
      */
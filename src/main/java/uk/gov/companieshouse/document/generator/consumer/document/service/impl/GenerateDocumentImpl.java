@@ -1,23 +1,37 @@
 package uk.gov.companieshouse.document.generator.consumer.document.service.impl;
 
+import java.io.IOException;
+import java.net.URI;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
 import uk.gov.companieshouse.document.generation.request.RenderSubmittedDataDocument;
 import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
 import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerProperties;
-import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentRequest;
+import uk.gov.companieshouse.document.generator.consumer.coalescer.RequestCoalescer;
 import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentResponse;
 import uk.gov.companieshouse.document.generator.consumer.document.service.GenerateDocument;
 import uk.gov.companieshouse.document.generator.consumer.exception.GenerateDocumentException;
+import uk.gov.companieshouse.document.generator.consumer.limiter.AdaptiveConcurrencyLimiter;
+import uk.gov.companieshouse.document.generator.consumer.logging.LogGuard;
 import uk.gov.companieshouse.environment.EnvironmentReader;
 import uk.gov.companieshouse.logging.Logger;
 import uk.gov.companieshouse.logging.LoggerFactory;
@@ -27,63 +41,156 @@ public class GenerateDocumentImpl implements GenerateDocument {
 
     private static final Logger LOG = LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
 
+    /**
+     * Writes request bodies without closing the request's output stream, which the request closes itself
+     */
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
     private RestTemplate restTemplate;
 
+    private ResponseExtractor<ResponseEntity<GenerateDocumentResponse>> responseExtractor;
+
+    /**
+     * The parts of each request that are the same for every document, built on the first request
+     */
+    private volatile RequestTemplate requestTemplate;
+
     private DocumentGeneratorConsumerProperties configuration;
 
     private EnvironmentReader reader;
 
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    private RequestCoalescer requestCoalescer;
+
     @Autowired
     public GenerateDocumentImpl(RestTemplate restTemplate, DocumentGeneratorConsumerProperties configuration,
-                                EnvironmentReader reader) {
+                                EnvironmentReader reader, AdaptiveConcurrencyLimiter concurrencyLimiter,
+                                RequestCoalescer requestCoalescer) {
 
         this.restTemplate = restTemplate;
+        this.responseExtractor = restTemplate.responseEntityExtractor(GenerateDocumentResponse.class);
         this.configuration = configuration;
         this.reader = reader;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.requestCoalescer = requestCoalescer;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A request identical to one already in flight, or that recently succeeded, is given that request's response
+     * rather than calling the api again.
+     */
     @Override
     public ResponseEntity<GenerateDocumentResponse> requestGenerateDocument(RenderSubmittedDataDocument renderSubmittedDataDocument) throws GenerateDocumentException {
 
-        String url = configuration.getRootUri() + configuration.getBaseUrl();
+        return requestCoalescer.execute(renderSubmittedDataDocument, () -> callApi(renderSubmittedDataDocument));
+    }
 
-        LOG.infoContext(renderSubmittedDataDocument.getUserId(), "Sending request to generate document to document" +
-                " generator api", setDebugMap(renderSubmittedDataDocument));
+    private ResponseEntity<GenerateDocumentResponse> callApi(RenderSubmittedDataDocument renderSubmittedDataDocument)
+            throws GenerateDocumentException {
+
+        RequestTemplate template = requestTemplate();
+
+        if (LogGuard.isInfoSampled(renderSubmittedDataDocument.getId())) {
+            LOG.infoContext(renderSubmittedDataDocument.getUserId(), "Sending request to generate document to document" +
+                    " generator api", setDebugMap(renderSubmittedDataDocument));
+        }
+
+        AdaptiveConcurrencyLimiter.Permit permit = acquirePermit(renderSubmittedDataDocument);
 
         try {
-            ResponseEntity<GenerateDocumentResponse> response = restTemplate.postForEntity(url,
-                    setRequest(renderSubmittedDataDocument), GenerateDocumentResponse.class);
+            ResponseEntity<GenerateDocumentResponse> response = restTemplate.execute(template.uri(), HttpMethod.POST,
+                    request -> writeRequest(request, template, renderSubmittedDataDocument), responseExtractor);
 
+            permit.onSuccess();
             return response;
 
         } catch (Exception e) {
+            boolean overloaded = isOverloaded(e);
+            if (overloaded) {
+                permit.onDropped();
+            } else {
+                permit.onIgnore();
+            }
+
             LOG.errorContext("Error occurred during api call to document-generator",
                     e, setDebugMap(renderSubmittedDataDocument));
             throw new GenerateDocumentException("An error occurred when requesting the generation" +
-                   " of a document from the document generator api", e);
+                   " of a document from the document generator api", e, overloaded);
         }
     }
 
-    private HttpEntity<GenerateDocumentRequest> setRequest(RenderSubmittedDataDocument renderSubmittedDataDocument) {
+    private AdaptiveConcurrencyLimiter.Permit acquirePermit(RenderSubmittedDataDocument renderSubmittedDataDocument)
+            throws GenerateDocumentException {
 
-        MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
-        headers.add("Authorization", reader.getMandatoryString(DocumentGeneratorConsumerApplication.API_KEY));
+        Optional<AdaptiveConcurrencyLimiter.Permit> permit;
+        try {
+            permit = concurrencyLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GenerateDocumentException("Interrupted while waiting to call the document generator api", e);
+        }
 
-        GenerateDocumentRequest generateDocumentRequest = populateDocumentRequest(renderSubmittedDataDocument);
+        if (permit.isEmpty()) {
+            GenerateDocumentException e = new GenerateDocumentException("Timed out waiting for the concurrency" +
+                    " limit before requesting the generation of a document from the document generator api", true);
+            LOG.errorContext("Error occurred waiting to call document-generator", e,
+                    setDebugMap(renderSubmittedDataDocument));
+            throw e;
+        }
 
-        HttpEntity<GenerateDocumentRequest> request = new HttpEntity<>(generateDocumentRequest, headers);
+        return permit.get();
+    }
 
-        return request;
+    /**
+     * Whether the failure suggests the document generator api is overloaded: a timeout, a server error or being told
+     * to slow down. These failures are transient and worth retrying; other client errors say nothing about its load
+     * and will fail again.
+     */
+    private static boolean isOverloaded(Exception e) {
+        return e instanceof ResourceAccessException
+                || e instanceof HttpServerErrorException
+                || e instanceof HttpClientErrorException.TooManyRequests;
     }
 
-    private GenerateDocumentRequest populateDocumentRequest(RenderSubmittedDataDocument renderSubmittedDataDocument) {
-        GenerateDocumentRequest request = new GenerateDocumentRequest();
-        request.setResourceUri(renderSubmittedDataDocument.getResource());
-        request.setMimeType(renderSubmittedDataDocument.getContentType());
-        request.setDocumentType(renderSubmittedDataDocument.getDocumentType());
-        request.setPublicLocationRequired(true);
+    private RequestTemplate requestTemplate() {
+        RequestTemplate template = requestTemplate;
+        if (template == null) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.AUTHORIZATION,
+                    reader.getMandatoryString(DocumentGeneratorConsumerApplication.API_KEY));
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+
+            template = new RequestTemplate(URI.create(configuration.getRootUri() + configuration.getBaseUrl()),
+                    HttpHeaders.readOnlyHttpHeaders(headers));
+            requestTemplate = template;
+        }
+
+        return template;
+    }
 
-        return request;
+    /**
+     * Set the request's headers from the template and stream the JSON body for the document straight into the
+     * request.
+     */
+    private static void writeRequest(ClientHttpRequest request, RequestTemplate template,
+                                     RenderSubmittedDataDocument renderSubmittedDataDocument) throws IOException {
+
+        request.getHeaders().putAll(template.headers());
+
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(request.getBody())) {
+            json.writeStartObject();
+            json.writeStringField("resource_uri", renderSubmittedDataDocument.getResource());
+            json.writeStringField("mime_type", renderSubmittedDataDocument.getContentType());
+            json.writeStringField("document_type", renderSubmittedDataDocument.getDocumentType());
+            json.writeBooleanField("is_public_location_required", true);
+            json.writeEndObject();
+        }
     }
 
     private Map<String, Object> setDebugMap(RenderSubmittedDataDocument renderSubmittedDataDocument) {
@@ -93,4 +200,10 @@ public class GenerateDocumentImpl implements GenerateDocument {
 
         return debugMap;
     }
+
+    /**
+     * The document generator api's URI and the headers sent with every request to it
+     */
+    private record RequestTemplate(URI uri, HttpHeaders headers) {
+    }
 }
@@ -1,12 +1,13 @@
 package uk.gov.companieshouse.document.generator.consumer.document.service.impl;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.IndexedRecord;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -18,10 +19,10 @@ import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsum
 import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentResponse;
 import uk.gov.companieshouse.document.generator.consumer.document.service.MessageService;
 import uk.gov.companieshouse.document.generator.consumer.exception.MessageCreationException;
+import uk.gov.companieshouse.document.generator.consumer.kafka.AvroCodecRegistry;
+import uk.gov.companieshouse.document.generator.consumer.logging.LogGuard;
 import uk.gov.companieshouse.document.generator.consumer.transformers.DocumentGenerationTransformer;
 import uk.gov.companieshouse.kafka.message.Message;
-import uk.gov.companieshouse.kafka.serialization.AvroSerializer;
-import uk.gov.companieshouse.kafka.serialization.SerializerFactory;
 import uk.gov.companieshouse.logging.Logger;
 import uk.gov.companieshouse.logging.LoggerFactory;
 
@@ -41,7 +42,7 @@ public class MessageServiceImpl implements MessageService {
     private static final String DESCRIPTION = "description";
 
     @Autowired
-    private SerializerFactory serializerFactory;
+    private AvroCodecRegistry avroCodecRegistry;
 
     @Autowired
     private DocumentGenerationTransformer transformer;
@@ -52,9 +53,11 @@ public class MessageServiceImpl implements MessageService {
         DocumentGenerationStarted started = transformer.transformGenerationStarted(renderSubmittedDataDocument);
 
         try {
-            LOG.infoContext(started.getRequesterId(),"Serialize document generation started and create message", setStartedDebugMap(started));
-            AvroSerializer<DocumentGenerationStarted> serializer = serializerFactory.getSpecificRecordSerializer(DocumentGenerationStarted.class);
-            byte[] bytes = serializer.toBinary(started);
+            if (LogGuard.isInfoSampled(renderSubmittedDataDocument.getId())) {
+                LOG.infoContext(started.getRequesterId(), "Serialize document generation started and create message",
+                        setStartedDebugMap(started));
+            }
+            byte[] bytes = avroCodecRegistry.getCodec(DocumentGenerationStarted.class).encode(started);
   
             return createMessage(bytes, STARTED_PRODUCER_TOPIC);
         } catch (Exception e) {
@@ -75,9 +78,11 @@ public class MessageServiceImpl implements MessageService {
         }
 
         try {
-            LOG.infoContext(failed.getRequesterId(),"Serialize document generation failed and create message", setFailedDebugMap(failed));
-            AvroSerializer<DocumentGenerationFailed> serializer = serializerFactory.getSpecificRecordSerializer(DocumentGenerationFailed.class);
-            byte[] bytes = serializer.toBinary(failed);
+            if (LogGuard.isInfoEnabled()) {
+                LOG.infoContext(failed.getRequesterId(), "Serialize document generation failed and create message",
+                        setFailedDebugMap(failed));
+            }
+            byte[] bytes = avroCodecRegistry.getCodec(DocumentGenerationFailed.class).encode(failed);
 
             return createMessage(bytes, FAILED_PRODUCER_TOPIC);
         } catch (Exception e) {
@@ -94,9 +99,11 @@ public class MessageServiceImpl implements MessageService {
         DocumentGenerationCompleted completed = transformer.transformGenerationCompleted(renderSubmittedDataDocument, response);
 
         try {
-            LOG.infoContext(completed.getRequesterId(),"Serialize document generation completed and create message", setCompletedDebugMap(completed));
-            AvroSerializer<DocumentGenerationCompleted> serializer = serializerFactory.getSpecificRecordSerializer(DocumentGenerationCompleted.class);
-            byte[] bytes = serializer.toBinary(completed);
+            if (LogGuard.isInfoSampled(renderSubmittedDataDocument.getId())) {
+                LOG.infoContext(completed.getRequesterId(), "Serialize document generation completed and create message",
+                        setCompletedDebugMap(completed));
+            }
+            byte[] bytes = avroCodecRegistry.getCodec(DocumentGenerationCompleted.class).encode(completed);
 
             return createMessage(bytes, COMPLETED_PRODUCER_TOPIC);
         } catch (Exception e) {
@@ -126,7 +133,7 @@ public class MessageServiceImpl implements MessageService {
         Map<String, Object> completedParams = new HashMap<>();
         completedParams.put(DESCRIPTION_IDENTIFIER, completed.getDescriptionIdentifier());
         completedParams.put(DESCRIPTION, completed.getDescription());
-        completedParams.put(COMPLETED_DOCUMENT, getLogStatusTree(String.valueOf(completed)));
+        completedParams.put(COMPLETED_DOCUMENT, toLogStatus(completed));
 
         return completedParams;
     }
@@ -134,25 +141,47 @@ public class MessageServiceImpl implements MessageService {
     private Map<String, Object> setFailedDebugMap(DocumentGenerationFailed failed) {
 
         Map<String, Object> failedParams = new HashMap<>();
-        failedParams.put(FAILED_DOCUMENT, getLogStatusTree(String.valueOf(failed)));
+        failedParams.put(FAILED_DOCUMENT, toLogStatus(failed));
 
         return failedParams;
     }
 
     private Map<String, Object> setStartedDebugMap(DocumentGenerationStarted started)  {
         Map<String, Object> startedParams = new HashMap<>();
-        startedParams.put(STARTED_DOCUMENT, getLogStatusTree(String.valueOf(started)));
+        startedParams.put(STARTED_DOCUMENT, toLogStatus(started));
 
         return startedParams;
     }
 
-    private JsonNode getLogStatusTree(String logStatus) {
-        try {
-            var mapper = new ObjectMapper();
-            return mapper.readTree(logStatus);
-        } catch (JsonProcessingException jsonProcessingException) {
-            LOG.error(" Found issue while converting into json String " + jsonProcessingException.getMessage());
-            return null;
+    /**
+     * Build the structured log representation of a status record straight from its fields, keyed by field name, rather
+     * than rendering the record to JSON text and parsing it back.
+     */
+    private static Map<String, Object> toLogStatus(IndexedRecord record) {
+        Map<String, Object> logStatus = new LinkedHashMap<>();
+        for (Schema.Field field : record.getSchema().getFields()) {
+            logStatus.put(field.name(), toLogValue(record.get(field.pos())));
         }
+
+        return logStatus;
+    }
+
+    private static Object toLogValue(Object value) {
+        if (value instanceof CharSequence charSequence) {
+            return charSequence.toString();
+        }
+        if (value instanceof IndexedRecord record) {
+            return toLogStatus(record);
+        }
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> logMap = new LinkedHashMap<>();
+            map.forEach((key, entry) -> logMap.put(String.valueOf(key), toLogValue(entry)));
+            return logMap;
+        }
+        if (value instanceof Collection<?> collection) {
+            return collection.stream().map(MessageServiceImpl::toLogValue).toList();
+        }
+
+        return value;
     }
 }
@@ -2,13 +2,26 @@ package uk.gov.companieshouse.document.generator.consumer.exception;
 
 public class GenerateDocumentException extends Exception {
 
+    private final boolean retryable;
+
     /**
      * Constructs a new GenerateDocumentException with a custom message
      *
      * @param message a custom message
      */
     public GenerateDocumentException(String message) {
+        this(message, false);
+    }
+
+    /**
+     * Constructs a new GenerateDocumentException with a custom message
+     *
+     * @param message a custom message
+     * @param retryable whether the failure is transient, so the request may succeed if retried
+     */
+    public GenerateDocumentException(String message, boolean retryable) {
         super(message);
+        this.retryable = retryable;
     }
 
     /**
@@ -18,6 +31,25 @@ public class GenerateDocumentException extends Exception {
      * @param cause the cause
      */
     public GenerateDocumentException(String message, Throwable cause) {
+        this(message, cause, false);
+    }
+
+    /**
+     * Constructs a new GenerateDocumentException with a custom message and specified cause
+     *
+     * @param message a custom message
+     * @param cause the cause
+     * @param retryable whether the failure is transient, so the request may succeed if retried
+     */
+    public GenerateDocumentException(String message, Throwable cause, boolean retryable) {
         super(message, cause);
+        this.retryable = retryable;
+    }
+
+    /**
+     * @return whether the failure is transient, such as a timeout or the document generator api being unavailable
+     */
+    public boolean isRetryable() {
+        return retryable;
     }
 }
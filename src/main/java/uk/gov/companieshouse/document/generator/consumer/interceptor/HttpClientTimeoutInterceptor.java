@@ -0,0 +1,59 @@
+package uk.gov.companieshouse.document.generator.consumer.interceptor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.client5.http.ConnectionRequestTimeoutException;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Counts the calls to the document generator api that time out, by whether the timeout happened waiting for a pooled
+ * connection, connecting or waiting for the response.
+ */
+public class HttpClientTimeoutInterceptor implements ClientHttpRequestInterceptor {
+
+    public static final String TIMEOUTS_METRIC = "document.generator.http.timeouts";
+
+    private final Counter poolTimeouts;
+
+    private final Counter connectTimeouts;
+
+    private final Counter readTimeouts;
+
+    public HttpClientTimeoutInterceptor(MeterRegistry meterRegistry) {
+        this.poolTimeouts = timeoutCounter(meterRegistry, "pool");
+        this.connectTimeouts = timeoutCounter(meterRegistry, "connect");
+        this.readTimeouts = timeoutCounter(meterRegistry, "read");
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        try {
+            return execution.execute(request, body);
+        } catch (ConnectionRequestTimeoutException e) {
+            poolTimeouts.increment();
+            throw e;
+        } catch (ConnectTimeoutException | HttpConnectTimeoutException e) {
+            connectTimeouts.increment();
+            throw e;
+        } catch (SocketTimeoutException | HttpTimeoutException e) {
+            readTimeouts.increment();
+            throw e;
+        }
+    }
+
+    private static Counter timeoutCounter(MeterRegistry meterRegistry, String type) {
+        return Counter.builder(TIMEOUTS_METRIC)
+                .description("Calls to the document generator api that timed out")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,251 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.io.ResolvingDecoder;
+import org.apache.avro.message.MissingSchemaException;
+import org.apache.avro.message.SchemaStore;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import uk.gov.companieshouse.kafka.exceptions.DeserializationException;
+import uk.gov.companieshouse.kafka.exceptions.SerializationException;
+
+/**
+ * Serialises and deserialises one Avro record type, reusing the datum readers and writers, binary encoders and
+ * decoders and output buffers between messages rather than creating new ones for each.
+ * <p>
+ * The reusable state is kept in small pools rather than thread locals, as messages processed asynchronously each run on
+ * their own short lived virtual thread. An encoder or decoder is only ever used by one thread at a time and is handed
+ * back to the pool once the message has been read or written. If a pool is empty new state is created, and state
+ * beyond the pool's capacity is left for the garbage collector.
+ * <p>
+ * Records are read straight from the message's bytes. Alongside plain binary records, written with this codec's
+ * schema, it reads records in Avro's single object encoding, whose header carries the fingerprint of the schema they
+ * were written with. Those written with another schema, such as one from a newer producer, are resolved against this
+ * codec's schema once the writer schema has been found in the writer schema store, and the resolving decoders are kept
+ * for each writer schema, so the schemas aren't resolved again for each message.
+ */
+public class AvroCodec<T extends SpecificRecord> {
+
+    private static final int POOL_SIZE = 64;
+
+    /**
+     * Output buffers that have grown beyond this are not kept, so one large message doesn't pin memory
+     */
+    private static final int MAX_RETAINED_BUFFER_BYTES = 64 * 1024;
+
+    private static final int INITIAL_BUFFER_BYTES = 1024;
+
+    private static final byte SINGLE_OBJECT_MARKER = (byte) 0xC3;
+
+    private static final byte SINGLE_OBJECT_VERSION = (byte) 0x01;
+
+    /**
+     * The two byte marker and eight byte schema fingerprint before a single object encoded record
+     */
+    private static final int SINGLE_OBJECT_HEADER_BYTES = 10;
+
+    private final Class<T> type;
+
+    private final Schema schema;
+
+    private final SpecificDatumWriter<T> writer;
+
+    private final long fingerprint;
+
+    /**
+     * Writer schemas of records written with another schema, null if only this codec's schema is read
+     */
+    private final SchemaStore writerSchemas;
+
+    private final Decodings<T> decodings;
+
+    private final Map<Long, Decodings<T>> writerSchemaDecodings = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<Encoding> encodings = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    public AvroCodec(Class<T> type, Schema schema) {
+        this(type, schema, null);
+    }
+
+    /**
+     * @param writerSchemas the schemas records may have been written with other than this codec's schema
+     */
+    public AvroCodec(Class<T> type, Schema schema, SchemaStore writerSchemas) {
+        this.type = type;
+        this.schema = schema;
+        this.writer = new SpecificDatumWriter<>(schema);
+        this.fingerprint = SchemaNormalization.parsingFingerprint64(schema);
+        this.writerSchemas = writerSchemas;
+        this.decodings = new Decodings<>(schema);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Deserialise a record written with this codec's schema, or single object encoded with a known writer schema
+     *
+     * @throws DeserializationException if the data is not a valid record, or its writer schema isn't known
+     */
+    public T decode(byte[] data) throws DeserializationException {
+        try {
+            boolean singleObject = isSingleObjectEncoded(data);
+            Decodings<T> writerDecodings = singleObject ? decodingsFor(readFingerprint(data)) : decodings;
+
+            Decoding<T> decoding = writerDecodings.idle.poll();
+            if (decoding == null) {
+                decoding = new Decoding<>(writerDecodings.writerSchema, schema);
+            }
+
+            try {
+                return decoding.read(data, singleObject ? SINGLE_OBJECT_HEADER_BYTES : 0);
+            } finally {
+                writerDecodings.idle.offer(decoding);
+            }
+        } catch (IOException | AvroRuntimeException | IndexOutOfBoundsException e) {
+            throw new DeserializationException("Failed to deserialise " + type.getSimpleName() + ": "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Serialise a record with this codec's schema
+     *
+     * @throws SerializationException if the record can't be written
+     */
+    public byte[] encode(T record) throws SerializationException {
+        Encoding encoding = encodings.poll();
+        if (encoding == null) {
+            encoding = new Encoding();
+        }
+
+        try {
+            return encoding.write(writer, record);
+        } catch (IOException | AvroRuntimeException | NullPointerException e) {
+            SerializationException serializationException = new SerializationException("Failed to serialise "
+                    + type.getSimpleName() + ": " + e.getMessage());
+            serializationException.initCause(e);
+            throw serializationException;
+        } finally {
+            if (encoding.out.size() <= MAX_RETAINED_BUFFER_BYTES) {
+                encodings.offer(encoding);
+            }
+        }
+    }
+
+    /**
+     * @throws MissingSchemaException if the writer schema with the fingerprint can't be found
+     */
+    private Decodings<T> decodingsFor(long writerFingerprint) {
+        if (writerFingerprint == fingerprint) {
+            return decodings;
+        }
+
+        Decodings<T> writerDecodings = writerSchemaDecodings.get(writerFingerprint);
+        if (writerDecodings != null) {
+            return writerDecodings;
+        }
+
+        Schema writerSchema = writerSchemas == null ? null : writerSchemas.findByFingerprint(writerFingerprint);
+        if (writerSchema == null) {
+            throw new MissingSchemaException("No writer schema found with fingerprint " + writerFingerprint);
+        }
+
+        return writerSchemaDecodings.computeIfAbsent(writerFingerprint, key -> new Decodings<>(writerSchema));
+    }
+
+    private static boolean isSingleObjectEncoded(byte[] data) {
+        return data.length >= SINGLE_OBJECT_HEADER_BYTES
+                && data[0] == SINGLE_OBJECT_MARKER && data[1] == SINGLE_OBJECT_VERSION;
+    }
+
+    /**
+     * Read the little endian fingerprint from the single object encoding header
+     */
+    private static long readFingerprint(byte[] data) {
+        long writerFingerprint = 0;
+        for (int i = SINGLE_OBJECT_HEADER_BYTES - 1; i >= 2; i--) {
+            writerFingerprint = (writerFingerprint << 8) | (data[i] & 0xFF);
+        }
+
+        return writerFingerprint;
+    }
+
+    /**
+     * The idle decoders for records written with one writer schema
+     */
+    private static final class Decodings<T> {
+
+        private final Schema writerSchema;
+
+        private final BlockingQueue<Decoding<T>> idle = new ArrayBlockingQueue<>(POOL_SIZE);
+
+        private Decodings(Schema writerSchema) {
+            this.writerSchema = writerSchema;
+        }
+    }
+
+    /**
+     * A datum reader with its resolving and binary decoders. Reading through our own resolving decoder, rather than
+     * {@link SpecificDatumReader#read(Object, org.apache.avro.io.Decoder)}, avoids the reader looking its resolver up
+     * in a thread local cache that would be rebuilt on every virtual thread.
+     */
+    private static final class Decoding<T> extends SpecificDatumReader<T> {
+
+        private final Schema readerSchema;
+
+        private final ResolvingDecoder resolver;
+
+        private BinaryDecoder decoder;
+
+        private Decoding(Schema writerSchema, Schema readerSchema) throws IOException {
+            super(writerSchema, readerSchema);
+            this.readerSchema = readerSchema;
+            this.resolver = DecoderFactory.get().resolvingDecoder(writerSchema, readerSchema, null);
+        }
+
+        @SuppressWarnings("unchecked")
+        private T read(byte[] data, int offset) throws IOException {
+            decoder = DecoderFactory.get().binaryDecoder(data, offset, data.length - offset, decoder);
+            resolver.configure(decoder);
+            T result = (T) read(null, readerSchema, resolver);
+            resolver.drain();
+
+            return result;
+        }
+    }
+
+    private static final class Encoding {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(INITIAL_BUFFER_BYTES);
+
+        private BinaryEncoder encoder;
+
+        private <T> byte[] write(SpecificDatumWriter<T> writer, T record) throws IOException {
+            out.reset();
+            encoder = EncoderFactory.get().binaryEncoder(out, encoder);
+            writer.write(record, encoder);
+            encoder.flush();
+
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.avro.specific.SpecificRecord;
+
+/**
+ * The Avro codecs for every record type the service reads or writes, created once at startup and shared by all
+ * consumers and processing threads.
+ */
+public class AvroCodecRegistry {
+
+    private final Map<Class<?>, AvroCodec<?>> codecs;
+
+    public AvroCodecRegistry(List<AvroCodec<?>> codecs) {
+        this.codecs = codecs.stream().collect(Collectors.toUnmodifiableMap(AvroCodec::getType, Function.identity()));
+    }
+
+    /**
+     * @throws IllegalArgumentException if no codec has been registered for the type
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends SpecificRecord> AvroCodec<T> getCodec(Class<T> type) {
+        AvroCodec<T> codec = (AvroCodec<T>) codecs.get(type);
+        if (codec == null) {
+            throw new IllegalArgumentException("No Avro codec registered for " + type.getName());
+        }
+
+        return codec;
+    }
+}
@@ -0,0 +1,103 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.message.SchemaStore;
+import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * The writer schemas, read from the {@code .avsc} files in a directory, that messages may have been written with,
+ * found by their fingerprint. The directory is read again when a message arrives written with a schema that isn't
+ * known yet, at most once per rescan interval, so a schema added by a producer upgrade is picked up by adding its file
+ * without restarting the service.
+ */
+public class AvroSchemaDirectory implements SchemaStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
+
+    private static final String SCHEMA_FILES = "*.avsc";
+
+    private final Path directory;
+
+    private final long rescanIntervalNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile Map<Long, Schema> schemas = Map.of();
+
+    private long lastScan;
+
+    private boolean scanned;
+
+    public AvroSchemaDirectory(Path directory, Duration rescanInterval) {
+        this(directory, rescanInterval, System::nanoTime);
+    }
+
+    AvroSchemaDirectory(Path directory, Duration rescanInterval, LongSupplier nanoClock) {
+        this.directory = directory;
+        this.rescanIntervalNanos = rescanInterval.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @param fingerprint the 64 bit Rabin fingerprint of the schema's parsing canonical form
+     * @return the schema, or null if no schema file in the directory has the fingerprint
+     */
+    @Override
+    public Schema findByFingerprint(long fingerprint) {
+        Schema schema = schemas.get(fingerprint);
+        if (schema != null) {
+            return schema;
+        }
+
+        lock.lock();
+        try {
+            schema = schemas.get(fingerprint);
+            if (schema == null && (!scanned || nanoClock.getAsLong() - lastScan >= rescanIntervalNanos)) {
+                scan();
+                schema = schemas.get(fingerprint);
+            }
+            return schema;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scan() {
+        lastScan = nanoClock.getAsLong();
+        scanned = true;
+
+        Map<Long, Schema> found = new HashMap<>(schemas);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SCHEMA_FILES)) {
+            for (Path file : files) {
+                try {
+                    Schema schema = new Schema.Parser().parse(file.toFile());
+                    found.putIfAbsent(SchemaNormalization.parsingFingerprint64(schema), schema);
+                } catch (IOException | AvroRuntimeException e) {
+                    LOG.error("Unable to read Avro schema " + file + ", skipping it: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to list the Avro writer schemas in " + directory + ": " + e.getMessage());
+        }
+
+        if (found.size() != schemas.size()) {
+            LOG.info("Read " + found.size() + " Avro writer schema(s) from " + directory);
+        }
+        schemas = Map.copyOf(found);
+    }
+}
@@ -0,0 +1,70 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.common.header.Headers;
+import uk.gov.companieshouse.kafka.message.Message;
+
+/**
+ * A consumed message that can never be processed, such as one that can't be deserialised, on its way to the dead
+ * letter topic. It carries the consumed message's key and value unchanged, and where it was consumed from and why it
+ * failed travel as record headers in text.
+ */
+public class DeadLetterMessage extends Message implements HeaderWritingMessage {
+
+    public static final String ORIGINAL_TOPIC_HEADER = "dead-letter-original-topic";
+
+    public static final String ORIGINAL_PARTITION_HEADER = "dead-letter-original-partition";
+
+    public static final String ORIGINAL_OFFSET_HEADER = "dead-letter-original-offset";
+
+    public static final String ORIGINAL_TIMESTAMP_HEADER = "dead-letter-original-timestamp";
+
+    public static final String ERROR_CLASS_HEADER = "dead-letter-error-class";
+
+    public static final String ERROR_MESSAGE_HEADER = "dead-letter-error-message";
+
+    private final Message original;
+
+    private final Exception error;
+
+    /**
+     * @param topic    the dead letter topic
+     * @param original the consumed message
+     * @param error    why the consumed message can't be processed
+     */
+    public DeadLetterMessage(String topic, Message original, Exception error) {
+        this.original = original;
+        this.error = error;
+        setTopic(topic);
+        setKey(original.getKey());
+        setValue(original.getValue());
+        setTimestamp(System.currentTimeMillis());
+    }
+
+    public Message getOriginal() {
+        return original;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * Add where the consumed message came from and why it failed to the headers of the record being produced
+     */
+    @Override
+    public void writeHeaders(Headers headers) {
+        addHeader(headers, ORIGINAL_TOPIC_HEADER, original.getTopic());
+        addHeader(headers, ORIGINAL_PARTITION_HEADER, String.valueOf(original.getPartition()));
+        addHeader(headers, ORIGINAL_OFFSET_HEADER, String.valueOf(original.getOffset()));
+        addHeader(headers, ORIGINAL_TIMESTAMP_HEADER, String.valueOf(original.getTimestamp()));
+        addHeader(headers, ERROR_CLASS_HEADER, error.getClass().getName());
+        addHeader(headers, ERROR_MESSAGE_HEADER, error.getMessage());
+    }
+
+    private static void addHeader(Headers headers, String key, String value) {
+        if (value != null) {
+            headers.add(key, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
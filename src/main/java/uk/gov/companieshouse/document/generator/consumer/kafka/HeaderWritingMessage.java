@@ -0,0 +1,14 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * A message that carries more than its key and value, sent as headers on the record produced for it
+ */
+public interface HeaderWritingMessage {
+
+    /**
+     * Add the message's headers to the record being produced
+     */
+    void writeHeaders(Headers headers);
+}
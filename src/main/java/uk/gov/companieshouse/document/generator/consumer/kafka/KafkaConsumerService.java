@@ -1,20 +1,59 @@
 package uk.gov.companieshouse.document.generator.consumer.kafka;
 
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
+import org.apache.kafka.common.TopicPartition;
 import uk.gov.companieshouse.kafka.message.Message;
 
 public interface KafkaConsumerService {
 
     void connect();
 
-    List<Message> consume();
+    /**
+     * Poll for messages, blocking for up to the timeout if none are available
+     */
+    List<Message> consume(Duration timeout);
 
     void commit(Message message);
 
+    /**
+     * Stop fetching messages from every partition assigned to the consumer, including those assigned while paused.
+     * The consumer carries on polling, so it stays in the consumer group, but the polls return no messages.
+     */
+    void pause();
+
+    /**
+     * Fetch messages again from the partitions paused by {@link #pause()}
+     */
+    void resume();
+
+    boolean isPaused();
+
+    /**
+     * @return the lag of each partition assigned to the consumer whose lag is known, from the position the last poll
+     * fetched up to, without a request to the broker
+     */
+    Map<TopicPartition, Long> getLag();
+
+    /**
+     * Wake up a poll in progress on another thread, or the next poll if none is in progress, so it returns no messages
+     * straight away
+     */
+    void wakeup();
+
     void closeConsumer();
 
+    /**
+     * Set the action run, on the polling thread, when partitions are revoked from or lost by the consumer. It runs
+     * before the offsets of the processed messages from those partitions are committed, so it can record the offsets of
+     * messages that have just completed and drop those not yet processed.
+     */
+    void setPartitionsRevokedCallback(Consumer<Collection<TopicPartition>> callback);
+
     // Required for testing purposes
     void setCallback(final Consumer<Message> callback);
     //Optional<Message> getLastMessage();
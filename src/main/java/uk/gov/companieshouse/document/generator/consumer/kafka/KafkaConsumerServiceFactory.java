@@ -0,0 +1,134 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import uk.gov.companieshouse.document.generator.consumer.kafka.impl.KafkaConsumerServiceImpl;
+import uk.gov.companieshouse.document.generator.consumer.kafka.impl.OffsetCommitManager;
+import uk.gov.companieshouse.document.generator.consumer.kafka.impl.RetryKafkaConsumerServiceImpl;
+import uk.gov.companieshouse.document.generator.consumer.kafka.impl.TransactionalKafkaProducerService;
+import uk.gov.companieshouse.document.generator.consumer.kafka.impl.TransactionalOffsetCommitManager;
+
+/**
+ * Creates a new consumer, in the configured consumer group, for each message processor runner, and one in a group of
+ * its own for the retry topic. Before offsets are committed the producer is flushed, so a message is only committed
+ * once its status messages have been acknowledged.
+ * <p>
+ * In transactional mode each consumer instead gets its own transactional producer, which commits its offsets together
+ * with the status messages sent for them. Each producer's transactional id is the configured prefix, an id unique to
+ * this instance of the service and the consumer's number, so producers in different instances don't fence each other.
+ */
+public class KafkaConsumerServiceFactory {
+
+    /**
+     * Appended to the consumer group of the main consumers to name the consumer group of the retry topic consumers
+     */
+    public static final String RETRY_GROUP_SUFFIX = "-retry";
+
+    private final Map<String, Object> consumerProperties;
+
+    private final List<String> topics;
+
+    private final int commitBatchSize;
+
+    private final long commitIntervalMillis;
+
+    private final KafkaProducerService kafkaProducerService;
+
+    private final TransactionalKafkaProducerService transactionalProducerService;
+
+    private final Map<String, Object> transactionalProducerProperties;
+
+    private final String transactionalIdPrefix;
+
+    private final AtomicInteger consumerCount = new AtomicInteger();
+
+    public KafkaConsumerServiceFactory(final Map<String, Object> consumerProperties, final List<String> topics,
+            final int commitBatchSize, final long commitIntervalMillis, final KafkaProducerService kafkaProducerService) {
+        this.consumerProperties = Map.copyOf(consumerProperties);
+        this.topics = List.copyOf(topics);
+        this.commitBatchSize = commitBatchSize;
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.kafkaProducerService = kafkaProducerService;
+        this.transactionalProducerService = null;
+        this.transactionalProducerProperties = null;
+        this.transactionalIdPrefix = null;
+    }
+
+    /**
+     * Create a factory for consumers that commit their offsets in transactions
+     *
+     * @param transactionalProducerService holds the status messages until their consumed message is committed
+     * @param transactionalProducerProperties the properties of each consumer's transactional producer, apart from its
+     *                                        transactional id
+     * @param transactionalIdPrefix the prefix of each producer's transactional id
+     */
+    public KafkaConsumerServiceFactory(final Map<String, Object> consumerProperties, final List<String> topics,
+            final int commitBatchSize, final long commitIntervalMillis,
+            final TransactionalKafkaProducerService transactionalProducerService,
+            final Map<String, Object> transactionalProducerProperties, final String transactionalIdPrefix) {
+        this.consumerProperties = Map.copyOf(consumerProperties);
+        this.topics = List.copyOf(topics);
+        this.commitBatchSize = commitBatchSize;
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.kafkaProducerService = transactionalProducerService;
+        this.transactionalProducerService = transactionalProducerService;
+        this.transactionalProducerProperties = Map.copyOf(transactionalProducerProperties);
+        this.transactionalIdPrefix = transactionalIdPrefix + "-" + UUID.randomUUID();
+    }
+
+    public KafkaConsumerService createConsumerService() {
+        KafkaConsumer<String, byte[]> consumer = createConsumer();
+        return new KafkaConsumerServiceImpl(consumer, topics, createOffsetCommitManager(consumer));
+    }
+
+    /**
+     * Create a consumer of the retry topic that only returns each message once it is due. It is in its own consumer
+     * group, the configured group with a suffix, so it joining, leaving or pausing never rebalances the main consumers.
+     */
+    public KafkaConsumerService createRetryConsumerService(final String retryTopic) {
+        Map<String, Object> retryConsumerProperties = new HashMap<>(consumerProperties);
+        retryConsumerProperties.put(ConsumerConfig.GROUP_ID_CONFIG,
+                consumerProperties.get(ConsumerConfig.GROUP_ID_CONFIG) + RETRY_GROUP_SUFFIX);
+        KafkaConsumer<String, byte[]> consumer = createConsumer(retryConsumerProperties);
+        return new RetryKafkaConsumerServiceImpl(consumer, List.of(retryTopic), createOffsetCommitManager(consumer));
+    }
+
+    private boolean isTransactional() {
+        return transactionalProducerService != null;
+    }
+
+    private KafkaConsumer<String, byte[]> createConsumer() {
+        return createConsumer(consumerProperties);
+    }
+
+    private KafkaConsumer<String, byte[]> createConsumer(Map<String, Object> properties) {
+        return new KafkaConsumer<>(properties, new StringDeserializer(), new ByteArrayDeserializer());
+    }
+
+    private OffsetCommitManager createOffsetCommitManager(Consumer<String, byte[]> consumer) {
+        if (!isTransactional()) {
+            return new OffsetCommitManager(consumer, commitBatchSize, commitIntervalMillis,
+                    kafkaProducerService::flush);
+        }
+
+        Map<String, Object> producerProperties = new HashMap<>(transactionalProducerProperties);
+        producerProperties.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG,
+                transactionalIdPrefix + "-" + consumerCount.getAndIncrement());
+
+        return new TransactionalOffsetCommitManager(consumer, commitBatchSize, commitIntervalMillis,
+                () -> new KafkaProducer<>(producerProperties, new StringSerializer(), new ByteArraySerializer()),
+                transactionalProducerService);
+    }
+}
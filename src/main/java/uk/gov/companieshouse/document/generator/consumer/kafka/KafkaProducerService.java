@@ -1,12 +1,37 @@
 package uk.gov.companieshouse.document.generator.consumer.kafka;
 
+import org.apache.kafka.clients.producer.RecordMetadata;
 import uk.gov.companieshouse.kafka.message.Message;
 
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 
 public interface KafkaProducerService {
 
-    void send(Message kafkaMessage) throws ExecutionException, InterruptedException;
+    /**
+     * Send the message without waiting for it to be acknowledged
+     *
+     * @param kafkaMessage the message to send
+     * @return a future that completes once the broker has acknowledged the message, or completes exceptionally if it
+     *         could not be sent
+     */
+    CompletableFuture<RecordMetadata> send(Message kafkaMessage);
+
+    /**
+     * Send a message produced while processing the consumed message. A transactional producer holds on to it until the
+     * consumed message's offset is committed, and sends the two in the same transaction.
+     *
+     * @param kafkaMessage the message to send
+     * @param consumedMessage the consumed message being processed
+     * @return a future that completes once the message has been acknowledged, or once its transaction has committed
+     */
+    default CompletableFuture<RecordMetadata> send(Message kafkaMessage, Message consumedMessage) {
+        return send(kafkaMessage);
+    }
+
+    /**
+     * Block until every message sent so far has been acknowledged or has failed
+     */
+    void flush();
 
     void close();
 }
@@ -0,0 +1,28 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import uk.gov.companieshouse.kafka.message.Message;
+
+/**
+ * Builds the records the producer services send from the messages given to them, the same whether they are sent
+ * straight away or held for a transaction.
+ */
+public final class ProducerRecords {
+
+    private ProducerRecords() {
+    }
+
+    /**
+     * @return a record for the message's topic, with its key, value and timestamp, leaving the partition to the
+     * producer, and with the headers of a message that has any
+     */
+    public static ProducerRecord<String, byte[]> toProducerRecord(Message kafkaMessage) {
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(kafkaMessage.getTopic(), null,
+                kafkaMessage.getTimestamp(), kafkaMessage.getKey(), kafkaMessage.getValue());
+        if (kafkaMessage instanceof HeaderWritingMessage headerWritingMessage) {
+            headerWritingMessage.writeHeaders(record.headers());
+        }
+
+        return record;
+    }
+}
@@ -0,0 +1,72 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import uk.gov.companieshouse.kafka.message.Message;
+
+/**
+ * A request to generate a document that is waiting on the retry topic. Alongside the original request it carries the
+ * number of times the request has been sent to the retry topic and the time before which it mustn't be retried, which
+ * travel as record headers in decimal text.
+ */
+public class RetryMessage extends Message implements HeaderWritingMessage {
+
+    public static final String ATTEMPT_HEADER = "retry-attempt";
+
+    public static final String NOT_BEFORE_HEADER = "retry-not-before";
+
+    private int attempt;
+
+    private long notBefore;
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public void setAttempt(int attempt) {
+        this.attempt = attempt;
+    }
+
+    /**
+     * @return the epoch millisecond time before which the request mustn't be retried
+     */
+    public long getNotBefore() {
+        return notBefore;
+    }
+
+    public void setNotBefore(long notBefore) {
+        this.notBefore = notBefore;
+    }
+
+    /**
+     * Add the retry attempt and not before time to the headers of the record being produced
+     */
+    @Override
+    public void writeHeaders(Headers headers) {
+        headers.add(ATTEMPT_HEADER, Integer.toString(attempt).getBytes(StandardCharsets.UTF_8));
+        headers.add(NOT_BEFORE_HEADER, Long.toString(notBefore).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read the retry attempt and not before time from the headers of a consumed record. A record without the headers is
+     * treated as a first attempt that can be retried straight away.
+     */
+    public void readHeaders(Headers headers) {
+        attempt = (int) readHeader(headers, ATTEMPT_HEADER, 1);
+        notBefore = readHeader(headers, NOT_BEFORE_HEADER, 0);
+    }
+
+    private static long readHeader(Headers headers, String key, long defaultValue) {
+        Header header = headers.lastHeader(key);
+        if (header == null || header.value() == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(new String(header.value(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
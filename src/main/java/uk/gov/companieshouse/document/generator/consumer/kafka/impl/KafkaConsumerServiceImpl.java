@@ -1,83 +1,171 @@
 package uk.gov.companieshouse.document.generator.consumer.kafka.impl;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
 import java.util.function.Consumer;
-import org.springframework.stereotype.Service;
+
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
 import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaConsumerService;
-import uk.gov.companieshouse.kafka.consumer.CHKafkaConsumerGroup;
-import uk.gov.companieshouse.kafka.consumer.ConsumerConfig;
+import uk.gov.companieshouse.document.generator.consumer.logging.LogGuard;
 import uk.gov.companieshouse.kafka.message.Message;
 import uk.gov.companieshouse.logging.Logger;
 import uk.gov.companieshouse.logging.LoggerFactory;
 
-@Service
-public class KafkaConsumerServiceImpl  implements KafkaConsumerService {
+public class KafkaConsumerServiceImpl implements KafkaConsumerService, ConsumerRebalanceListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
 
-    private final CHKafkaConsumerGroup consumer;
-     private final ObjectMapper objectMapper = new ObjectMapper();
+    protected final org.apache.kafka.clients.consumer.Consumer<String, byte[]> consumer;
+
+    private final List<String> topics;
+
+    private final OffsetCommitManager offsetCommitManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Consumer<Message> callback;
+
+    private Consumer<Collection<TopicPartition>> partitionsRevokedCallback = partitions -> { };
+
+    private boolean paused;
 
-    private Consumer<Message> callback;;
+    public KafkaConsumerServiceImpl(final org.apache.kafka.clients.consumer.Consumer<String, byte[]> consumer,
+            final List<String> topics, final int commitBatchSize, final long commitIntervalMillis,
+            final Runnable beforeCommit) {
+        this(consumer, topics, new OffsetCommitManager(consumer, commitBatchSize, commitIntervalMillis,
+                beforeCommit));
+    }
 
-    public KafkaConsumerServiceImpl(final ConsumerConfig consumerConfig) {
+    /**
+     * Create a consumer service whose offsets are committed by the offset commit manager, such as one committing them
+     * in transactions
+     */
+    public KafkaConsumerServiceImpl(final org.apache.kafka.clients.consumer.Consumer<String, byte[]> consumer,
+            final List<String> topics, final OffsetCommitManager offsetCommitManager) {
         LOG.debug("KafkaConsumerServiceImpl() constructor called.");
 
-        consumer = new CHKafkaConsumerGroup(consumerConfig);;
+        this.consumer = consumer;
+        this.topics = topics;
+        this.offsetCommitManager = offsetCommitManager;
     }
 
     @Override
     public void connect() {
         LOG.debug("connect() method called.");
 
-        consumer.connect();
+        consumer.subscribe(topics, this);
     }
 
     @Override
-    public List<Message> consume() {
+    public List<Message> consume(final Duration timeout) {
+        // Commit the offsets of processed messages once the commit interval has passed.
+        offsetCommitManager.maybeCommit();
+        offsetCommitManager.beforePoll();
+
         // Find list of messages that have been consumed from kafka topic.
-        List<Message> messages = consumer.consume();
+        ConsumerRecords<String, byte[]> records;
+        try {
+            records = consumer.poll(timeout);
+        } catch (WakeupException e) {
+            LOG.debug("Poll woken up, returning no messages");
+            return List.of();
+        }
+        List<Message> messages = new ArrayList<>(records.count());
 
         // Process each message and log output details for debugging.
-        AtomicInteger count = new AtomicInteger();
+        for (ConsumerRecord<String, byte[]> record : records) {
+            Message message = toMessage(record);
+            messages.add(message);
 
-        messages.forEach(message -> {
-            LOG.debug("> Consumed Message -> %d: (%d bytes received...)".formatted(count.incrementAndGet(), message.getValue().length));
-        });
+            if (LogGuard.isDebugEnabled()) {
+                LOG.debug("> Consumed Message -> %d: (%d bytes received...)".formatted(messages.size(), message.getValue().length));
+            }
+        }
 
         return messages;
     }
 
+    /**
+     * Record that the message has been processed. Its offset is committed with the next batch.
+     */
     @Override
     public void commit(final Message message) {
         try {
-            LOG.debug("commit(key=%s) method called.".formatted(message.getKey()));
-            LOG.debug("commit message: %s".formatted(objectMapper.writeValueAsString(message)));
+            if (LogGuard.isDebugEnabled()) {
+                LOG.debug("commit(key=%s) method called.".formatted(message.getKey()));
+                LOG.debug("commit message: %s".formatted(objectMapper.writeValueAsString(message)));
+            }
 
-            consumer.commit(message);
+            offsetCommitManager.markProcessed(new TopicPartition(message.getTopic(), message.getPartition()),
+                    message.getOffset());
+            offsetCommitManager.maybeCommit();
 
             if (callback != null) {
                 callback.accept(message);
             }
-
-            //lastMessage = Optional.of(message);
         } catch (JsonProcessingException e) {
             LOG.debug("commit error: error thrown %s".formatted(e.getMessage()));
         }
     }
 
+    @Override
+    public void pause() {
+        LOG.debug("pause() method called.");
+
+        paused = true;
+        consumer.pause(consumer.assignment());
+    }
+
+    @Override
+    public void resume() {
+        LOG.debug("resume() method called.");
+
+        paused = false;
+        consumer.resume(resumable(consumer.assignment()));
+    }
+
+    @Override
+    public boolean isPaused() {
+        return paused;
+    }
+
+    @Override
+    public Map<TopicPartition, Long> getLag() {
+        Map<TopicPartition, Long> lag = new HashMap<>();
+        for (TopicPartition partition : consumer.assignment()) {
+            consumer.currentLag(partition).ifPresent(partitionLag -> lag.put(partition, partitionLag));
+        }
+
+        return lag;
+    }
+
+    @Override
+    public void wakeup() {
+        LOG.debug("wakeup() method called.");
+
+        consumer.wakeup();
+    }
+
     @Override
     public void closeConsumer() {
         LOG.debug("closeConsumer() method called.");
 
+        offsetCommitManager.commitSync();
         consumer.close();
+        offsetCommitManager.close();
     }
 
     public void setCallback(final Consumer<Message> callback) {
@@ -86,11 +174,55 @@ public class KafkaConsumerServiceImpl  implements KafkaConsumerService {
         this.callback = callback;
     }
 
-    /*
-    public Optional<Message> getLastMessage() {
-        LOG.debug("getLastMessage(message=%s) method called.".formatted(lastMessage));
+    @Override
+    public void setPartitionsRevokedCallback(final Consumer<Collection<TopicPartition>> callback) {
+        this.partitionsRevokedCallback = callback;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        LOG.info("Partitions assigned: " + partitions);
+
+        offsetCommitManager.onPartitionsAssigned(partitions);
+
+        // Newly assigned partitions aren't paused, so stay paused until the backlog allows more to be fetched
+        if (paused) {
+            consumer.pause(partitions);
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        LOG.info("Partitions revoked: " + partitions);
+
+        partitionsRevokedCallback.accept(partitions);
+        offsetCommitManager.onPartitionsRevoked(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Collection<TopicPartition> partitions) {
+        LOG.info("Partitions lost: " + partitions);
+
+        partitionsRevokedCallback.accept(partitions);
+        offsetCommitManager.onPartitionsLost(partitions);
+    }
+
+    /**
+     * @return the partitions that may be resumed once the consumer is no longer paused
+     */
+    protected Collection<TopicPartition> resumable(Collection<TopicPartition> partitions) {
+        return partitions;
+    }
+
+    protected Message toMessage(ConsumerRecord<String, byte[]> record) {
+        Message message = new Message();
+        message.setKey(record.key());
+        message.setValue(record.value());
+        message.setTopic(record.topic());
+        message.setPartition(record.partition());
+        message.setOffset(record.offset());
+        message.setTimestamp(record.timestamp());
 
-        return lastMessage;
+        return message;
     }
-    */
 }
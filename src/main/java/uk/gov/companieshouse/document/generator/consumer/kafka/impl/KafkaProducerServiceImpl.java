@@ -1,33 +1,55 @@
 package uk.gov.companieshouse.document.generator.consumer.kafka.impl;
 
-import java.util.concurrent.ExecutionException;
-import org.springframework.stereotype.Service;
+import java.util.concurrent.CompletableFuture;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
 import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
 import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaProducerService;
+import uk.gov.companieshouse.document.generator.consumer.kafka.ProducerRecords;
+import uk.gov.companieshouse.document.generator.consumer.logging.LogGuard;
 import uk.gov.companieshouse.kafka.message.Message;
-import uk.gov.companieshouse.kafka.producer.CHKafkaProducer;
-import uk.gov.companieshouse.kafka.producer.ProducerConfig;
 import uk.gov.companieshouse.logging.Logger;
 import uk.gov.companieshouse.logging.LoggerFactory;
 
-@Service
 public class KafkaProducerServiceImpl implements KafkaProducerService {
 
     private static final Logger LOG = LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
 
-    private final CHKafkaProducer producer;
+    private final Producer<String, byte[]> producer;
 
-    public KafkaProducerServiceImpl(final ProducerConfig producerConfig) {
+    public KafkaProducerServiceImpl(final Producer<String, byte[]> producer) {
         LOG.debug("Creating kafka producer service " + this.toString());
 
-        producer = new CHKafkaProducer(producerConfig);
+        this.producer = producer;
     }
 
     @Override
-    public void send(Message kafkaMessage) throws ExecutionException, InterruptedException {
-        LOG.debug("Sending kafka message value " + kafkaMessage + " to topic " + kafkaMessage.getTopic());
+    public CompletableFuture<RecordMetadata> send(Message kafkaMessage) {
+        LogGuard.debug(LOG, () -> "Sending kafka message value " + kafkaMessage + " to topic " + kafkaMessage.getTopic());
+
+        ProducerRecord<String, byte[]> record = ProducerRecords.toProducerRecord(kafkaMessage);
+
+        CompletableFuture<RecordMetadata> result = new CompletableFuture<>();
+        try {
+            producer.send(record, (metadata, exception) -> {
+                if (exception != null) {
+                    result.completeExceptionally(exception);
+                } else {
+                    result.complete(metadata);
+                }
+            });
+        } catch (KafkaException | IllegalStateException e) {
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
 
-        producer.send(kafkaMessage);
+    @Override
+    public void flush() {
+        producer.flush();
     }
 
     @Override
@@ -0,0 +1,200 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
+import uk.gov.companieshouse.document.generator.consumer.logging.LogGuard;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Collects the offsets of processed messages and commits them in batches. Offsets are committed asynchronously once
+ * enough messages have been processed or enough time has passed since the last commit, and synchronously when
+ * partitions are revoked or the consumer is closed.
+ * <p>
+ * Before any offsets are committed the {@code beforeCommit} action is run, which waits for the status messages sent
+ * while processing those messages to be acknowledged.
+ * <p>
+ * Like the consumer it commits through, it must only be used from the thread polling the consumer.
+ */
+public class OffsetCommitManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
+
+    protected final Consumer<String, byte[]> consumer;
+
+    private final int batchSize;
+
+    private final long intervalMillis;
+
+    private final Runnable beforeCommit;
+
+    private final Map<TopicPartition, OffsetAndMetadata> pending = new HashMap<>();
+
+    private final Set<TopicPartition> assigned = new HashSet<>();
+
+    private int pendingCount;
+
+    private long lastCommitTime;
+
+    public OffsetCommitManager(Consumer<String, byte[]> consumer, int batchSize, long intervalMillis,
+            Runnable beforeCommit) {
+        this.consumer = consumer;
+        this.batchSize = batchSize;
+        this.intervalMillis = intervalMillis;
+        this.beforeCommit = beforeCommit;
+        this.lastCommitTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Record that the message at the offset has been processed, so the next offset in the partition is committed on
+     * the next flush. Offsets for partitions no longer assigned to the consumer are ignored.
+     */
+    public void markProcessed(TopicPartition partition, long offset) {
+        if (!assigned.contains(partition)) {
+            LogGuard.debug(LOG, () -> "Ignoring processed offset %d for unassigned partition %s".formatted(offset, partition));
+            return;
+        }
+
+        pending.merge(partition, new OffsetAndMetadata(offset + 1),
+                (current, next) -> next.offset() > current.offset() ? next : current);
+        pendingCount++;
+    }
+
+    /**
+     * Commit the pending offsets asynchronously if the batch size or commit interval has been reached.
+     */
+    public void maybeCommit() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (pendingCount >= batchSize || System.currentTimeMillis() - lastCommitTime >= intervalMillis) {
+            commitAsync();
+        }
+    }
+
+    /**
+     * Commit all pending offsets asynchronously. A failed commit is logged rather than retried, as the offsets are
+     * superseded by the next commit for the same partitions.
+     */
+    public void commitAsync() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        beforeCommit.run();
+
+        commitOffsetsAsync(takePending(new HashSet<>(pending.keySet())));
+    }
+
+    /**
+     * Commit all pending offsets synchronously.
+     */
+    public void commitSync() {
+        commitSync(new HashSet<>(pending.keySet()));
+    }
+
+    /**
+     * Called before each poll of the consumer
+     */
+    public void beforePoll() {
+    }
+
+    /**
+     * Release anything held for committing offsets once the consumer has closed
+     */
+    public void close() {
+    }
+
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        assigned.addAll(partitions);
+    }
+
+    /**
+     * Commit the pending offsets for the revoked partitions synchronously, so the consumer they are assigned to next
+     * starts after the last processed message.
+     */
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        commitSync(partitions);
+        assigned.removeAll(partitions);
+    }
+
+    /**
+     * Discard the pending offsets for partitions that have been lost, as they can no longer be committed by this
+     * consumer.
+     */
+    public void onPartitionsLost(Collection<TopicPartition> partitions) {
+        takePending(partitions);
+        assigned.removeAll(partitions);
+    }
+
+    protected boolean isAssigned(TopicPartition partition) {
+        return assigned.contains(partition);
+    }
+
+    private void commitSync(Collection<TopicPartition> partitions) {
+        if (partitions.stream().noneMatch(pending::containsKey)) {
+            return;
+        }
+
+        beforeCommit.run();
+
+        commitOffsetsSync(takePending(partitions));
+    }
+
+    /**
+     * Commit the offsets without waiting for the commit to complete
+     */
+    protected void commitOffsetsAsync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        consumer.commitAsync(offsets, (committed, exception) -> {
+            if (exception != null) {
+                LOG.error("Asynchronous commit of offsets " + committed + " failed: " + exception.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Commit the offsets, waiting for the commit to complete
+     */
+    protected void commitOffsetsSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        try {
+            commitSyncAfterWakeup(offsets);
+        } catch (KafkaException e) {
+            LOG.error("Synchronous commit of offsets " + offsets + " failed: " + e.getMessage());
+        }
+    }
+
+    private void commitSyncAfterWakeup(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        try {
+            consumer.commitSync(offsets);
+        } catch (WakeupException e) {
+            // A wakeup meant to end a poll early is raised by the next blocking call instead, and cleared once thrown
+            consumer.commitSync(offsets);
+        }
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> takePending(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            OffsetAndMetadata offset = pending.remove(partition);
+            if (offset != null) {
+                offsets.put(partition, offset);
+            }
+        }
+
+        if (pending.isEmpty()) {
+            pendingCount = 0;
+        }
+        lastCommitTime = System.currentTimeMillis();
+
+        return offsets;
+    }
+}
@@ -0,0 +1,137 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+
+import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
+import uk.gov.companieshouse.document.generator.consumer.kafka.RetryMessage;
+import uk.gov.companieshouse.document.generator.consumer.logging.LogGuard;
+import uk.gov.companieshouse.kafka.message.Message;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Consumes the retry topic, only returning each message once its not before time has passed. When a message isn't due
+ * yet its partition is paused, and the consumer seeks back to it, until it is due. Messages on a partition are retried
+ * in order, while the other partitions carry on, and the consumer keeps polling so it stays in the consumer group. These
+ * partitions stay paused if the whole consumer is paused and resumed before they are due.
+ */
+public class RetryKafkaConsumerServiceImpl extends KafkaConsumerServiceImpl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
+
+    /**
+     * Paused partitions and the epoch millisecond time their next message is due
+     */
+    private final Map<TopicPartition, Long> pausedUntil = new HashMap<>();
+
+    public RetryKafkaConsumerServiceImpl(final org.apache.kafka.clients.consumer.Consumer<String, byte[]> consumer,
+            final List<String> topics, final int commitBatchSize, final long commitIntervalMillis,
+            final Runnable beforeCommit) {
+        super(consumer, topics, commitBatchSize, commitIntervalMillis, beforeCommit);
+    }
+
+    public RetryKafkaConsumerServiceImpl(final org.apache.kafka.clients.consumer.Consumer<String, byte[]> consumer,
+            final List<String> topics, final OffsetCommitManager offsetCommitManager) {
+        super(consumer, topics, offsetCommitManager);
+    }
+
+    @Override
+    public List<Message> consume(final Duration timeout) {
+        resumeDuePartitions();
+
+        List<Message> consumed = super.consume(timeout);
+        List<Message> due = new ArrayList<>(consumed.size());
+        Set<TopicPartition> held = new HashSet<>();
+        long now = System.currentTimeMillis();
+
+        for (Message message : consumed) {
+            TopicPartition partition = new TopicPartition(message.getTopic(), message.getPartition());
+            if (held.contains(partition)) {
+                continue;
+            }
+
+            long notBefore = ((RetryMessage) message).getNotBefore();
+            if (notBefore > now) {
+                // Leave this and every later message on the partition to be fetched again once it is due
+                consumer.seek(partition, message.getOffset());
+                consumer.pause(List.of(partition));
+                pausedUntil.put(partition, notBefore);
+                held.add(partition);
+
+                LogGuard.debug(LOG, () -> "Pausing %s until %d".formatted(partition, notBefore));
+            } else {
+                due.add(message);
+            }
+        }
+
+        return due;
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        pausedUntil.keySet().removeAll(partitions);
+
+        super.onPartitionsRevoked(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Collection<TopicPartition> partitions) {
+        pausedUntil.keySet().removeAll(partitions);
+
+        super.onPartitionsLost(partitions);
+    }
+
+    /**
+     * Partitions waiting for the message at their head to be due stay paused when the whole consumer is resumed
+     */
+    @Override
+    protected Collection<TopicPartition> resumable(Collection<TopicPartition> partitions) {
+        List<TopicPartition> resumable = new ArrayList<>(partitions);
+        resumable.removeAll(pausedUntil.keySet());
+
+        return resumable;
+    }
+
+    @Override
+    protected Message toMessage(ConsumerRecord<String, byte[]> record) {
+        RetryMessage message = new RetryMessage();
+        message.setKey(record.key());
+        message.setValue(record.value());
+        message.setTopic(record.topic());
+        message.setPartition(record.partition());
+        message.setOffset(record.offset());
+        message.setTimestamp(record.timestamp());
+        message.readHeaders(record.headers());
+
+        return message;
+    }
+
+    private void resumeDuePartitions() {
+        long now = System.currentTimeMillis();
+        List<TopicPartition> due = new ArrayList<>();
+
+        for (Iterator<Map.Entry<TopicPartition, Long>> it = pausedUntil.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<TopicPartition, Long> entry = it.next();
+            if (entry.getValue() <= now) {
+                due.add(entry.getKey());
+                it.remove();
+            }
+        }
+
+        // While the whole consumer is paused the due partitions are left to be resumed along with the rest
+        if (!due.isEmpty() && !isPaused()) {
+            consumer.resume(due);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
+import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaProducerService;
+import uk.gov.companieshouse.document.generator.consumer.kafka.ProducerRecords;
+import uk.gov.companieshouse.document.generator.consumer.logging.LogGuard;
+import uk.gov.companieshouse.kafka.message.Message;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Holds the messages sent while processing each consumed message until that message's offset is committed. The
+ * consumer committing the offset takes the messages sent for it and sends them, with the offset, in one transaction
+ * through its own transactional producer, so a consumed message's status messages are only seen once its offset is
+ * committed and aren't sent again when it is redelivered.
+ * <p>
+ * Messages are held by the partition and offset of the consumed message. Each partition is only assigned to one
+ * consumer at a time, so one instance is shared by every consumer.
+ */
+public class TransactionalKafkaProducerService implements KafkaProducerService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<TopicPartition, List<PendingRecord>> pending = new HashMap<>();
+
+    /**
+     * Messages must be sent with the consumed message they were produced for, so this fails.
+     */
+    @Override
+    public CompletableFuture<RecordMetadata> send(Message kafkaMessage) {
+        return CompletableFuture.failedFuture(new IllegalStateException("Message to " + kafkaMessage.getTopic()
+                + " sent without the consumed message it was produced for"));
+    }
+
+    @Override
+    public CompletableFuture<RecordMetadata> send(Message kafkaMessage, Message consumedMessage) {
+        LogGuard.debug(LOG, () -> "Holding kafka message value " + kafkaMessage + " to topic " + kafkaMessage.getTopic()
+                + " until offset " + consumedMessage.getOffset() + " is committed");
+
+        ProducerRecord<String, byte[]> record = ProducerRecords.toProducerRecord(kafkaMessage);
+
+        PendingRecord pendingRecord = new PendingRecord(consumedMessage.getOffset(), record, new CompletableFuture<>());
+        TopicPartition partition = new TopicPartition(consumedMessage.getTopic(), consumedMessage.getPartition());
+
+        lock.lock();
+        try {
+            pending.computeIfAbsent(partition, p -> new ArrayList<>()).add(pendingRecord);
+        } finally {
+            lock.unlock();
+        }
+
+        return pendingRecord.result();
+    }
+
+    /**
+     * Take the messages sent for consumed messages before the offsets about to be committed, in the order they were
+     * sent. The committing consumer completes their futures once its transaction has committed or aborted.
+     */
+    public List<PendingRecord> take(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        List<PendingRecord> records = new ArrayList<>();
+
+        lock.lock();
+        try {
+            offsets.forEach((partition, offset) -> {
+                List<PendingRecord> partitionRecords = pending.get(partition);
+                if (partitionRecords == null) {
+                    return;
+                }
+                for (Iterator<PendingRecord> it = partitionRecords.iterator(); it.hasNext(); ) {
+                    PendingRecord pendingRecord = it.next();
+                    if (pendingRecord.consumedOffset() < offset.offset()) {
+                        records.add(pendingRecord);
+                        it.remove();
+                    }
+                }
+                if (partitionRecords.isEmpty()) {
+                    pending.remove(partition);
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+
+        return records;
+    }
+
+    /**
+     * Drop the messages held for the partitions, failing their futures, as the consumed messages they were sent for
+     * will be processed again.
+     */
+    public void discard(Collection<TopicPartition> partitions) {
+        List<PendingRecord> discarded = new ArrayList<>();
+
+        lock.lock();
+        try {
+            for (TopicPartition partition : partitions) {
+                List<PendingRecord> partitionRecords = pending.remove(partition);
+                if (partitionRecords != null) {
+                    discarded.addAll(partitionRecords);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (!discarded.isEmpty()) {
+            LOG.info("Discarding " + discarded.size() + " message(s) held for partitions " + partitions
+                    + ", whose consumed messages will be redelivered");
+            IllegalStateException exception = new IllegalStateException("Consumed message will be redelivered");
+            discarded.forEach(pendingRecord -> pendingRecord.result().completeExceptionally(exception));
+        }
+    }
+
+    /**
+     * Messages are only sent as part of a transaction committing offsets, so there is nothing to flush.
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+        LOG.debug("Closing transactional kafka producer service " + this.toString());
+
+        lock.lock();
+        try {
+            discard(List.copyOf(pending.keySet()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A message held until the offset of the consumed message it was sent for is committed
+     */
+    public record PendingRecord(long consumedOffset, ProducerRecord<String, byte[]> record,
+                                CompletableFuture<RecordMetadata> result) {
+    }
+}
@@ -0,0 +1,208 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
+import uk.gov.companieshouse.document.generator.consumer.kafka.impl.TransactionalKafkaProducerService.PendingRecord;
+import uk.gov.companieshouse.document.generator.consumer.logging.LogGuard;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Commits the offsets of processed messages in a transaction, together with the messages sent while processing them,
+ * through a transactional producer owned by the consumer. Batches are committed when they would otherwise be committed
+ * directly through the consumer, so many messages share each transaction.
+ * <p>
+ * If a transaction fails it is aborted and the consumer is rewound to the first message in it, so those messages are
+ * processed again. Messages already consumed from the rewound partitions are processed as usual until the next poll,
+ * but their offsets are ignored and the messages sent for them are dropped, as they will be redelivered. A producer
+ * that can no longer be used, because it was fenced, is replaced before the next transaction.
+ */
+public class TransactionalOffsetCommitManager extends OffsetCommitManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
+
+    private final Supplier<Producer<String, byte[]>> producerFactory;
+
+    private final TransactionalKafkaProducerService transactionalProducerService;
+
+    /**
+     * The offset of the first processed message in each partition not yet committed, which a failed transaction
+     * rewinds the partition to
+     */
+    private final Map<TopicPartition, Long> firstUncommitted = new HashMap<>();
+
+    /**
+     * Partitions rewound after a failed transaction whose messages haven't been polled again yet
+     */
+    private final Set<TopicPartition> rewound = new HashSet<>();
+
+    private Producer<String, byte[]> producer;
+
+    /**
+     * @param producerFactory creates the consumer's transactional producer, each time with the same transactional id
+     * @param transactionalProducerService holds the messages sent while processing each consumed message
+     */
+    public TransactionalOffsetCommitManager(Consumer<String, byte[]> consumer, int batchSize, long intervalMillis,
+            Supplier<Producer<String, byte[]>> producerFactory,
+            TransactionalKafkaProducerService transactionalProducerService) {
+        super(consumer, batchSize, intervalMillis, () -> {});
+        this.producerFactory = producerFactory;
+        this.transactionalProducerService = transactionalProducerService;
+    }
+
+    @Override
+    public void markProcessed(TopicPartition partition, long offset) {
+        if (rewound.contains(partition)) {
+            LogGuard.debug(LOG, () -> "Ignoring processed offset %d for rewound partition %s".formatted(offset, partition));
+            return;
+        }
+
+        super.markProcessed(partition, offset);
+        if (isAssigned(partition)) {
+            firstUncommitted.putIfAbsent(partition, offset);
+        }
+    }
+
+    /**
+     * Drop the messages sent for messages from rewound partitions once the partitions are about to be polled again
+     */
+    @Override
+    public void beforePoll() {
+        if (!rewound.isEmpty()) {
+            transactionalProducerService.discard(rewound);
+            rewound.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (producer != null) {
+            producer.close();
+            producer = null;
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        super.onPartitionsRevoked(partitions);
+        forget(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Collection<TopicPartition> partitions) {
+        super.onPartitionsLost(partitions);
+        forget(partitions);
+    }
+
+    @Override
+    protected void commitOffsetsAsync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        commitTransaction(offsets);
+    }
+
+    @Override
+    protected void commitOffsetsSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        commitTransaction(offsets);
+    }
+
+    private void commitTransaction(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        List<PendingRecord> records = transactionalProducerService.take(offsets);
+        List<Future<RecordMetadata>> sent = new ArrayList<>(records.size());
+
+        try {
+            Producer<String, byte[]> transactionalProducer = producer();
+            transactionalProducer.beginTransaction();
+            for (PendingRecord pendingRecord : records) {
+                sent.add(transactionalProducer.send(pendingRecord.record()));
+            }
+            transactionalProducer.sendOffsetsToTransaction(offsets, consumer.groupMetadata());
+            transactionalProducer.commitTransaction();
+        } catch (KafkaException e) {
+            LOG.error("Transaction committing offsets " + offsets + " with " + records.size() + " message(s) failed,"
+                    + " rewinding to process their consumed messages again: " + e.getMessage());
+            abortTransaction();
+            records.forEach(pendingRecord -> pendingRecord.result().completeExceptionally(e));
+            rewind(offsets.keySet());
+            return;
+        }
+
+        offsets.keySet().forEach(firstUncommitted::remove);
+        for (int i = 0; i < records.size(); i++) {
+            complete(records.get(i), sent.get(i));
+        }
+    }
+
+    private Producer<String, byte[]> producer() {
+        if (producer == null) {
+            Producer<String, byte[]> created = producerFactory.get();
+            try {
+                created.initTransactions();
+            } catch (KafkaException e) {
+                created.close(Duration.ZERO);
+                throw e;
+            }
+            producer = created;
+        }
+
+        return producer;
+    }
+
+    private void abortTransaction() {
+        if (producer == null) {
+            return;
+        }
+
+        try {
+            producer.abortTransaction();
+        } catch (KafkaException e) {
+            LOG.error("Transactional producer can no longer be used and will be replaced: " + e.getMessage());
+            producer.close(Duration.ZERO);
+            producer = null;
+        }
+    }
+
+    private void rewind(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            Long offset = firstUncommitted.remove(partition);
+            if (offset != null && isAssigned(partition)) {
+                consumer.seek(partition, offset);
+                rewound.add(partition);
+            }
+        }
+    }
+
+    private void forget(Collection<TopicPartition> partitions) {
+        transactionalProducerService.discard(partitions);
+        firstUncommitted.keySet().removeAll(partitions);
+        rewound.removeAll(partitions);
+    }
+
+    /**
+     * Complete the future of a message sent in a committed transaction, whose send has already completed
+     */
+    private static void complete(PendingRecord pendingRecord, Future<RecordMetadata> send) {
+        try {
+            pendingRecord.result().complete(send.get());
+        } catch (ExecutionException e) {
+            pendingRecord.result().completeExceptionally(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pendingRecord.result().completeExceptionally(e);
+        }
+    }
+}
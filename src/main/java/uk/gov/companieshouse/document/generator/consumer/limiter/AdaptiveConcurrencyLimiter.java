@@ -0,0 +1,221 @@
+package uk.gov.companieshouse.document.generator.consumer.limiter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the number of concurrent requests to a downstream service, adjusting the limit to how the service responds
+ * using additive increase, multiplicative decrease (AIMD).
+ * <p>
+ * Every request that succeeds within the latency tolerance while the limit is in use raises the limit by
+ * {@code 1 / limit}, so the limit grows by about one for each round of requests. A request that fails because the
+ * service is overloaded, or whose latency is more than {@code latencyTolerance} times the long term average, cuts the
+ * limit by the backoff ratio. Requests over the limit wait for a permit, up to the maximum wait.
+ * <p>
+ * The current limit, the requests in flight, the time spent waiting for a permit and the requests that gave up waiting
+ * are published as metrics.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    public static final String LIMIT_METRIC = "document.generator.limiter.limit";
+
+    public static final String IN_FLIGHT_METRIC = "document.generator.limiter.in.flight";
+
+    public static final String QUEUE_METRIC = "document.generator.limiter.queue";
+
+    public static final String REJECTED_METRIC = "document.generator.limiter.rejected";
+
+    /**
+     * Weight given to each new sample in the long term average latency
+     */
+    private static final double LATENCY_SMOOTHING = 0.05;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double backoffRatio;
+
+    private final double latencyTolerance;
+
+    private final long maxWaitNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition permitReleased = lock.newCondition();
+
+    private final Timer queueTimer;
+
+    private final Counter rejected;
+
+    private double limit;
+
+    private int inFlight;
+
+    private double averageLatencyNanos;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+            double latencyTolerance, long maxWaitMillis, MeterRegistry meterRegistry) {
+        this(initialLimit, minLimit, maxLimit, backoffRatio, latencyTolerance, maxWaitMillis, meterRegistry,
+                System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+            double latencyTolerance, long maxWaitMillis, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Concurrency limits must satisfy 1 <= minimum <= initial <= maximum but"
+                    + " were " + minLimit + ", " + initialLimit + " and " + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1 || latencyTolerance <= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1 and latency tolerance greater"
+                    + " than 1 but were " + backoffRatio + " and " + latencyTolerance);
+        }
+
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.nanoClock = nanoClock;
+
+        Gauge.builder(LIMIT_METRIC, this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current limit on concurrent document generator api requests")
+                .register(meterRegistry);
+        Gauge.builder(IN_FLIGHT_METRIC, this, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Document generator api requests in flight")
+                .register(meterRegistry);
+        this.queueTimer = Timer.builder(QUEUE_METRIC)
+                .description("Time spent waiting for the concurrency limit before calling the document generator api")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejected = Counter.builder(REJECTED_METRIC)
+                .description("Document generator api requests that gave up waiting for the concurrency limit")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Wait, up to the maximum wait, until a request can be made within the limit
+     *
+     * @return the permit to report the request's outcome through, or empty if none became available in time
+     */
+    public Optional<Permit> acquire() throws InterruptedException {
+        long start = nanoClock.getAsLong();
+
+        lock.lock();
+        try {
+            long remaining = maxWaitNanos;
+            while (inFlight >= (int) limit) {
+                if (remaining <= 0) {
+                    queueTimer.record(nanoClock.getAsLong() - start, TimeUnit.NANOSECONDS);
+                    rejected.increment();
+                    return Optional.empty();
+                }
+                remaining = permitReleased.awaitNanos(remaining);
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+
+        long acquired = nanoClock.getAsLong();
+        queueTimer.record(acquired - start, TimeUnit.NANOSECONDS);
+
+        return Optional.of(new Permit(acquired));
+    }
+
+    public double getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long latencyNanos, Outcome outcome) {
+        lock.lock();
+        try {
+            // Only the requests that had the limit in use show whether it could be higher
+            boolean limitInUse = inFlight >= (int) limit - 1;
+            inFlight--;
+
+            if (outcome == Outcome.DROPPED) {
+                decrease();
+            } else if (outcome == Outcome.SUCCESS) {
+                boolean slow = averageLatencyNanos > 0 && latencyNanos > averageLatencyNanos * latencyTolerance;
+                averageLatencyNanos = averageLatencyNanos == 0 ? latencyNanos
+                        : averageLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - averageLatencyNanos);
+
+                if (slow) {
+                    decrease();
+                } else if (limitInUse) {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+
+    private enum Outcome {
+        SUCCESS, DROPPED, IGNORED
+    }
+
+    /**
+     * A request made within the limit. Exactly one of its methods must be called once the request has finished.
+     */
+    public final class Permit {
+
+        private final long start;
+
+        private Permit(long start) {
+            this.start = start;
+        }
+
+        /**
+         * The request succeeded; its latency counts towards adjusting the limit
+         */
+        public void onSuccess() {
+            release(nanoClock.getAsLong() - start, Outcome.SUCCESS);
+        }
+
+        /**
+         * The request failed in a way that suggests the service is overloaded, such as a timeout or server error
+         */
+        public void onDropped() {
+            release(nanoClock.getAsLong() - start, Outcome.DROPPED);
+        }
+
+        /**
+         * The request failed for reasons unrelated to the service's load, such as a rejected request
+         */
+        public void onIgnore() {
+            release(nanoClock.getAsLong() - start, Outcome.IGNORED);
+        }
+    }
+}
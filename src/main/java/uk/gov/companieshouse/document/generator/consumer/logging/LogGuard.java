@@ -0,0 +1,83 @@
+package uk.gov.companieshouse.document.generator.consumer.logging;
+
+import java.util.function.Supplier;
+
+import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
+import uk.gov.companieshouse.logging.Logger;
+
+/**
+ * Level checks for the log statements on the message processing path, so their messages and payloads are only built
+ * when they will be written.
+ * <p>
+ * The info lines logged for every message can also be sampled, keeping those of only a fraction of the requests.
+ * Whether a request is sampled depends only on its id, so each sampled request keeps every one of its info lines, in
+ * each consumer and on each redelivery. Errors, and info lines about failures and retries, are never sampled.
+ */
+public final class LogGuard {
+
+    /**
+     * The logger the application's structured logger writes through, whose level decides what is written
+     */
+    private static final org.slf4j.Logger LOG_LEVEL =
+            org.slf4j.LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
+
+    private static final int SAMPLE_BITS = 24;
+
+    private static final int SAMPLE_RANGE = 1 << SAMPLE_BITS;
+
+    /**
+     * The number of requests out of every {@link #SAMPLE_RANGE} whose info lines are logged
+     */
+    private static volatile int sampleThreshold = SAMPLE_RANGE;
+
+    private LogGuard() {
+    }
+
+    /**
+     * @param rate the fraction of requests, from 0 to 1, whose per message info lines are logged
+     */
+    public static void setMessageSampleRate(double rate) {
+        if (!(rate >= 0.0 && rate <= 1.0)) {
+            throw new IllegalArgumentException("Message log sample rate must be between 0 and 1 but was " + rate);
+        }
+        sampleThreshold = (int) Math.round(rate * SAMPLE_RANGE);
+    }
+
+    public static boolean isDebugEnabled() {
+        return LOG_LEVEL.isDebugEnabled();
+    }
+
+    public static boolean isInfoEnabled() {
+        return LOG_LEVEL.isInfoEnabled();
+    }
+
+    /**
+     * @param requestId the id of the request the info line is logged for, null if it isn't known
+     * @return whether info logging is enabled and the request is sampled
+     */
+    public static boolean isInfoSampled(String requestId) {
+        int threshold = sampleThreshold;
+        if (threshold < SAMPLE_RANGE && (requestId == null || sample(requestId) >= threshold)) {
+            return false;
+        }
+
+        return LOG_LEVEL.isInfoEnabled();
+    }
+
+    /**
+     * Log a debug line, only building it when debug logging is enabled
+     */
+    public static void debug(Logger log, Supplier<String> message) {
+        if (LOG_LEVEL.isDebugEnabled()) {
+            log.debug(message.get());
+        }
+    }
+
+    /**
+     * Spread the request id's hash code over the sample range, taking the top bits of a multiplicative hash so ids
+     * that differ only in their last characters are sampled independently
+     */
+    private static int sample(String requestId) {
+        return (requestId.hashCode() * 0x9E3779B9) >>> (Integer.SIZE - SAMPLE_BITS);
+    }
+}
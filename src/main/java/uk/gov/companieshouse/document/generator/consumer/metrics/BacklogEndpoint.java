@@ -0,0 +1,42 @@
+package uk.gov.companieshouse.document.generator.consumer.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint reporting the backlog of this instance of the service, for scaling on: the lag of each topic and
+ * of each partition assigned to its consumers, the messages processed per second and the messages being processed.
+ */
+@Component
+@Endpoint(id = "backlog")
+public class BacklogEndpoint {
+
+    private final ConsumerProgress consumerProgress;
+
+    public BacklogEndpoint(ConsumerProgress consumerProgress) {
+        this.consumerProgress = consumerProgress;
+    }
+
+    @ReadOperation
+    public Backlog backlog() {
+        Map<String, Map<Integer, Long>> partitionLag = consumerProgress.getLag();
+        Map<String, Long> lag = new TreeMap<>();
+        partitionLag.forEach((topic, partitions) -> lag.put(topic,
+                partitions.values().stream().mapToLong(Long::longValue).sum()));
+
+        return new Backlog(lag, consumerProgress.getRate(), consumerProgress.getInFlight(), partitionLag);
+    }
+
+    /**
+     * @param lag               the total lag of the partitions of each topic assigned to this instance
+     * @param messagesPerSecond the messages processed per second, averaged over about the last minute
+     * @param inFlight          the messages being processed
+     * @param partitionLag      the lag of each partition assigned to this instance, by topic
+     */
+    public record Backlog(Map<String, Long> lag, double messagesPerSecond, int inFlight,
+                          Map<String, Map<Integer, Long>> partitionLag) {
+    }
+}
@@ -0,0 +1,202 @@
+package uk.gov.companieshouse.document.generator.consumer.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * How far behind the consumers in this instance of the service are, and how quickly they are catching up, so the
+ * service can be scaled on its backlog rather than on CPU, which stays low while it waits on the document generator
+ * api however far behind it falls.
+ * <p>
+ * The lag of each partition assigned to a consumer is updated on every poll, from the position the consumer last
+ * fetched up to plus the messages it has fetched that are still waiting to be processed, and dropped once the partition
+ * is no longer assigned to it. The rate is the number of messages
+ * processed per second, averaged over about the last minute. Both, and the number of messages being processed, are
+ * published as metrics and through the backlog actuator endpoint.
+ */
+@Component
+public class ConsumerProgress {
+
+    public static final String LAG_METRIC = "document.generator.consumer.lag";
+
+    public static final String RATE_METRIC = "document.generator.consumer.rate";
+
+    public static final String IN_FLIGHT_METRIC = "document.generator.consumer.in.flight";
+
+    private static final long RATE_UPDATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final double RATE_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final LongSupplier nanoClock;
+
+    /**
+     * The lag last reported by each consumer, for the partitions assigned to it
+     */
+    private final Map<Object, Map<TopicPartition, Long>> lagByConsumer = new ConcurrentHashMap<>();
+
+    private final Map<TopicPartition, Long> lag = new ConcurrentHashMap<>();
+
+    private final MultiGauge lagGauge;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder processed = new LongAdder();
+
+    private final ReentrantLock lagLock = new ReentrantLock();
+
+    private final ReentrantLock rateLock = new ReentrantLock();
+
+    private long lastRateUpdate;
+
+    private long processedAtLastRateUpdate;
+
+    private volatile double rate;
+
+    @Autowired
+    public ConsumerProgress(MeterRegistry meterRegistry) {
+        this(meterRegistry, System::nanoTime);
+    }
+
+    ConsumerProgress(MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.lastRateUpdate = nanoClock.getAsLong();
+
+        this.lagGauge = MultiGauge.builder(LAG_METRIC)
+                .description("Messages in each assigned partition not yet fetched, or fetched and waiting to be processed")
+                .register(meterRegistry);
+        Gauge.builder(RATE_METRIC, this, ConsumerProgress::getRate)
+                .description("Messages processed per second, averaged over the last minute")
+                .register(meterRegistry);
+        Gauge.builder(IN_FLIGHT_METRIC, inFlight, AtomicInteger::get)
+                .description("Messages being processed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Replace the lag reported by the consumer with the lag of the partitions now assigned to it
+     *
+     * @param consumer the consumer reporting its lag
+     * @param lag the lag of each partition assigned to the consumer whose lag is known
+     */
+    public void updateLag(Object consumer, Map<TopicPartition, Long> lag) {
+        lagLock.lock();
+        try {
+            Map<TopicPartition, Long> previous = lagByConsumer.put(consumer, Map.copyOf(lag));
+            this.lag.putAll(lag);
+
+            if (previous == null || !previous.keySet().equals(lag.keySet())) {
+                onAssignmentChanged(previous == null ? Set.of() : previous.keySet());
+            }
+        } finally {
+            lagLock.unlock();
+        }
+    }
+
+    /**
+     * Drop the lag reported by the consumer once it has closed
+     */
+    public void removeConsumer(Object consumer) {
+        lagLock.lock();
+        try {
+            Map<TopicPartition, Long> previous = lagByConsumer.remove(consumer);
+            if (previous != null) {
+                onAssignmentChanged(previous.keySet());
+            }
+        } finally {
+            lagLock.unlock();
+        }
+    }
+
+    public void messageStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void messageFinished() {
+        inFlight.decrementAndGet();
+        processed.increment();
+    }
+
+    /**
+     * Fold the messages processed since the last update into the rate, at most once a second however many consumers
+     * call it. Called on every poll.
+     */
+    public void updateRate() {
+        if (!rateLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = nanoClock.getAsLong();
+            long elapsed = now - lastRateUpdate;
+            if (elapsed < RATE_UPDATE_INTERVAL_NANOS) {
+                return;
+            }
+
+            long total = processed.sum();
+            double current = (total - processedAtLastRateUpdate) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            // Exponentially weighted, so a longer gap between updates gives the latest rate more weight
+            double weight = 1 - Math.exp(-elapsed / RATE_WINDOW_NANOS);
+            rate += weight * (current - rate);
+
+            lastRateUpdate = now;
+            processedAtLastRateUpdate = total;
+        } finally {
+            rateLock.unlock();
+        }
+    }
+
+    /**
+     * @return the lag of each partition assigned to a consumer, by topic and partition
+     */
+    public Map<String, Map<Integer, Long>> getLag() {
+        Map<String, Map<Integer, Long>> lagByTopic = new TreeMap<>();
+        lag.forEach((partition, partitionLag) -> lagByTopic
+                .computeIfAbsent(partition.topic(), topic -> new TreeMap<>())
+                .put(partition.partition(), partitionLag));
+
+        return lagByTopic;
+    }
+
+    /**
+     * @return the messages processed per second, averaged over about the last minute
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Drop the lag of partitions no longer assigned to any consumer and publish a gauge for each partition that is.
+     * Called with the lag lock held.
+     */
+    private void onAssignmentChanged(Set<TopicPartition> previouslyAssigned) {
+        Set<TopicPartition> assigned = new HashSet<>();
+        lagByConsumer.values().forEach(consumerLag -> assigned.addAll(consumerLag.keySet()));
+        previouslyAssigned.stream()
+                .filter(partition -> !assigned.contains(partition))
+                .forEach(lag::remove);
+
+        lagGauge.register(assigned.stream()
+                .<MultiGauge.Row<?>>map(partition -> MultiGauge.Row.of(Tags.of("topic", partition.topic(), "partition",
+                        String.valueOf(partition.partition())), partition,
+                        p -> lag.getOrDefault(p, 0L)))
+                .toList(), true);
+    }
+}
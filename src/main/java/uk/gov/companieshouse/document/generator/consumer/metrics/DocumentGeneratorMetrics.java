@@ -0,0 +1,101 @@
+package uk.gov.companieshouse.document.generator.consumer.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Locale;
+import org.springframework.stereotype.Component;
+
+/**
+ * Timers for each stage a consumed message goes through, and counters of the messages processed, tagged by document
+ * type and outcome. The timers publish percentile histograms, so latency percentiles can be aggregated across
+ * instances.
+ */
+@Component
+public class DocumentGeneratorMetrics {
+
+    public static final String STAGE_METRIC = "document.generator.stage";
+
+    public static final String MESSAGES_METRIC = "document.generator.messages";
+
+    public static final String COMMIT_METRIC = "document.generator.offset.commit";
+
+    /**
+     * Document type used when the message couldn't be deserialised
+     */
+    public static final String UNKNOWN_DOCUMENT_TYPE = "unknown";
+
+    private static final String STAGE_TAG = "stage";
+
+    private static final String DOCUMENT_TYPE_TAG = "document_type";
+
+    private static final String OUTCOME_TAG = "outcome";
+
+    public enum Stage {
+        DESERIALISE, STARTED_SEND, API_CALL, COMPLETED_SEND, FAILED_SEND, RETRY_SEND, DEAD_LETTER_SEND;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    public enum Outcome {
+        SUCCESS, FAILURE;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The final state of a consumed message
+     */
+    public enum Result {
+        COMPLETED, FAILED, RETRIED, DEAD_LETTERED, ERROR;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    public DocumentGeneratorMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Timer.Sample startTimer() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void recordStage(Timer.Sample sample, Stage stage, String documentType, Outcome outcome) {
+        sample.stop(Timer.builder(STAGE_METRIC)
+                .description("Time taken by each stage of processing a message")
+                .tag(STAGE_TAG, stage.tag)
+                .tag(DOCUMENT_TYPE_TAG, documentType(documentType))
+                .tag(OUTCOME_TAG, outcome.tag)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    /**
+     * Record a message that has finished processing
+     *
+     * @param result {@link Result#COMPLETED} if the document was generated, {@link Result#FAILED} if a failed message
+     *               was sent, {@link Result#RETRIED} if the request was sent to the retry topic and
+     *               {@link Result#ERROR} if no status could be reported
+     */
+    public void recordMessage(String documentType, Result result) {
+        Counter.builder(MESSAGES_METRIC)
+                .description("Messages processed")
+                .tag(DOCUMENT_TYPE_TAG, documentType(documentType))
+                .tag(OUTCOME_TAG, result.tag)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void recordCommit(Timer.Sample sample) {
+        sample.stop(Timer.builder(COMMIT_METRIC)
+                .description("Time taken to record or commit the offsets of processed messages")
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private static String documentType(String documentType) {
+        return documentType == null || documentType.isEmpty() ? UNKNOWN_DOCUMENT_TYPE : documentType;
+    }
+}
@@ -1,5 +1,7 @@
 package uk.gov.companieshouse.document.generator.consumer.processor;
 
+import java.time.Duration;
+
 public interface MessageProcessor {
 
     /**
@@ -8,4 +10,20 @@ public interface MessageProcessor {
      * @throws InterruptedException
      */
     void processKafkaMessage() throws InterruptedException;
+
+    /**
+     * Stop processing the rest of the messages from the last poll. May be called from any thread; messages already
+     * being processed carry on, and the offsets of those not processed are left uncommitted so they are redelivered.
+     */
+    void stop();
+
+    /**
+     * Wait up to the timeout for the messages still being processed to complete, then record the offsets of those
+     * that did so they are committed when the consumer is closed. Called by the polling thread once it has stopped
+     * polling.
+     *
+     * @return true if every message completed within the timeout
+     * @throws InterruptedException
+     */
+    boolean drain(Duration timeout) throws InterruptedException;
 }
@@ -1,6 +1,6 @@
 package uk.gov.companieshouse.document.generator.consumer.processor;
 
-import org.springframework.beans.factory.annotation.Autowired;
+import java.time.Duration;
 import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
 import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaConsumerService;
 import uk.gov.companieshouse.logging.Logger;
@@ -8,16 +8,21 @@ import uk.gov.companieshouse.logging.LoggerFactory;
 
 public class MessageProcessorRunner implements Runnable {
 
-    @Autowired
-    private MessageProcessor messageProcessor;
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
 
-    @Autowired
-    private KafkaConsumerService kafkaConsumerService;
+    private final MessageProcessor messageProcessor;
 
-    private static final Logger LOG = LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
+    private final KafkaConsumerService kafkaConsumerService;
+
+    // Written by the thread shutting the application down and read by the polling thread
+    private volatile boolean active = true;
+    private volatile boolean processing = false;
+    private volatile long drainDeadlineNanos;
 
-    private boolean active = true;
-    private boolean processing = false;
+    public MessageProcessorRunner(MessageProcessor messageProcessor, KafkaConsumerService kafkaConsumerService) {
+        this.messageProcessor = messageProcessor;
+        this.kafkaConsumerService = kafkaConsumerService;
+    }
 
     @Override
     public void run() {
@@ -37,9 +42,53 @@ public class MessageProcessorRunner implements Runnable {
         } catch(InterruptedException e) {
             LOG.error(e);
             Thread.currentThread().interrupt();
+        } finally {
+            drain();
+
+            // The consumer is not thread safe so it is closed by the thread that polls it. Closing commits the
+            // recorded offsets, flushing the producer first.
+            LOG.info("Proceed to close consumer connection");
+            kafkaConsumerService.closeConsumer();
+        }
+    }
+
+    /**
+     * Stop polling straight away, waking up a poll in progress, and stop processing the rest of the messages from the
+     * last poll. The runner then waits up to the drain timeout for the messages being processed to complete before
+     * closing its consumer.
+     *
+     * @param drainTimeout the longest time to wait for messages being processed
+     */
+    public void stop(Duration drainTimeout) {
+        drainDeadlineNanos = System.nanoTime() + drainTimeout.toNanos();
+        setActive(false);
+
+        messageProcessor.stop();
+        kafkaConsumerService.wakeup();
+    }
+
+    private void drain() {
+        long remaining = isActive() ? 0 : Math.max(0, drainDeadlineNanos - System.nanoTime());
+
+        try {
+            if (!messageProcessor.drain(Duration.ofNanos(remaining))) {
+                LOG.info("Messages still being processed will be redelivered");
+            }
+        } catch (InterruptedException e) {
+            LOG.error(e);
+            Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * Get the consumer owned by this runner
+     *
+     * @return KafkaConsumerService
+     */
+    public KafkaConsumerService getKafkaConsumerService() {
+        return kafkaConsumerService;
+    }
+
     /**
      * Is message processor still processing
      *
@@ -0,0 +1,95 @@
+package uk.gov.companieshouse.document.generator.consumer.processor;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.springframework.core.task.TaskExecutor;
+import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
+import uk.gov.companieshouse.kafka.message.Message;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * A fixed set of {@link MessageProcessorRunner}s, each owning its own consumer in the same consumer group, that are
+ * started and stopped together. Kafka shares the topic partitions out between the consumers of the group.
+ */
+public class MessageProcessorRunnerGroup {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
+
+    /**
+     * Time allowed, after the drain timeout, for each runner to commit its offsets and close its consumer
+     */
+    private static final Duration CLOSE_ALLOWANCE = Duration.ofSeconds(5);
+
+    private final List<MessageProcessorRunner> runners;
+
+    private final CountDownLatch terminated;
+
+    private volatile boolean started = false;
+
+    public MessageProcessorRunnerGroup(List<MessageProcessorRunner> runners) {
+        this.runners = Collections.unmodifiableList(runners);
+        this.terminated = new CountDownLatch(runners.size());
+    }
+
+    /**
+     * Submit every runner in the group to the executor
+     *
+     * @param executor the executor that runs each runner on its own thread
+     */
+    public void start(TaskExecutor executor) {
+        LOG.info("Starting " + runners.size() + " message processor runner(s)");
+        started = true;
+
+        for (MessageProcessorRunner runner : runners) {
+            executor.execute(() -> {
+                try {
+                    runner.run();
+                } finally {
+                    terminated.countDown();
+                }
+            });
+        }
+    }
+
+    /**
+     * Stop every runner in the group polling straight away, then wait for each to finish the messages it is
+     * processing, commit their offsets and close its consumer. Runners stop waiting for messages once the drain
+     * timeout has passed, leaving those messages to be redelivered.
+     *
+     * @param drainTimeout the longest time to wait for messages being processed
+     * @return true if every runner closed its consumer in time
+     * @throws InterruptedException
+     */
+    public boolean shutdown(Duration drainTimeout) throws InterruptedException {
+        if (!started) {
+            return true;
+        }
+
+        runners.forEach(runner -> runner.stop(drainTimeout));
+
+        return terminated.await(drainTimeout.plus(CLOSE_ALLOWANCE).toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Is any runner in the group yet to finish and close its consumer
+     *
+     * @return boolean
+     */
+    public boolean isRunning() {
+        return started && terminated.getCount() > 0;
+    }
+
+    public List<MessageProcessorRunner> getRunners() {
+        return runners;
+    }
+
+    // Required for testing purposes
+    public void setCallback(final Consumer<Message> callback) {
+        runners.forEach(runner -> runner.getKafkaConsumerService().setCallback(callback));
+    }
+}
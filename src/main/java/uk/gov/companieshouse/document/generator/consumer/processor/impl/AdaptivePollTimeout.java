@@ -0,0 +1,51 @@
+package uk.gov.companieshouse.document.generator.consumer.processor.impl;
+
+import java.time.Duration;
+
+/**
+ * Works out how long the next poll of the consumer may block for. A poll returns as soon as messages arrive, so a long
+ * timeout costs no latency; it only delays the work the polling thread does between polls, such as committing
+ * offsets. The timeout starts at the minimum, doubles after each empty poll up to the maximum and drops back to the
+ * minimum as soon as a poll returns messages.
+ * <p>
+ * Only used by the thread polling the consumer.
+ */
+public class AdaptivePollTimeout {
+
+    private final Duration minTimeout;
+
+    private final Duration maxTimeout;
+
+    private Duration current;
+
+    public AdaptivePollTimeout(Duration minTimeout, Duration maxTimeout) {
+        if (minTimeout.isNegative() || minTimeout.isZero() || maxTimeout.compareTo(minTimeout) < 0) {
+            throw new IllegalArgumentException("Poll timeout bounds must satisfy 0 < minimum <= maximum but were "
+                    + minTimeout.toMillis() + "ms and " + maxTimeout.toMillis() + "ms");
+        }
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+        this.current = minTimeout;
+    }
+
+    /**
+     * @param hasPendingWork whether the polling thread has work waiting on it, such as offsets of messages still
+     *                       being processed, in which case the minimum timeout is used
+     * @return the timeout for the next poll
+     */
+    public Duration next(boolean hasPendingWork) {
+        return hasPendingWork ? minTimeout : current;
+    }
+
+    /**
+     * Adjust the timeout for the number of messages the last poll returned
+     */
+    public void onPoll(int messageCount) {
+        if (messageCount > 0) {
+            current = minTimeout;
+        } else {
+            Duration doubled = current.multipliedBy(2);
+            current = doubled.compareTo(maxTimeout) > 0 ? maxTimeout : doubled;
+        }
+    }
+}
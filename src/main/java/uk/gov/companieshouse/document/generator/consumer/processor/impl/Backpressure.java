@@ -0,0 +1,41 @@
+package uk.gov.companieshouse.document.generator.consumer.processor.impl;
+
+/**
+ * Decides when a consumer processing messages asynchronously should stop fetching more. Its partitions are paused once
+ * the backlog, the messages waiting to be dispatched plus those being processed, reaches the high watermark and are
+ * resumed once it has fallen to the low watermark. The gap between the two stops the consumer flapping between paused
+ * and resumed as each message completes. The backlog is that of the consumer's busiest processing lane, so each lane
+ * has the whole of the watermarks to itself.
+ */
+public class Backpressure {
+
+    private final int highWatermark;
+
+    private final int lowWatermark;
+
+    public Backpressure(int highWatermark, int lowWatermark) {
+        if (lowWatermark < 0 || highWatermark <= lowWatermark) {
+            throw new IllegalArgumentException("Backpressure watermarks must satisfy 0 <= low < high but were "
+                    + lowWatermark + " and " + highWatermark);
+        }
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+    /**
+     * @param backlog the messages waiting to be dispatched plus those being processed in the busiest lane
+     * @param paused  whether the consumer is paused now
+     * @return whether the consumer should be paused
+     */
+    public boolean shouldPause(int backlog, boolean paused) {
+        return paused ? backlog > lowWatermark : backlog >= highWatermark;
+    }
+
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+}
@@ -0,0 +1,277 @@
+package uk.gov.companieshouse.document.generator.consumer.processor.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.kafka.common.TopicPartition;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.ProcessingLanes.Lane;
+import uk.gov.companieshouse.kafka.message.Message;
+
+/**
+ * Tracks the messages a consumer has handed off for asynchronous processing. It caps the number of messages in
+ * flight, per partition in each processing lane and across the whole process, and works out which offsets are safe to
+ * commit: a message is only committable once it and every earlier message consumed from the same partition have
+ * completed. Messages are registered in the order they were consumed, so they can be dispatched in any order without
+ * an offset being committed past a message still waiting to be dispatched.
+ * <p>
+ * Each lane has its own per partition limit, so a slow document type filling its lane's share of a partition doesn't
+ * stop messages of other document types from the same partition being dispatched.
+ * <p>
+ * {@link #register}, {@link #begin}, {@link #drainCommittable}, {@link #remove}, {@link #awaitCompletion} and
+ * {@link #awaitIdle} are called by the thread polling the consumer, {@link #complete} by the threads processing the
+ * messages.
+ */
+public class InFlightTracker {
+
+    private final Semaphore processPermits;
+
+    private final int maxInFlightPerPartition;
+
+    private final Map<TopicPartition, PartitionState> partitions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Map<Lane, AtomicInteger> inFlightByLane = new ConcurrentHashMap<>();
+
+    private final AtomicLong completions = new AtomicLong();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition completed = lock.newCondition();
+
+    /**
+     * @param processPermits          permits shared by every consumer in the process
+     * @param maxInFlightPerPartition the maximum number of messages from one partition processed at the same time in
+     *                                each lane
+     */
+    public InFlightTracker(Semaphore processPermits, int maxInFlightPerPartition) {
+        this.processPermits = processPermits;
+        this.maxInFlightPerPartition = maxInFlightPerPartition;
+    }
+
+    /**
+     * Register a consumed message, before it is dispatched. Messages from each partition must be registered in the
+     * order they were consumed.
+     */
+    public void register(Message message) {
+        PartitionState state = partitions.computeIfAbsent(topicPartition(message),
+                key -> new PartitionState(maxInFlightPerPartition));
+
+        synchronized (state) {
+            state.consumed.addLast(new Entry(message));
+        }
+    }
+
+    /**
+     * Reserve capacity for a registered message, waiting up to the timeout for a permit for its partition in its lane
+     * and then a process wide permit.
+     *
+     * @return true if the message can be dispatched, false if no capacity became available in time
+     */
+    public boolean begin(Message message, Lane lane, long timeout, TimeUnit unit) throws InterruptedException {
+        PartitionState state = partitions.computeIfAbsent(topicPartition(message),
+                key -> new PartitionState(maxInFlightPerPartition));
+        Semaphore partitionPermits = state.permits(lane);
+
+        if (!partitionPermits.tryAcquire(timeout, unit)) {
+            return false;
+        }
+        if (!processPermits.tryAcquire(timeout, unit)) {
+            partitionPermits.release();
+            return false;
+        }
+
+        inFlight.incrementAndGet();
+        inFlightByLane.computeIfAbsent(lane, key -> new AtomicInteger()).incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Record that a message dispatched through {@link #begin} in the lane has finished processing, successfully or
+     * not.
+     */
+    public void complete(Message message, Lane lane) {
+        // The partition may have been removed since the message was dispatched, and even assigned to the consumer
+        // again, in which case the message is no longer tracked and only its process wide permit is released
+        PartitionState state = partitions.get(topicPartition(message));
+        boolean tracked = false;
+        if (state != null) {
+            synchronized (state) {
+                for (Entry entry : state.consumed) {
+                    if (entry.message == message) {
+                        entry.completed = true;
+                        tracked = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        processPermits.release();
+        if (tracked) {
+            state.permits(lane).release();
+        }
+
+        inFlight.decrementAndGet();
+        inFlightByLane.get(lane).decrementAndGet();
+        completions.incrementAndGet();
+
+        lock.lock();
+        try {
+            completed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove and return, for each partition, the latest message that has completed along with every message before
+     * it. Committing the offset of each returned message never skips one that is still being processed.
+     *
+     * @return the messages whose offsets can be committed, at most one per partition
+     */
+    public List<Message> drainCommittable() {
+        List<Message> committable = new ArrayList<>();
+
+        for (PartitionState state : partitions.values()) {
+            Message latest = null;
+            synchronized (state) {
+                while (!state.consumed.isEmpty() && state.consumed.peekFirst().completed) {
+                    latest = state.consumed.pollFirst().message;
+                }
+            }
+            if (latest != null) {
+                committable.add(latest);
+            }
+        }
+
+        return committable;
+    }
+
+    /**
+     * Stop tracking the messages from partitions no longer assigned to the consumer, so none of their offsets are
+     * committed after the partitions have been handed over, and a partition assigned to the consumer again starts
+     * afresh. Messages from them still being processed carry on and release their process wide permits when they
+     * complete.
+     */
+    public void remove(Collection<TopicPartition> revoked) {
+        revoked.forEach(partitions::remove);
+    }
+
+    /**
+     * @return the number of messages that have completed so far, to pass to {@link #awaitCompletion}
+     */
+    public long getCompletions() {
+        return completions.get();
+    }
+
+    /**
+     * Wait until another message has completed since the given number had, up to the timeout, so a message waiting
+     * for capacity can be dispatched as soon as there is some.
+     *
+     * @param seen the number of completions returned by {@link #getCompletions} before trying to dispatch
+     * @return true if a message has completed since
+     */
+    public boolean awaitCompletion(long seen, long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+
+        lock.lock();
+        try {
+            while (completions.get() == seen) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = completed.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until every message dispatched has completed, up to the timeout.
+     *
+     * @return true if no messages are in flight, false if some were still in flight when the timeout passed
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+
+        lock.lock();
+        try {
+            while (inFlight.get() > 0) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = completed.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return whether another message could be dispatched without exceeding the process wide limit
+     */
+    public boolean hasProcessCapacity() {
+        return processPermits.availablePermits() > 0;
+    }
+
+    /**
+     * @return the number of messages dispatched and not yet completed
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the number of messages dispatched in the lane and not yet completed
+     */
+    public int getInFlight(Lane lane) {
+        AtomicInteger laneInFlight = inFlightByLane.get(lane);
+        return laneInFlight == null ? 0 : laneInFlight.get();
+    }
+
+    private static TopicPartition topicPartition(Message message) {
+        return new TopicPartition(message.getTopic(), message.getPartition());
+    }
+
+    private static final class PartitionState {
+
+        private final int maxInFlight;
+
+        private final Map<Lane, Semaphore> permits = new ConcurrentHashMap<>();
+
+        private final Deque<Entry> consumed = new ArrayDeque<>();
+
+        private PartitionState(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        private Semaphore permits(Lane lane) {
+            return permits.computeIfAbsent(lane, key -> new Semaphore(maxInFlight));
+        }
+    }
+
+    private static final class Entry {
+
+        private final Message message;
+
+        private boolean completed;
+
+        private Entry(Message message) {
+            this.message = message;
+        }
+    }
+}
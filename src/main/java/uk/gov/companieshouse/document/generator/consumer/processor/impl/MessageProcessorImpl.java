@@ -1,52 +1,104 @@
 package uk.gov.companieshouse.document.generator.consumer.processor.impl;
 
+import static uk.gov.companieshouse.document.generator.consumer.metrics.DocumentGeneratorMetrics.UNKNOWN_DOCUMENT_TYPE;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
-import org.springframework.beans.factory.annotation.Autowired;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.http.ResponseEntity;
-import org.springframework.stereotype.Service;
 
 import uk.gov.companieshouse.document.generation.request.RenderSubmittedDataDocument;
 import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerApplication;
+import uk.gov.companieshouse.document.generator.consumer.cache.CompletedRequestCache;
 import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentResponse;
 import uk.gov.companieshouse.document.generator.consumer.document.service.GenerateDocument;
 import uk.gov.companieshouse.document.generator.consumer.document.service.MessageService;
 import uk.gov.companieshouse.document.generator.consumer.exception.GenerateDocumentException;
 import uk.gov.companieshouse.document.generator.consumer.exception.MessageCreationException;
+import uk.gov.companieshouse.document.generator.consumer.kafka.AvroCodec;
+import uk.gov.companieshouse.document.generator.consumer.kafka.DeadLetterMessage;
 import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaConsumerService;
 import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaProducerService;
+import uk.gov.companieshouse.document.generator.consumer.kafka.RetryMessage;
+import uk.gov.companieshouse.document.generator.consumer.logging.LogGuard;
+import uk.gov.companieshouse.document.generator.consumer.metrics.ConsumerProgress;
+import uk.gov.companieshouse.document.generator.consumer.metrics.DocumentGeneratorMetrics;
+import uk.gov.companieshouse.document.generator.consumer.metrics.DocumentGeneratorMetrics.Outcome;
+import uk.gov.companieshouse.document.generator.consumer.metrics.DocumentGeneratorMetrics.Result;
+import uk.gov.companieshouse.document.generator.consumer.metrics.DocumentGeneratorMetrics.Stage;
 import uk.gov.companieshouse.document.generator.consumer.processor.MessageProcessor;
-import uk.gov.companieshouse.kafka.deserialization.AvroDeserializer;
-import uk.gov.companieshouse.kafka.deserialization.DeserializerFactory;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.ProcessingLanes.Lane;
 import uk.gov.companieshouse.kafka.exceptions.DeserializationException;
 import uk.gov.companieshouse.kafka.message.Message;
 import uk.gov.companieshouse.logging.Logger;
 import uk.gov.companieshouse.logging.LoggerFactory;
 
-@Service
 public class MessageProcessorImpl implements MessageProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(DocumentGeneratorConsumerApplication.APPLICATION_NAME_SPACE);
 
-    @Autowired
-    private MessageService messageService;
+    private final MessageService messageService;
+
+    private final GenerateDocument generateDocument;
+
+    private final KafkaConsumerService kafkaConsumerService;
+
+    private final KafkaProducerService kafkaProducerService;
+
+    private final AvroCodec<RenderSubmittedDataDocument> requestCodec;
+
+    /**
+     * Executor messages are handed off to when processing asynchronously, null when processing on the polling thread
+     */
+    private final Executor asyncExecutor;
+
+    private final InFlightTracker inFlightTracker;
+
+    private final Backpressure backpressure;
+
+    private final ProcessingLanes lanes;
+
+    /**
+     * Consumed messages waiting for capacity to be processed asynchronously, queued separately for each lane in the
+     * order they were consumed. Only used by the polling thread.
+     */
+    private final Map<Lane, Deque<QueuedMessage>> pending = new LinkedHashMap<>();
+
+    private final AdaptivePollTimeout pollTimeout;
 
-    @Autowired
-    private GenerateDocument generateDocument;
+    private final DocumentGeneratorMetrics metrics;
 
-    @Autowired
-    private KafkaConsumerService kafkaConsumerService;
+    private final ConsumerProgress consumerProgress;
 
-    @Autowired
-    private KafkaProducerService kafkaProducerService;
+    private final RetryPolicy retryPolicy;
 
-    @Autowired
-    private DeserializerFactory deserializerFactory;
+    private final CompletedRequestCache completedRequestCache;
 
-    private static final String KAFKA_MSG = "kafka_message";
+    private final PollLoopStats pollLoopStats = new PollLoopStats();
+
+    private long lastStatsReport = System.nanoTime();
+
+    private volatile boolean stopping = false;
+
+    private static final String KAFKA_MSG_SIZE = "kafka_message_size";
+
+    private static final String KAFKA_PARTITION = "kafka_partition";
+
+    private static final String DEAD_LETTER_TOPIC = "dead_letter_topic";
 
     private static final String KAFKA_TOPIC = "kafka_topic";
 
@@ -54,103 +106,652 @@ public class MessageProcessorImpl implements MessageProcessor {
 
     private static final String KAFKA_TIME = "kafka_time";
 
+    private static final long DISPATCH_WAIT_MILLIS = 100;
+
+    private static final long STATS_REPORT_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * Create a message processor that processes each message on the polling thread before consuming the next.
+     */
+    public MessageProcessorImpl(MessageService messageService, GenerateDocument generateDocument,
+                                KafkaConsumerService kafkaConsumerService, KafkaProducerService kafkaProducerService,
+                                AvroCodec<RenderSubmittedDataDocument> requestCodec, AdaptivePollTimeout pollTimeout,
+                                DocumentGeneratorMetrics metrics, ConsumerProgress consumerProgress,
+                                RetryPolicy retryPolicy, CompletedRequestCache completedRequestCache) {
+        this(messageService, generateDocument, kafkaConsumerService, kafkaProducerService, requestCodec,
+                pollTimeout, metrics, consumerProgress, retryPolicy, completedRequestCache, null, null, null, null);
+    }
+
+    /**
+     * Create a message processor that hands each message off to the executor, limited by the in flight tracker, and
+     * carries on polling while they are processed. Messages beyond that limit wait to be dispatched in the lane for
+     * their document type, and the consumer is paused while the backlog is too large. Offsets are committed as the
+     * messages complete.
+     */
+    public MessageProcessorImpl(MessageService messageService, GenerateDocument generateDocument,
+                                KafkaConsumerService kafkaConsumerService, KafkaProducerService kafkaProducerService,
+                                AvroCodec<RenderSubmittedDataDocument> requestCodec, AdaptivePollTimeout pollTimeout,
+                                DocumentGeneratorMetrics metrics, ConsumerProgress consumerProgress,
+                                RetryPolicy retryPolicy, CompletedRequestCache completedRequestCache,
+                                Executor asyncExecutor, InFlightTracker inFlightTracker, Backpressure backpressure,
+                                ProcessingLanes lanes) {
+        this.messageService = messageService;
+        this.generateDocument = generateDocument;
+        this.kafkaConsumerService = kafkaConsumerService;
+        this.kafkaProducerService = kafkaProducerService;
+        this.requestCodec = requestCodec;
+        this.asyncExecutor = asyncExecutor;
+        this.inFlightTracker = inFlightTracker;
+        this.backpressure = backpressure;
+        this.lanes = lanes;
+        if (lanes != null) {
+            lanes.getLanes().forEach(lane -> pending.put(lane, new ArrayDeque<>()));
+        }
+        this.pollTimeout = pollTimeout;
+        this.metrics = metrics;
+        this.consumerProgress = consumerProgress;
+        this.retryPolicy = retryPolicy;
+        this.completedRequestCache = completedRequestCache;
+    }
+
     /**
      * {inheritDocs}
      */
     @Override
     public void processKafkaMessage() throws InterruptedException {
 
-        List<Message> kafkaMessages = kafkaConsumerService.consume();
+        long loopStart = System.nanoTime();
+        long waitNanos = 0;
 
-        if (kafkaMessages.isEmpty()) {
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException ie) {
-                LOG.debug("Interrupt exception - exiting message processing");
-                Thread.currentThread().interrupt();
-                return;
+        commitCompleted();
+
+        if (isAsync()) {
+            dispatchPending();
+        }
+
+        // The poll returns as soon as messages arrive, so there's no need to sleep between empty polls. With messages
+        // waiting for capacity the poll doesn't block, as the wait for capacity below takes its place.
+        Duration timeout = isAsync() && getPendingCount() > 0
+                ? Duration.ZERO
+                : pollTimeout.next(isAsync() && inFlightTracker.getInFlight() > 0);
+        long pollStart = System.nanoTime();
+        List<Message> kafkaMessages = kafkaConsumerService.consume(timeout);
+        long pollEnd = System.nanoTime();
+
+        pollTimeout.onPoll(kafkaMessages.size());
+        consumerProgress.updateLag(kafkaConsumerService, getLag());
+        consumerProgress.updateRate();
+
+        if (!kafkaMessages.isEmpty()) {
+            LogGuard.debug(LOG, () -> "Consumed messages " + kafkaMessages);
+        }
+
+        try {
+            if (isAsync()) {
+                long completionsSeen = inFlightTracker.getCompletions();
+                kafkaMessages.forEach(this::enqueue);
+                dispatchPending();
+                applyBackpressure();
+
+                if (getPendingCount() > 0) {
+                    long waitStart = System.nanoTime();
+                    inFlightTracker.awaitCompletion(completionsSeen, DISPATCH_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    waitNanos = System.nanoTime() - waitStart;
+                }
+            } else {
+                for (Message message : kafkaMessages) {
+                    if (stopping) {
+                        LOG.info("Stopping, leaving the remaining consumed messages to be redelivered");
+                        break;
+                    }
+
+                    process(message, null);
+                    commit(message);
+                }
             }
-        } else {
-            LOG.debug("Consumed messages " + kafkaMessages);
+
+            commitCompleted();
+        } finally {
+            long loopEnd = System.nanoTime();
+            pollLoopStats.recordIdle((pollEnd - pollStart) + waitNanos);
+            pollLoopStats.recordWorking((pollStart - loopStart) + (loopEnd - pollEnd) - waitNanos);
+            reportPollLoopStats(loopEnd);
+        }
+    }
+
+    /**
+     * {inheritDocs}
+     */
+    @Override
+    public void stop() {
+        stopping = true;
+    }
+
+    /**
+     * {inheritDocs}
+     */
+    @Override
+    public boolean drain(Duration timeout) throws InterruptedException {
+        boolean drained = !isAsync() || inFlightTracker.awaitIdle(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        if (!drained) {
+            LOG.info(inFlightTracker.getInFlight() + " message(s) still being processed after " + timeout.toMillis()
+                    + " ms, their offsets will not be committed");
         }
 
+        commitCompleted();
+        consumerProgress.removeConsumer(kafkaConsumerService);
+
+        return drained;
+    }
+
+    /**
+     * Stop processing the messages from partitions revoked from or lost by the consumer, called on the polling thread
+     * from within a poll before their offsets are committed. The offsets of messages that have completed are recorded
+     * first, so they are committed before the partitions are handed over. The messages from those partitions still
+     * waiting to be dispatched are then dropped, to be processed by the consumer the partitions are assigned to next,
+     * and the partitions are no longer tracked. Messages from them already being processed carry on, but their offsets
+     * are not committed.
+     */
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        if (!isAsync()) {
+            return;
+        }
+
+        commitCompleted();
+
+        int dropped = 0;
+        for (Map.Entry<Lane, Deque<QueuedMessage>> laneQueue : pending.entrySet()) {
+            Deque<QueuedMessage> queue = laneQueue.getValue();
+            int queued = queue.size();
+            queue.removeIf(queuedMessage -> partitions.contains(topicPartition(queuedMessage.message())));
+            if (queue.size() < queued) {
+                laneQueue.getKey().dropped(queued - queue.size());
+                dropped += queued - queue.size();
+            }
+        }
+        inFlightTracker.remove(partitions);
+
+        if (dropped > 0) {
+            LOG.info("Partitions revoked, leaving " + dropped + " consumed message(s) to be processed by their next"
+                    + " consumer");
+        }
+    }
+
+    /**
+     * @return the time this processor's polling loop has spent idle and working
+     */
+    public PollLoopStats getPollLoopStats() {
+        return pollLoopStats;
+    }
+
+    private void reportPollLoopStats(long now) {
+        if (now - lastStatsReport < STATS_REPORT_INTERVAL_NANOS) {
+            return;
+        }
+        lastStatsReport = now;
+
+        LogGuard.debug(LOG, () -> "Poll loop has been idle for %d ms and working for %d ms (%.1f%% idle)".formatted(
+                pollLoopStats.getIdleMillis(), pollLoopStats.getWorkingMillis(), pollLoopStats.getIdleRatio() * 100));
+    }
+
+    private boolean isAsync() {
+        return asyncExecutor != null;
+    }
+
+    /**
+     * Queue a consumed message in the lane for its document type, registering it with the in flight tracker so no
+     * offset is committed past it until it has been processed. Working out the lane deserialises the message, which is
+     * then passed on to be processed rather than deserialised again; a message that can't be deserialised goes in
+     * the default lane and fails when it is processed.
+     */
+    private void enqueue(Message message) {
         RenderSubmittedDataDocument renderSubmittedDataDocument = null;
+        if (lanes.hasDocumentTypeLanes()) {
+            try {
+                renderSubmittedDataDocument = deserialise(message);
+            } catch (DeserializationException e) {
+                LogGuard.debug(LOG, () -> "Message at offset " + message.getOffset() + " on " + message.getTopic()
+                        + " couldn't be deserialised, queueing it in the default lane");
+            }
+        }
+
+        Lane lane = renderSubmittedDataDocument == null
+                ? lanes.getDefaultLane()
+                : lanes.laneFor(renderSubmittedDataDocument.getDocumentType());
+
+        inFlightTracker.register(message);
+        pending.get(lane).addLast(new QueuedMessage(message, renderSubmittedDataDocument, System.nanoTime()));
+        lane.queued();
+    }
+
+    /**
+     * Hand the consumed messages waiting for capacity off to the async executor, lane by lane, for as long as there is
+     * capacity for them. A lane without capacity doesn't hold up the messages waiting in other lanes. Once stopped,
+     * the messages still waiting are dropped, leaving them to be redelivered.
+     */
+    private void dispatchPending() throws InterruptedException {
+
+        if (stopping) {
+            int dropped = getPendingCount();
+            if (dropped > 0) {
+                LOG.info("Stopping, leaving " + dropped + " consumed message(s) to be redelivered");
+                pending.forEach((lane, queue) -> {
+                    lane.dropped(queue.size());
+                    queue.clear();
+                });
+            }
+            return;
+        }
+
+        for (Map.Entry<Lane, Deque<QueuedMessage>> laneQueue : pending.entrySet()) {
+            if (!dispatchPending(laneQueue.getKey(), laneQueue.getValue())) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Dispatch the messages waiting in the lane, in order, while the lane has capacity. Once a message from a
+     * partition can't be dispatched no later message from that partition in the lane is, so each partition's messages
+     * are processed in order within the lane. A partition's capacity is limited separately in each lane, so a lane
+     * using all of its share of a partition doesn't stop other lanes dispatching from it.
+     *
+     * @return false if the process wide limit has been reached, so no lane can dispatch any more
+     */
+    private boolean dispatchPending(Lane lane, Deque<QueuedMessage> queue) throws InterruptedException {
+
+        Set<TopicPartition> blocked = new HashSet<>();
+        for (Iterator<QueuedMessage> it = queue.iterator(); it.hasNext(); ) {
+            QueuedMessage queued = it.next();
+            Message message = queued.message();
+            TopicPartition partition = topicPartition(message);
+            if (blocked.contains(partition)) {
+                continue;
+            }
+
+            if (!lane.tryAcquire()) {
+                return true;
+            }
+
+            if (inFlightTracker.begin(message, lane, 0, TimeUnit.MILLISECONDS)) {
+                it.remove();
+                lane.dispatched(queued.queuedAt());
+                dispatch(queued, lane);
+            } else {
+                lane.release();
+                blocked.add(partition);
+                if (!inFlightTracker.hasProcessCapacity()) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the lag of each partition assigned to the consumer from the position it has fetched up to, plus the
+     * messages fetched from the partition still waiting to be dispatched, so a backlog held in the lane queues still
+     * counts as lag
+     */
+    private Map<TopicPartition, Long> getLag() {
+        Map<TopicPartition, Long> lag = kafkaConsumerService.getLag();
+        if (!isAsync() || getPendingCount() == 0) {
+            return lag;
+        }
+
+        Map<TopicPartition, Long> lagWithPending = new HashMap<>(lag);
+        for (Deque<QueuedMessage> queue : pending.values()) {
+            for (QueuedMessage queued : queue) {
+                lagWithPending.merge(topicPartition(queued.message()), 1L, Long::sum);
+            }
+        }
 
-        for (Message message : kafkaMessages) {
+        return lagWithPending;
+    }
+
+    private int getPendingCount() {
+        int count = 0;
+        for (Deque<QueuedMessage> queue : pending.values()) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    /**
+     * Pause the consumer once the backlog of messages waiting and being processed in any one lane reaches the high
+     * watermark, and resume it once the backlog of every lane has fallen to the low watermark. Each lane's backlog is
+     * measured on its own, so a slow document type's backlog doesn't use up the room other lanes have to fetch more
+     * messages. A paused consumer carries on polling, so it stays in the consumer group, but fetches no more messages.
+     */
+    private void applyBackpressure() {
+        Lane busiest = null;
+        int backlog = -1;
+        for (Map.Entry<Lane, Deque<QueuedMessage>> laneQueue : pending.entrySet()) {
+            int laneBacklog = laneQueue.getValue().size() + inFlightTracker.getInFlight(laneQueue.getKey());
+            if (laneBacklog > backlog) {
+                busiest = laneQueue.getKey();
+                backlog = laneBacklog;
+            }
+        }
+        boolean paused = kafkaConsumerService.isPaused();
+
+        if (backpressure.shouldPause(backlog, paused) != paused) {
+            if (paused) {
+                LOG.info("Resuming consumer with at most " + backlog + " message(s) waiting or being processed in"
+                        + " any lane");
+                kafkaConsumerService.resume();
+            } else {
+                LOG.info("Pausing consumer with " + backlog + " message(s) waiting or being processed in the "
+                        + busiest + " lane");
+                kafkaConsumerService.pause();
+            }
+        }
+    }
+
+    /**
+     * Hand the message off to the async executor. Capacity for it must already have been reserved in its lane and
+     * with the in flight tracker.
+     */
+    private void dispatch(QueuedMessage queued, Lane lane) {
+
+        Message message = queued.message();
+        asyncExecutor.execute(() -> {
             try {
-                AvroDeserializer<RenderSubmittedDataDocument> specificRecordDeserializer = deserializerFactory.getSpecificRecordDeserializer(
-                        RenderSubmittedDataDocument.class);
+                process(message, queued.renderSubmittedDataDocument());
+            } catch (RuntimeException e) {
+                LOG.errorContext("Unexpected error occurred while processing a message", e,
+                        setDebugMapKafkaFail(message));
+            } finally {
+                lane.release();
+                inFlightTracker.complete(message, lane);
+            }
+        });
+    }
 
-                renderSubmittedDataDocument = specificRecordDeserializer.fromBinary(message, RenderSubmittedDataDocument.getClassSchema());
+    /**
+     * Commit the offsets of messages processed asynchronously whose processing, and that of every earlier message in
+     * the same partition, has completed. The consumer is only used from the polling thread.
+     */
+    private void commitCompleted() {
+        if (isAsync()) {
+            inFlightTracker.drainCommittable().forEach(this::commit);
+        }
+    }
 
+    /**
+     * Commit the message's offset, timing the commit, whether it was processed on the polling thread or asynchronously
+     */
+    private void commit(Message message) {
+        Timer.Sample commitSample = metrics.startTimer();
+        kafkaConsumerService.commit(message);
+        metrics.recordCommit(commitSample);
+    }
+
+    private void process(Message message, RenderSubmittedDataDocument deserialised) {
+        consumerProgress.messageStarted();
+        try {
+            processMessage(message, deserialised);
+        } finally {
+            consumerProgress.messageFinished();
+        }
+    }
+
+    /**
+     * Deserialise the message, send the started message and request the document from the document generator api. A
+     * message from the retry topic already had its started message sent on its first attempt. A request that has
+     * already been completed, and is being delivered again, has its completed message sent again instead.
+     *
+     * @param deserialised the message already deserialised when it was queued, null to deserialise it here
+     */
+    private void processMessage(Message message, RenderSubmittedDataDocument deserialised) {
+
+        int retryTopicAttempt = message instanceof RetryMessage retryMessage ? retryMessage.getAttempt() : 0;
+
+        Timer.Sample deserialiseSample = metrics.startTimer();
+        try {
+            RenderSubmittedDataDocument renderSubmittedDataDocument = deserialised != null
+                    ? deserialised
+                    : deserialise(message);
+
+            if (LogGuard.isInfoSampled(renderSubmittedDataDocument.getId())) {
                 LOG.infoContext(renderSubmittedDataDocument.getUserId(), "Message received and deserialised from kafka",
                         setDebugMap(renderSubmittedDataDocument, message));
+            }
+
+            Optional<GenerateDocumentResponse> completed = completedRequestCache.get(renderSubmittedDataDocument.getId());
+            if (completed.isPresent()) {
+                if (LogGuard.isInfoSampled(renderSubmittedDataDocument.getId())) {
+                    LOG.infoContext(renderSubmittedDataDocument.getUserId(), "Document has already been generated for" +
+                            " request " + renderSubmittedDataDocument.getId() + ", sending the completed message again",
+                            setDebugMap(renderSubmittedDataDocument, message));
+                }
+                sendCompletedMessage(renderSubmittedDataDocument, message, completed.get());
+                return;
+            }
 
+            if (retryTopicAttempt == 0) {
                 try {
-                    kafkaProducerService.send(messageService.createDocumentGenerationStarted(renderSubmittedDataDocument));
-                } catch (MessageCreationException | ExecutionException mce) {
+                    sendStatusMessage(messageService.createDocumentGenerationStarted(renderSubmittedDataDocument),
+                            message, Stage.STARTED_SEND, renderSubmittedDataDocument.getDocumentType(),
+                            "Error occurred while attempt to send a started message to producer",
+                            setDebugMap(renderSubmittedDataDocument, message));
+                } catch (MessageCreationException mce) {
                     LOG.errorContext("Error occurred while attempt to create and send a started message to producer",
                             mce, setDebugMap(renderSubmittedDataDocument, message));
-                    kafkaConsumerService.commit(message);
-                    continue;
+                    metrics.recordMessage(renderSubmittedDataDocument.getDocumentType(), Result.ERROR);
+                    return;
                 }
+            }
 
-                requestGenerateDocument(renderSubmittedDataDocument, message);
-
-            } catch (DeserializationException e) {
-                LOG.errorContext("An error occurred when trying to generate a document from a kafka message", e, setDebugMapKafkaFail(message));
+            requestGenerateDocument(renderSubmittedDataDocument, message, retryTopicAttempt);
 
-                try {
-                    kafkaProducerService.send(messageService.createDocumentGenerationFailed(renderSubmittedDataDocument, null));
-                    LOG.info("Document failed to generate", setDebugMapKafkaFail(message));
-                } catch (MessageCreationException | ExecutionException mce) {
-                    LOG.errorContext("Error occurred while attempt to create and send a failed message to producer", mce, setDebugMapKafkaFail(message));
-                }
-            }
+        } catch (DeserializationException e) {
+            metrics.recordStage(deserialiseSample, Stage.DESERIALISE, UNKNOWN_DOCUMENT_TYPE, Outcome.FAILURE);
+            sendToDeadLetterTopic(message, e);
+        }
+    }
 
-            kafkaConsumerService.commit(message);
+    /**
+     * Send a message that can't be deserialised to the dead letter topic, with where it was consumed from and why it
+     * failed in its headers. It is sent without waiting for it to be acknowledged, and the consumed message's offset is
+     * committed as usual. No failed message is sent, as there is no request to say which document failed. Only where
+     * the message was consumed from is logged, its value being kept on the dead letter topic.
+     */
+    private void sendToDeadLetterTopic(Message message, Exception error) {
+
+        Map<String, Object> debugMap = setDebugMapKafkaFail(message);
+        if (!retryPolicy.isDeadLetterTopicEnabled()) {
+            LOG.errorContext("Kafka message couldn't be deserialised and there is no dead letter topic, skipping it",
+                    error, debugMap);
+            metrics.recordMessage(UNKNOWN_DOCUMENT_TYPE, Result.FAILED);
+            return;
         }
+
+        String deadLetterTopic = retryPolicy.getDeadLetterTopic();
+        debugMap.put(DEAD_LETTER_TOPIC, deadLetterTopic);
+        LOG.errorContext("Kafka message couldn't be deserialised, sending it to the dead letter topic", error,
+                debugMap);
+
+        sendStatusMessage(new DeadLetterMessage(deadLetterTopic, message, error), message, Stage.DEAD_LETTER_SEND,
+                UNKNOWN_DOCUMENT_TYPE, "Error occurred while attempt to send a message to the dead letter topic",
+                debugMap);
+        metrics.recordMessage(UNKNOWN_DOCUMENT_TYPE, Result.DEAD_LETTERED);
+    }
+
+    private RenderSubmittedDataDocument deserialise(Message message) throws DeserializationException {
+        Timer.Sample deserialiseSample = metrics.startTimer();
+        RenderSubmittedDataDocument renderSubmittedDataDocument = requestCodec.decode(message.getValue());
+        metrics.recordStage(deserialiseSample, Stage.DESERIALISE, renderSubmittedDataDocument.getDocumentType(),
+                Outcome.SUCCESS);
+
+        return renderSubmittedDataDocument;
     }
 
     /**
-     * Populates GenerateDocumentRequest object with info from the deserialised Kafka message to be sent to the document
-     * generator api to generate a document.
+     * Requests the generation of a document from the document generator api with the info from the deserialised Kafka
+     * message.
+     * <p>
+     * Transient failures are retried in place with backoff. A request that still fails is sent to the retry topic,
+     * when one is configured and the request hasn't been there too many times, rather than being failed. On the
+     * polling thread a request the retry topic will take isn't retried in place, so the partition isn't held up.
      *
      * @param renderSubmittedDataDocument The message deserialised from Kafka
-     * @throws MessageCreationException
-     * @throws ExecutionException
-     * @throws InterruptedException
+     * @param retryTopicAttempt the number of times the message has been sent to the retry topic
      */
-    private void requestGenerateDocument(RenderSubmittedDataDocument renderSubmittedDataDocument, Message message)
-            throws InterruptedException {
+    private void requestGenerateDocument(RenderSubmittedDataDocument renderSubmittedDataDocument, Message message,
+                                         int retryTopicAttempt) {
+
+        String documentType = renderSubmittedDataDocument.getDocumentType();
 
         try {
-            ResponseEntity<GenerateDocumentResponse> response = generateDocument.requestGenerateDocument(renderSubmittedDataDocument);
+            ResponseEntity<GenerateDocumentResponse> response = requestGenerateDocumentWithRetries(
+                    renderSubmittedDataDocument, message, retryTopicAttempt);
 
-            try {
-                kafkaProducerService.send(messageService.createDocumentGenerationCompleted(renderSubmittedDataDocument, response.getBody()));
-                LOG.infoContext(renderSubmittedDataDocument.getUserId(),"Document has been generated for resource: "
-                    + renderSubmittedDataDocument.getResource(), setDebugMap(renderSubmittedDataDocument, message));
-            } catch (MessageCreationException | ExecutionException mce) {
-                LOG.errorContext("Error occurred while attempt to create and send a completed message to producer",
-                        mce, setDebugMap(renderSubmittedDataDocument, message));
-            }
+            completedRequestCache.put(renderSubmittedDataDocument.getId(), response.getBody());
+            sendCompletedMessage(renderSubmittedDataDocument, message, response.getBody());
 
         } catch (GenerateDocumentException gde) {
             LOG.errorContext(renderSubmittedDataDocument.getUserId(),"An error occurred when requesting the generation" +
                     " of a document from the document generator api", gde, setDebugMap(renderSubmittedDataDocument, message));
+
+            if (gde.isRetryable() && retryPolicy.shouldRetryLater(retryTopicAttempt)) {
+                sendToRetryTopic(renderSubmittedDataDocument, message, retryTopicAttempt + 1);
+                return;
+            }
+
             try {
-                kafkaProducerService.send(messageService.createDocumentGenerationFailed(renderSubmittedDataDocument, null));
+                sendStatusMessage(messageService.createDocumentGenerationFailed(renderSubmittedDataDocument, null),
+                        message, Stage.FAILED_SEND, documentType,
+                        "Error occurred while attempt to send a failed message to producer",
+                        setDebugMap(renderSubmittedDataDocument, message));
                 LOG.infoContext(renderSubmittedDataDocument.getUserId(),"Document failed to generate during the " +
                     "document generator api call for resource: " + renderSubmittedDataDocument.getResource(),
                     setDebugMap(renderSubmittedDataDocument, message));
-            } catch (MessageCreationException | ExecutionException mce) {
+                metrics.recordMessage(documentType, Result.FAILED);
+            } catch (MessageCreationException mce) {
                 LOG.errorContext("Error occurred while attempt to create and send a failed message message to producer",
                         mce, setDebugMap(renderSubmittedDataDocument, message));
+                metrics.recordMessage(documentType, Result.ERROR);
+            }
+        }
+    }
+
+    private void sendCompletedMessage(RenderSubmittedDataDocument renderSubmittedDataDocument, Message message,
+                                      GenerateDocumentResponse response) {
+
+        String documentType = renderSubmittedDataDocument.getDocumentType();
+
+        try {
+            sendStatusMessage(messageService.createDocumentGenerationCompleted(renderSubmittedDataDocument, response),
+                    message, Stage.COMPLETED_SEND, documentType,
+                    "Error occurred while attempt to send a completed message to producer",
+                    setDebugMap(renderSubmittedDataDocument, message));
+            if (LogGuard.isInfoSampled(renderSubmittedDataDocument.getId())) {
+                LOG.infoContext(renderSubmittedDataDocument.getUserId(),"Document has been generated for resource: "
+                    + renderSubmittedDataDocument.getResource(), setDebugMap(renderSubmittedDataDocument, message));
+            }
+            metrics.recordMessage(documentType, Result.COMPLETED);
+        } catch (MessageCreationException mce) {
+            LOG.errorContext("Error occurred while attempt to create and send a completed message to producer",
+                    mce, setDebugMap(renderSubmittedDataDocument, message));
+            metrics.recordMessage(documentType, Result.ERROR);
+        }
+    }
+
+    /**
+     * Request the document, retrying in place with backoff while the failure is transient and attempts remain. Each
+     * attempt is timed separately.
+     * <p>
+     * Processing on the polling thread, the backoff would hold up the whole partition and could outlast the consumer's
+     * maximum poll interval, so a request is only retried in place there when the retry topic won't take it.
+     */
+    private ResponseEntity<GenerateDocumentResponse> requestGenerateDocumentWithRetries(
+            RenderSubmittedDataDocument renderSubmittedDataDocument, Message message, int retryTopicAttempt)
+            throws GenerateDocumentException {
+
+        String documentType = renderSubmittedDataDocument.getDocumentType();
+        boolean retryInPlace = isAsync() || !retryPolicy.shouldRetryLater(retryTopicAttempt);
+
+        for (int attempt = 1; ; attempt++) {
+            Timer.Sample apiCallSample = metrics.startTimer();
+            try {
+                ResponseEntity<GenerateDocumentResponse> response =
+                        generateDocument.requestGenerateDocument(renderSubmittedDataDocument);
+                metrics.recordStage(apiCallSample, Stage.API_CALL, documentType, Outcome.SUCCESS);
+
+                return response;
+            } catch (GenerateDocumentException gde) {
+                metrics.recordStage(apiCallSample, Stage.API_CALL, documentType, Outcome.FAILURE);
+
+                if (!gde.isRetryable() || !retryInPlace || !retryPolicy.shouldRetry(attempt)) {
+                    throw gde;
+                }
+
+                Duration backoff = retryPolicy.backoff(attempt);
+                LOG.infoContext(renderSubmittedDataDocument.getUserId(), "Document generator api call failed on" +
+                        " attempt " + attempt + ", retrying in " + backoff.toMillis() + " ms",
+                        setDebugMap(renderSubmittedDataDocument, message));
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw gde;
+                }
             }
         }
     }
 
+    /**
+     * Send the request to the retry topic, to be retried once its delay has passed. The offset of the consumed message
+     * is committed as usual, so the partition it came from carries on without waiting for the retry.
+     */
+    private void sendToRetryTopic(RenderSubmittedDataDocument renderSubmittedDataDocument, Message message,
+                                  int retryTopicAttempt) {
+
+        long now = System.currentTimeMillis();
+        Duration delay = retryPolicy.retryTopicDelay(retryTopicAttempt);
+
+        RetryMessage retryMessage = new RetryMessage();
+        retryMessage.setTopic(retryPolicy.getRetryTopic());
+        retryMessage.setKey(message.getKey());
+        retryMessage.setValue(message.getValue());
+        retryMessage.setTimestamp(now);
+        retryMessage.setAttempt(retryTopicAttempt);
+        retryMessage.setNotBefore(now + delay.toMillis());
+
+        sendStatusMessage(retryMessage, message, Stage.RETRY_SEND, renderSubmittedDataDocument.getDocumentType(),
+                "Error occurred while attempt to send a message to the retry topic",
+                setDebugMap(renderSubmittedDataDocument, message));
+        LOG.infoContext(renderSubmittedDataDocument.getUserId(), "Document generation will be retried in " +
+                delay.toSeconds() + " seconds for resource: " + renderSubmittedDataDocument.getResource(),
+                setDebugMap(renderSubmittedDataDocument, message));
+        metrics.recordMessage(renderSubmittedDataDocument.getDocumentType(), Result.RETRIED);
+    }
+
+    /**
+     * Send the status message without waiting for it to be acknowledged. The send is timed until the producer reports
+     * it acknowledged or failed, and a failed send is logged then; the producer is flushed before the consumed
+     * message's offset is committed. A transactional producer sends it in the same transaction as that offset.
+     */
+    private void sendStatusMessage(Message statusMessage, Message message, Stage stage, String documentType,
+                                   String errorMessage, Map<String, Object> debugMap) {
+        Timer.Sample sendSample = metrics.startTimer();
+        kafkaProducerService.send(statusMessage, message).whenComplete((metadata, exception) -> {
+            if (exception != null) {
+                metrics.recordStage(sendSample, stage, documentType, Outcome.FAILURE);
+                LOG.errorContext(errorMessage,
+                        exception instanceof Exception e ? e : new Exception(exception), debugMap);
+            } else {
+                metrics.recordStage(sendSample, stage, documentType, Outcome.SUCCESS);
+            }
+        });
+    }
+
+    private static TopicPartition topicPartition(Message message) {
+        return new TopicPartition(message.getTopic(), message.getPartition());
+    }
+
     private Map<String, Object> setDebugMap(RenderSubmittedDataDocument renderSubmittedDataDocument, Message message) {
 
         Map<String, Object> debugMap = new HashMap<>();
@@ -165,11 +766,20 @@ public class MessageProcessorImpl implements MessageProcessor {
     private Map<String, Object> setDebugMapKafkaFail(Message message) {
 
         Map<String, Object> kafkaFailDebugMap = new HashMap<>();
-        kafkaFailDebugMap.put(KAFKA_MSG, message.getValue());
+        kafkaFailDebugMap.put(KAFKA_MSG_SIZE, message.getValue() == null ? 0 : message.getValue().length);
         kafkaFailDebugMap.put(KAFKA_TOPIC, message.getTopic());
+        kafkaFailDebugMap.put(KAFKA_PARTITION, message.getPartition());
         kafkaFailDebugMap.put(KAFKA_OFFSET, message.getOffset());
         kafkaFailDebugMap.put(KAFKA_TIME, message.getTimestamp());
 
         return kafkaFailDebugMap;
     }
+
+    /**
+     * A consumed message waiting to be dispatched, with the request it contains when it was deserialised to choose
+     * its lane
+     */
+    private record QueuedMessage(Message message, RenderSubmittedDataDocument renderSubmittedDataDocument,
+                                 long queuedAt) {
+    }
 }
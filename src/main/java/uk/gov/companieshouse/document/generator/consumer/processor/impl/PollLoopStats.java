@@ -0,0 +1,41 @@
+package uk.gov.companieshouse.document.generator.consumer.processor.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time a consumer's polling loop spends idle, blocked waiting in a poll for messages to arrive, against the time it
+ * spends working: dispatching or processing messages and committing offsets.
+ */
+public class PollLoopStats {
+
+    private final LongAdder idleNanos = new LongAdder();
+
+    private final LongAdder workingNanos = new LongAdder();
+
+    public void recordIdle(long nanos) {
+        idleNanos.add(nanos);
+    }
+
+    public void recordWorking(long nanos) {
+        workingNanos.add(nanos);
+    }
+
+    public long getIdleMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(idleNanos.sum());
+    }
+
+    public long getWorkingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(workingNanos.sum());
+    }
+
+    /**
+     * @return the fraction of the loop's time spent idle, 0 if nothing has been recorded yet
+     */
+    public double getIdleRatio() {
+        long idle = idleNanos.sum();
+        long total = idle + workingNanos.sum();
+
+        return total == 0 ? 0 : (double) idle / total;
+    }
+}
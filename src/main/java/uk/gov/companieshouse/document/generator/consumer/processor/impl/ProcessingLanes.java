@@ -0,0 +1,216 @@
+package uk.gov.companieshouse.document.generator.consumer.processor.impl;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The lanes messages processed asynchronously are dispatched through, chosen by the document type of each message.
+ * Each configured document type gets a lane of its own, with its own limit on the messages processed at the same
+ * time, and every other document type shares the default lane. Each consumer queues the messages waiting for capacity
+ * separately for each lane, so a slow document type filling its lane doesn't hold up the messages queued behind it in
+ * other lanes. Lanes are shared by every consumer in the process, and the process wide limit still applies across
+ * all of them.
+ */
+public class ProcessingLanes {
+
+    public static final String DEFAULT_LANE = "default";
+
+    public static final String LANE_IN_FLIGHT_METRIC = "document.generator.lane.in.flight";
+
+    public static final String LANE_QUEUED_METRIC = "document.generator.lane.queued";
+
+    public static final String LANE_WAIT_METRIC = "document.generator.lane.wait";
+
+    private static final String LANE_TAG = "lane";
+
+    private final Map<String, Lane> lanesByDocumentType = new HashMap<>();
+
+    private final Lane defaultLane;
+
+    private final List<Lane> lanes;
+
+    /**
+     * @param limits       the maximum number of messages processed at the same time for each document type with a
+     *                     lane of its own
+     * @param defaultLimit the maximum number of messages of every other document type processed at the same time
+     */
+    public ProcessingLanes(Map<String, Integer> limits, int defaultLimit, MeterRegistry meterRegistry) {
+        List<Lane> allLanes = new ArrayList<>(limits.size() + 1);
+        limits.forEach((documentType, limit) -> {
+            Lane lane = new Lane(documentType, limit, meterRegistry);
+            lanesByDocumentType.put(documentType, lane);
+            allLanes.add(lane);
+        });
+        this.defaultLane = new Lane(DEFAULT_LANE, defaultLimit, meterRegistry);
+        allLanes.add(defaultLane);
+        this.lanes = Collections.unmodifiableList(allLanes);
+    }
+
+    /**
+     * Parse the lanes configuration, a comma separated list of document types each followed by the maximum number of
+     * its messages processed at the same time, such as {@code ACCOUNTS:5,CONFIRMATION_STATEMENT:20}.
+     *
+     * @return the limit of each document type, in the order configured
+     */
+    public static Map<String, Integer> parse(String lanes) {
+        Map<String, Integer> limits = new LinkedHashMap<>();
+        if (lanes == null || lanes.isBlank()) {
+            return limits;
+        }
+
+        for (String lane : lanes.split(",")) {
+            int separator = lane.lastIndexOf(':');
+            String documentType = separator > 0 ? lane.substring(0, separator).trim() : "";
+            int limit;
+            try {
+                limit = Integer.parseInt(lane.substring(separator + 1).trim());
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (documentType.isEmpty() || documentType.equals(DEFAULT_LANE) || limit < 1) {
+                throw new IllegalArgumentException("Processing lane must be a document type and a limit of at least 1"
+                        + " separated by ':' but was '" + lane.trim() + "'");
+            }
+            if (limits.put(documentType, limit) != null) {
+                throw new IllegalArgumentException("Processing lane for document type " + documentType
+                        + " is configured more than once");
+            }
+        }
+
+        return limits;
+    }
+
+    /**
+     * @param documentType the document type of the message, null if it couldn't be deserialised
+     * @return the lane messages of the document type are dispatched through
+     */
+    public Lane laneFor(String documentType) {
+        return documentType == null ? defaultLane : lanesByDocumentType.getOrDefault(documentType, defaultLane);
+    }
+
+    /**
+     * @return whether any document type has a lane of its own, so messages need to be deserialised to be dispatched
+     */
+    public boolean hasDocumentTypeLanes() {
+        return !lanesByDocumentType.isEmpty();
+    }
+
+    public Lane getDefaultLane() {
+        return defaultLane;
+    }
+
+    /**
+     * @return every lane, in the order configured with the default lane last
+     */
+    public List<Lane> getLanes() {
+        return lanes;
+    }
+
+    /**
+     * A lane's limit on the messages processed at the same time, with gauges of the messages in flight and queued in
+     * it and a timer of how long messages wait in its queue.
+     */
+    public static final class Lane {
+
+        private final String name;
+
+        private final int limit;
+
+        private final Semaphore permits;
+
+        private final AtomicInteger queued = new AtomicInteger();
+
+        private final Timer wait;
+
+        private Lane(String name, int limit, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.limit = limit;
+            this.permits = new Semaphore(limit);
+
+            Gauge.builder(LANE_IN_FLIGHT_METRIC, this, Lane::getInFlight)
+                    .description("Number of messages in each processing lane being processed")
+                    .tag(LANE_TAG, name)
+                    .register(meterRegistry);
+            Gauge.builder(LANE_QUEUED_METRIC, queued, AtomicInteger::get)
+                    .description("Number of messages in each processing lane waiting to be dispatched")
+                    .tag(LANE_TAG, name)
+                    .register(meterRegistry);
+            this.wait = Timer.builder(LANE_WAIT_METRIC)
+                    .description("Time messages in each processing lane waited to be dispatched")
+                    .tag(LANE_TAG, name)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+        /**
+         * Record a message queued by a consumer to be dispatched through the lane
+         */
+        public void queued() {
+            queued.incrementAndGet();
+        }
+
+        /**
+         * Record messages leaving a consumer's queue for the lane without being dispatched
+         */
+        public void dropped(int messages) {
+            queued.addAndGet(-messages);
+        }
+
+        /**
+         * Reserve capacity in the lane for a queued message, without waiting.
+         *
+         * @return true if the lane has capacity for the message
+         */
+        public boolean tryAcquire() {
+            return permits.tryAcquire();
+        }
+
+        /**
+         * Record a queued message, whose capacity has been reserved, leaving the queue to be processed
+         *
+         * @param queuedAt the {@link System#nanoTime()} the message was queued at
+         */
+        public void dispatched(long queuedAt) {
+            queued.decrementAndGet();
+            wait.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Release the capacity reserved for a message, once it has been processed or couldn't be dispatched
+         */
+        public void release() {
+            permits.release();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public int getInFlight() {
+            return limit - permits.availablePermits();
+        }
+
+        public int getQueued() {
+            return queued.get();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
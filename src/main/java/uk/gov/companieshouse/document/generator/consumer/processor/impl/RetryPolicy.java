@@ -0,0 +1,127 @@
+package uk.gov.companieshouse.document.generator.consumer.processor.impl;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a request that failed with a transient error is retried. It is first retried in place, up to the maximum
+ * attempts with an exponential backoff between them. If it still fails it is sent to the retry topic, when one is
+ * configured, to be retried after an exponentially growing delay, so the partition it came from isn't held up.
+ * <p>
+ * Every backoff and delay is jittered, picked at random between half and all of the exponential value, so requests that
+ * failed together during a blip in the document generator api don't all retry at the same moment.
+ * <p>
+ * A message that can never succeed, such as one that can't be deserialised, isn't retried. It is sent to the dead
+ * letter topic instead, when one is configured.
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+
+    private final Duration initialBackoff;
+
+    private final Duration maxBackoff;
+
+    /**
+     * Topic requests are sent to once the attempts in place are exhausted, null if requests aren't retried later
+     */
+    private final String retryTopic;
+
+    private final int maxRetryTopicAttempts;
+
+    private final Duration initialRetryTopicDelay;
+
+    private final Duration maxRetryTopicDelay;
+
+    /**
+     * Topic messages that can never succeed are sent to, null if they are only logged
+     */
+    private final String deadLetterTopic;
+
+    public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, String retryTopic,
+                       int maxRetryTopicAttempts, Duration initialRetryTopicDelay, Duration maxRetryTopicDelay) {
+        this(maxAttempts, initialBackoff, maxBackoff, retryTopic, maxRetryTopicAttempts, initialRetryTopicDelay,
+                maxRetryTopicDelay, null);
+    }
+
+    public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, String retryTopic,
+                       int maxRetryTopicAttempts, Duration initialRetryTopicDelay, Duration maxRetryTopicDelay,
+                       String deadLetterTopic) {
+        if (maxAttempts < 1 || maxRetryTopicAttempts < 0) {
+            throw new IllegalArgumentException("Retry attempts must be at least 1 in place and 0 on the retry topic"
+                    + " but were " + maxAttempts + " and " + maxRetryTopicAttempts);
+        }
+
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retryTopic = retryTopic == null || retryTopic.isEmpty() ? null : retryTopic;
+        this.maxRetryTopicAttempts = maxRetryTopicAttempts;
+        this.initialRetryTopicDelay = initialRetryTopicDelay;
+        this.maxRetryTopicDelay = maxRetryTopicDelay;
+        this.deadLetterTopic = deadLetterTopic == null || deadLetterTopic.isEmpty() ? null : deadLetterTopic;
+    }
+
+    /**
+     * A policy that makes a single attempt at each request and never retries it
+     */
+    public static RetryPolicy noRetries() {
+        return new RetryPolicy(1, Duration.ZERO, Duration.ZERO, null, 0, Duration.ZERO, Duration.ZERO);
+    }
+
+    /**
+     * @param attempt the number of attempts made in place so far
+     * @return whether the request should be attempted again in place
+     */
+    public boolean shouldRetry(int attempt) {
+        return attempt < maxAttempts;
+    }
+
+    /**
+     * @param attempt the number of attempts made in place so far
+     * @return the time to wait before the next attempt
+     */
+    public Duration backoff(int attempt) {
+        return jittered(initialBackoff, maxBackoff, attempt);
+    }
+
+    public boolean isRetryTopicEnabled() {
+        return retryTopic != null;
+    }
+
+    public String getRetryTopic() {
+        return retryTopic;
+    }
+
+    public boolean isDeadLetterTopicEnabled() {
+        return deadLetterTopic != null;
+    }
+
+    public String getDeadLetterTopic() {
+        return deadLetterTopic;
+    }
+
+    /**
+     * @param retryTopicAttempt the number of times the request has already been sent to the retry topic
+     * @return whether the request should be sent to the retry topic rather than failed
+     */
+    public boolean shouldRetryLater(int retryTopicAttempt) {
+        return isRetryTopicEnabled() && retryTopicAttempt < maxRetryTopicAttempts;
+    }
+
+    /**
+     * @param retryTopicAttempt the number of times the request has been sent to the retry topic, including this time
+     * @return the time the request waits on the retry topic before it is retried
+     */
+    public Duration retryTopicDelay(int retryTopicAttempt) {
+        return jittered(initialRetryTopicDelay, maxRetryTopicDelay, retryTopicAttempt);
+    }
+
+    private static Duration jittered(Duration initial, Duration max, int attempt) {
+        long exponential = initial.toMillis() << Math.min(Math.max(attempt - 1, 0), 30);
+        long capped = Math.min(Math.max(exponential, 0), max.toMillis());
+        long half = capped / 2;
+
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(capped - half + 1));
+    }
+}
@@ -1,8 +1,8 @@
 package uk.gov.companieshouse.document.generator.consumer.transformers;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 
 import org.springframework.stereotype.Component;
 
@@ -12,10 +12,30 @@ import uk.gov.companieshouse.document.generation.status.DocumentGenerationFailed
 import uk.gov.companieshouse.document.generation.status.DocumentGenerationStarted;
 import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentResponse;
 
+/**
+ * Builds the status messages sent for each request. It holds no mutable state other than the cached current day, which
+ * is replaced as a whole, so one instance is shared by every thread processing messages.
+ */
 @Component
 public class DocumentGenerationTransformer {
 
-    private DateFormat isoDateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private static final DateTimeFormatter ISO_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final Clock clock;
+
+    /**
+     * The current day, formatted once for every completed message created that day
+     */
+    private volatile Day today;
+
+    public DocumentGenerationTransformer() {
+        this(Clock.systemDefaultZone());
+    }
+
+    DocumentGenerationTransformer(Clock clock) {
+        this.clock = clock;
+        this.today = Day.of(clock);
+    }
 
     /**
      * Transform the document generation request into a document generation started message.
@@ -43,7 +63,7 @@ public class DocumentGenerationTransformer {
          completed.setDescriptionIdentifier(response.getDescriptionIdentifier());
          completed.setLocation(response.getLinks().getLocation());
          completed.setDocumentSize(response.getSize());
-         completed.setDocumentCreatedAt(isoDateFormat.format(new Date(System.currentTimeMillis())));
+         completed.setDocumentCreatedAt(today());
          completed.setDescriptionValues(response.getDescriptionValues());
 
          return completed;
@@ -56,15 +76,52 @@ public class DocumentGenerationTransformer {
      */
     public DocumentGenerationFailed transformGenerationFailed(RenderSubmittedDataDocument renderSubmittedDataDocument, GenerateDocumentResponse response) {
         DocumentGenerationFailed failed = new DocumentGenerationFailed();
-        failed.setId(renderSubmittedDataDocument != null ? renderSubmittedDataDocument.getId() : "");
-        failed.setRequesterId(renderSubmittedDataDocument != null ? renderSubmittedDataDocument.getUserId() : "");
-        failed.setDescription(response != null ? response.getDescription() : "");
-        failed.setDescriptionIdentifier(response != null ? response.getDescriptionIdentifier() : "");
 
-        if (response != null && response.getDescriptionValues() != null) {
-            failed.setDescriptionValues(response.getDescriptionValues());
+        if (renderSubmittedDataDocument != null) {
+            failed.setId(renderSubmittedDataDocument.getId());
+            failed.setRequesterId(renderSubmittedDataDocument.getUserId());
+        } else {
+            failed.setId("");
+            failed.setRequesterId("");
+        }
+
+        if (response != null) {
+            failed.setDescription(response.getDescription());
+            failed.setDescriptionIdentifier(response.getDescriptionIdentifier());
+            if (response.getDescriptionValues() != null) {
+                failed.setDescriptionValues(response.getDescriptionValues());
+            }
+        } else {
+            failed.setDescription("");
+            failed.setDescriptionIdentifier("");
         }
 
         return failed;
     }
+
+    /**
+     * @return the current day, only formatted again once the day has changed
+     */
+    private String today() {
+        Day day = today;
+        if (clock.millis() >= day.endMillis) {
+            day = Day.of(clock);
+            today = day;
+        }
+
+        return day.formatted;
+    }
+
+    /**
+     * A day formatted as an ISO date, with the time it ends in the clock's time zone
+     */
+    private record Day(String formatted, long endMillis) {
+
+        private static Day of(Clock clock) {
+            LocalDate date = LocalDate.now(clock);
+            long endMillis = date.plusDays(1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli();
+
+            return new Day(ISO_DATE_FORMAT.format(date), endMillis);
+        }
+    }
 }
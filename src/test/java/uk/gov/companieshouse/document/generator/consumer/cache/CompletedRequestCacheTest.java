@@ -0,0 +1,187 @@
+package uk.gov.companieshouse.document.generator.consumer.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentResponse;
+import uk.gov.companieshouse.document.generator.consumer.document.models.Links;
+
+public class CompletedRequestCacheTest {
+
+    private static final Duration TIME_TO_LIVE = Duration.ofHours(1);
+
+    @TempDir
+    Path tempDir;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private Instant now;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        now = Instant.parse("2026-10-17T09:00:00Z");
+    }
+
+    @Test
+    @DisplayName("Test a completed request is found by its id and counted as a hit")
+    void testCompletedRequestFound() {
+        CompletedRequestCache cache = createCache(10, null);
+
+        cache.put("id-1", createResponse("location-1"));
+
+        assertEquals("location-1", cache.get("id-1").orElseThrow().getLinks().getLocation());
+        assertFalse(cache.get("id-2").isPresent());
+        assertEquals(1.0, meterRegistry.get(CompletedRequestCache.LOOKUP_METRIC).tag("result", "hit").counter()
+                .count());
+        assertEquals(1.0, meterRegistry.get(CompletedRequestCache.LOOKUP_METRIC).tag("result", "miss").counter()
+                .count());
+    }
+
+    @Test
+    @DisplayName("Test a completed request is forgotten once its time to live has passed")
+    void testCompletedRequestExpires() {
+        CompletedRequestCache cache = createCache(10, null);
+        cache.put("id-1", createResponse("location-1"));
+
+        now = now.plus(TIME_TO_LIVE);
+
+        assertFalse(cache.get("id-1").isPresent());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("Test the oldest completed request is evicted once the cache is full")
+    void testOldestEvictedWhenFull() {
+        CompletedRequestCache cache = createCache(2, null);
+
+        cache.put("id-1", createResponse("location-1"));
+        cache.put("id-2", createResponse("location-2"));
+        cache.put("id-3", createResponse("location-3"));
+
+        assertFalse(cache.get("id-1").isPresent());
+        assertTrue(cache.get("id-2").isPresent());
+        assertTrue(cache.get("id-3").isPresent());
+    }
+
+    @Test
+    @DisplayName("Test nothing is remembered when the cache has no entries")
+    void testNothingRememberedWhenDisabled() {
+        CompletedRequestCache cache = createCache(0, tempDir.resolve("completed.jsonl"));
+
+        cache.put("id-1", createResponse("location-1"));
+
+        assertFalse(cache.get("id-1").isPresent());
+        assertFalse(Files.exists(tempDir.resolve("completed.jsonl")));
+    }
+
+    @Test
+    @DisplayName("Test completed requests survive a restart when kept in a file, except those that have expired")
+    void testCompletedRequestsReloadedFromFile() {
+        Path file = tempDir.resolve("cache").resolve("completed.jsonl");
+
+        CompletedRequestCache cache = createCache(10, file);
+        cache.put("id-1", createResponse("location-1"));
+        now = now.plus(Duration.ofMinutes(30));
+        cache.put("id-2", createResponse("location-2"));
+        cache.close();
+
+        now = now.plus(Duration.ofMinutes(45));
+        CompletedRequestCache restarted = createCache(10, file);
+
+        assertFalse(restarted.get("id-1").isPresent());
+        GenerateDocumentResponse response = restarted.get("id-2").orElseThrow();
+        assertEquals("location-2", response.getLinks().getLocation());
+        assertEquals(Map.of("date", "17 October 2026"), response.getDescriptionValues());
+        restarted.close();
+    }
+
+    @Test
+    @DisplayName("Test the file is compacted to the live entries and unreadable lines are skipped")
+    void testFileCompacted() throws IOException {
+        Path file = tempDir.resolve("completed.jsonl");
+        Files.writeString(file, "not json\n", StandardCharsets.UTF_8);
+
+        CompletedRequestCache cache = createCache(2, file);
+        cache.put("id-1", createResponse("location-1"));
+        cache.put("id-2", createResponse("location-2"));
+        cache.put("id-3", createResponse("location-3"));
+        cache.put("id-4", createResponse("location-4"));
+        cache.close();
+
+        assertEquals(2, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+        CompletedRequestCache restarted = createCache(2, file);
+        assertTrue(restarted.get("id-4").isPresent());
+        restarted.close();
+    }
+
+    @Test
+    @DisplayName("Test every completed request waiting to be written is in the file once closed, and closing again does nothing")
+    void testPendingWritesFlushedOnClose() throws IOException {
+        Path file = tempDir.resolve("completed.jsonl");
+
+        CompletedRequestCache cache = createCache(100, file);
+        for (int i = 0; i < 50; i++) {
+            cache.put("id-" + i, createResponse("location-" + i));
+        }
+        cache.close();
+        cache.close();
+
+        assertEquals(50, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+
+        // Still remembered in memory once closed, though no longer written
+        cache.put("id-50", createResponse("location-50"));
+        assertTrue(cache.get("id-50").isPresent());
+        assertEquals(50, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+    }
+
+    private CompletedRequestCache createCache(int maxEntries, Path file) {
+        Clock clock = new Clock() {
+            @Override
+            public ZoneOffset getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(java.time.ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now;
+            }
+        };
+
+        return new CompletedRequestCache(maxEntries, TIME_TO_LIVE, file, meterRegistry, clock);
+    }
+
+    private GenerateDocumentResponse createResponse(String location) {
+        Links links = new Links();
+        links.setLocation(location);
+
+        GenerateDocumentResponse response = new GenerateDocumentResponse();
+        response.setLinks(links);
+        response.setSize("12345");
+        response.setDescription("Accounts");
+        response.setDescriptionIdentifier("accounts");
+        response.setDescriptionValues(Map.of("date", "17 October 2026"));
+
+        return response;
+    }
+}
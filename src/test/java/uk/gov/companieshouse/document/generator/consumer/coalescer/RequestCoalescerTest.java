@@ -0,0 +1,188 @@
+package uk.gov.companieshouse.document.generator.consumer.coalescer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import uk.gov.companieshouse.document.generation.request.RenderSubmittedDataDocument;
+import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentResponse;
+import uk.gov.companieshouse.document.generator.consumer.exception.GenerateDocumentException;
+
+public class RequestCoalescerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private RequestCoalescer requestCoalescer;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        requestCoalescer = new RequestCoalescer(true, Duration.ofSeconds(5), meterRegistry, clock::get);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Test a request identical to one in flight waits for it and is given its response")
+    void testIdenticalRequestJoinsCallInFlight() throws Exception {
+        CountDownLatch callStarted = new CountDownLatch(1);
+        CountDownLatch releaseCall = new CountDownLatch(1);
+        ResponseEntity<GenerateDocumentResponse> response = createResponse();
+
+        Future<ResponseEntity<GenerateDocumentResponse>> leader = executor.submit(() ->
+                requestCoalescer.execute(createRequest("1", "resource"), () -> {
+                    calls.incrementAndGet();
+                    callStarted.countDown();
+                    await(releaseCall);
+                    return response;
+                }));
+        assertTrue(callStarted.await(5, TimeUnit.SECONDS));
+
+        Future<ResponseEntity<GenerateDocumentResponse>> follower = executor.submit(() ->
+                requestCoalescer.execute(createRequest("2", "resource"), this::call));
+        awaitCoalesced("joined");
+        releaseCall.countDown();
+
+        assertSame(response, leader.get(5, TimeUnit.SECONDS));
+        assertSame(response, follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @DisplayName("Test the response is reused within the reuse period and a new call made after it")
+    void testResponseReusedWithinReusePeriod() throws GenerateDocumentException {
+        ResponseEntity<GenerateDocumentResponse> first = requestCoalescer.execute(createRequest("1", "resource"),
+                this::call);
+
+        clock.addAndGet(Duration.ofSeconds(4).toNanos());
+        assertSame(first, requestCoalescer.execute(createRequest("2", "resource"), this::call));
+        assertEquals(1, calls.get());
+        assertEquals(1.0, meterRegistry.get(RequestCoalescer.COALESCED_METRIC).tag("result", "reused").counter()
+                .count());
+
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        requestCoalescer.execute(createRequest("3", "resource"), this::call);
+        assertEquals(2, calls.get());
+        assertEquals(1, requestCoalescer.size());
+    }
+
+    @Test
+    @DisplayName("Test requests for different resources each make their own call")
+    void testDifferentRequestsNotCoalesced() throws GenerateDocumentException {
+        requestCoalescer.execute(createRequest("1", "resource-1"), this::call);
+        requestCoalescer.execute(createRequest("2", "resource-2"), this::call);
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    @DisplayName("Test a failure is given to the requests waiting on the call but isn't reused")
+    void testFailurePassedToWaitingRequestsButNotReused() throws Exception {
+        CountDownLatch callStarted = new CountDownLatch(1);
+        CountDownLatch releaseCall = new CountDownLatch(1);
+
+        Future<ResponseEntity<GenerateDocumentResponse>> leader = executor.submit(() ->
+                requestCoalescer.execute(createRequest("1", "resource"), () -> {
+                    callStarted.countDown();
+                    await(releaseCall);
+                    throw new GenerateDocumentException("Service unavailable", true);
+                }));
+        assertTrue(callStarted.await(5, TimeUnit.SECONDS));
+
+        Future<ResponseEntity<GenerateDocumentResponse>> follower = executor.submit(() ->
+                requestCoalescer.execute(createRequest("2", "resource"), this::call));
+        awaitCoalesced("joined");
+        releaseCall.countDown();
+
+        assertGenerateDocumentException(leader);
+        GenerateDocumentException followerException = assertGenerateDocumentException(follower);
+        assertTrue(followerException.isRetryable());
+        assertEquals(0, calls.get());
+
+        requestCoalescer.execute(createRequest("3", "resource"), this::call);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @DisplayName("Test every request makes its own call when coalescing is disabled")
+    void testEveryRequestCallsWhenDisabled() throws GenerateDocumentException {
+        requestCoalescer = new RequestCoalescer(false, Duration.ofSeconds(5), meterRegistry, clock::get);
+
+        requestCoalescer.execute(createRequest("1", "resource"), this::call);
+        requestCoalescer.execute(createRequest("2", "resource"), this::call);
+
+        assertEquals(2, calls.get());
+        assertEquals(0, requestCoalescer.size());
+    }
+
+    private ResponseEntity<GenerateDocumentResponse> call() {
+        calls.incrementAndGet();
+        return createResponse();
+    }
+
+    private static void await(CountDownLatch latch) throws GenerateDocumentException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GenerateDocumentException("Interrupted", e);
+        }
+    }
+
+    private void awaitCoalesced(String result) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get(RequestCoalescer.COALESCED_METRIC).tag("result", result).counter().count() < 1) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for a request to be coalesced");
+            Thread.sleep(1);
+        }
+    }
+
+    private static GenerateDocumentException assertGenerateDocumentException(
+            Future<ResponseEntity<GenerateDocumentResponse>> future) {
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof GenerateDocumentException);
+
+        return (GenerateDocumentException) exception.getCause();
+    }
+
+    private static ResponseEntity<GenerateDocumentResponse> createResponse() {
+        return new ResponseEntity<>(new GenerateDocumentResponse(), HttpStatus.CREATED);
+    }
+
+    private static RenderSubmittedDataDocument createRequest(String id, String resource) {
+        RenderSubmittedDataDocument renderSubmittedDataDocument = new RenderSubmittedDataDocument();
+        renderSubmittedDataDocument.setId(id);
+        renderSubmittedDataDocument.setResource(resource);
+        renderSubmittedDataDocument.setContentType("application/pdf");
+        renderSubmittedDataDocument.setDocumentType("accounts");
+
+        return renderSubmittedDataDocument;
+    }
+}
@@ -1,11 +1,16 @@
 package uk.gov.companieshouse.document.generator.consumer.configuration;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
+import uk.gov.companieshouse.document.generator.consumer.interceptor.HttpClientTimeoutInterceptor;
 import uk.gov.companieshouse.environment.EnvironmentReader;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 public class EnvironmentConfigurationTest {
@@ -27,7 +32,9 @@ public class EnvironmentConfigurationTest {
     @Test
     @DisplayName("Get the bean for RestTemplate")
     void getBeanForRestTemplate() {
-        RestTemplate restTemplateBean = environmentConfiguration.restTemplate();
+        RestTemplate restTemplateBean = environmentConfiguration.restTemplate(new RestTemplateBuilder(),
+                new SimpleClientHttpRequestFactory(), new HttpClientTimeoutInterceptor(new SimpleMeterRegistry()));
         assertNotNull(restTemplateBean);
+        assertEquals(1, restTemplateBean.getInterceptors().size());
     }
 }
\ No newline at end of file
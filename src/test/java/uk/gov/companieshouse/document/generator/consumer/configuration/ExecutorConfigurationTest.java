@@ -1,6 +1,7 @@
 package uk.gov.companieshouse.document.generator.consumer.configuration;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.Mockito.verify;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -11,19 +12,19 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.core.task.TaskExecutor;
-import uk.gov.companieshouse.document.generator.consumer.processor.MessageProcessorRunner;
+import uk.gov.companieshouse.document.generator.consumer.processor.MessageProcessorRunnerGroup;
 
 @ExtendWith(MockitoExtension.class)
 public class ExecutorConfigurationTest {
 
     @Mock
-    MessageProcessorRunner messageProcessorRunner;
+    MessageProcessorRunnerGroup messageProcessorRunnerGroup;
 
     private ExecutorConfiguration executorConfiguration;
 
     @BeforeEach
     void setup() {
-        executorConfiguration = new ExecutorConfiguration(messageProcessorRunner);
+        executorConfiguration = new ExecutorConfiguration(messageProcessorRunnerGroup);
     }
 
     @Test
@@ -40,4 +41,12 @@ public class ExecutorConfigurationTest {
         CommandLineRunner commandLineRunnerBean = executorConfiguration.schedulingRunner(taskExecutor);
         assertNotNull(commandLineRunnerBean);
     }
+
+    @Test
+    @DisplayName("CommandLineRunner starts every runner in the group")
+    void commandLineRunnerStartsRunnerGroup() throws Exception {
+        TaskExecutor taskExecutor = new SimpleAsyncTaskExecutor();
+        executorConfiguration.schedulingRunner(taskExecutor).run();
+        verify(messageProcessorRunnerGroup).start(taskExecutor);
+    }
 }
@@ -0,0 +1,82 @@
+package uk.gov.companieshouse.document.generator.consumer.configuration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import uk.gov.companieshouse.document.generator.consumer.coalescer.RequestCoalescer;
+import uk.gov.companieshouse.document.generator.consumer.limiter.AdaptiveConcurrencyLimiter;
+
+public class HttpClientConfigurationTest {
+
+    private HttpClientConfiguration httpClientConfiguration;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        httpClientConfiguration = new HttpClientConfiguration();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    @DisplayName("Get the pooled request factory and publish its pool metrics")
+    void getBeanForPooledRequestFactory() throws Exception {
+        ClientHttpRequestFactory requestFactory = createRequestFactory(false);
+
+        assertInstanceOf(HttpComponentsClientHttpRequestFactory.class, requestFactory);
+        assertEquals(20.0, meterRegistry.get("httpcomponents.httpclient.pool.total.max").gauge().value());
+
+        ((HttpComponentsClientHttpRequestFactory) requestFactory).destroy();
+    }
+
+    @Test
+    @DisplayName("Get the HTTP/2 request factory")
+    void getBeanForHttp2RequestFactory() {
+        ClientHttpRequestFactory requestFactory = createRequestFactory(true);
+
+        assertInstanceOf(JdkClientHttpRequestFactory.class, requestFactory);
+        assertNull(meterRegistry.find("httpcomponents.httpclient.pool.total.max").gauge());
+    }
+
+    @Test
+    @DisplayName("Get the bean for the timeout interceptor")
+    void getBeanForHttpClientTimeoutInterceptor() {
+        assertNotNull(httpClientConfiguration.httpClientTimeoutInterceptor(meterRegistry));
+        assertEquals(3, meterRegistry.find("document.generator.http.timeouts").counters().size());
+    }
+
+    @Test
+    @DisplayName("Get the bean for the concurrency limiter and publish its limit")
+    void getBeanForConcurrencyLimiter() {
+        AdaptiveConcurrencyLimiter limiter = httpClientConfiguration.documentGeneratorConcurrencyLimiter(10, 1, 50,
+                0.9, 2.0, 30000, meterRegistry);
+
+        assertEquals(10.0, limiter.getLimit());
+        assertEquals(10.0, meterRegistry.get("document.generator.limiter.limit").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Get the bean for the request coalescer and publish its metrics")
+    void getBeanForRequestCoalescer() {
+        RequestCoalescer requestCoalescer = httpClientConfiguration.documentGeneratorRequestCoalescer(true, 5000,
+                meterRegistry);
+
+        assertEquals(0, requestCoalescer.size());
+        assertEquals(0.0, meterRegistry.get(RequestCoalescer.COALESCED_METRIC).tag("result", "joined").counter()
+                .count());
+    }
+
+    private ClientHttpRequestFactory createRequestFactory(boolean http2Enabled) {
+        return httpClientConfiguration.documentGeneratorRequestFactory(http2Enabled, 20, 2000, 30000, 5000, 30000,
+                meterRegistry);
+    }
+}
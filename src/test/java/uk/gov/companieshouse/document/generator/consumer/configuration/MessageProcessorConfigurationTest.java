@@ -1,19 +1,174 @@
 package uk.gov.companieshouse.document.generator.consumer.configuration;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.ExecutorService;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import uk.gov.companieshouse.document.generator.consumer.processor.MessageProcessorRunner;
-
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.companieshouse.document.generator.consumer.cache.CompletedRequestCache;
+import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentResponse;
+import uk.gov.companieshouse.document.generator.consumer.document.service.GenerateDocument;
+import uk.gov.companieshouse.document.generator.consumer.document.service.MessageService;
+import uk.gov.companieshouse.document.generator.consumer.kafka.AvroCodecRegistry;
+import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaConsumerService;
+import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaConsumerServiceFactory;
+import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaProducerService;
+import uk.gov.companieshouse.document.generator.consumer.metrics.ConsumerProgress;
+import uk.gov.companieshouse.document.generator.consumer.metrics.DocumentGeneratorMetrics;
+import uk.gov.companieshouse.document.generator.consumer.processor.MessageProcessorRunnerGroup;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.RetryPolicy;
 
+@ExtendWith(MockitoExtension.class)
 public class MessageProcessorConfigurationTest {
 
+    @Mock
+    private KafkaConsumerServiceFactory kafkaConsumerServiceFactory;
+
+    @Mock
+    private KafkaProducerService kafkaProducerService;
+
+    @Mock
+    private MessageService messageService;
+
+    @Mock
+    private GenerateDocument generateDocument;
+
+    @Mock
+    private AvroCodecRegistry avroCodecRegistry;
+
+    @Mock
+    private ExecutorService messageProcessingExecutor;
+
+    @Mock
+    private DocumentGeneratorMetrics metrics;
+
+    @Mock
+    private ConsumerProgress consumerProgress;
+
+    @Mock
+    private CompletedRequestCache completedRequestCache;
+
+    private final MessageProcessorConfiguration messageProcessorConfiguration = new MessageProcessorConfiguration();
+
+    @Test
+    @DisplayName("Get the bean for MessageProcessorRunnerGroup")
+    void getBeanForMessageProcessorRunnerGroup() {
+        when(kafkaConsumerServiceFactory.createConsumerService())
+                .thenReturn(mock(KafkaConsumerService.class), mock(KafkaConsumerService.class));
+
+        MessageProcessorRunnerGroup messageProcessorRunnerGroup = createRunnerGroup(2, false);
+
+        assertNotNull(messageProcessorRunnerGroup);
+        assertEquals(2, messageProcessorRunnerGroup.getRunners().size());
+        assertNotSame(messageProcessorRunnerGroup.getRunners().get(0).getKafkaConsumerService(),
+                messageProcessorRunnerGroup.getRunners().get(1).getKafkaConsumerService());
+    }
+
+    @Test
+    @DisplayName("MessageProcessorRunnerGroup requires at least one runner")
+    void getBeanForMessageProcessorRunnerGroupRejectsZeroConcurrency() {
+        assertThrows(IllegalArgumentException.class, () -> createRunnerGroup(0, false));
+    }
+
+    @Test
+    @DisplayName("Get the bean for MessageProcessorRunnerGroup with asynchronous processing")
+    void getBeanForAsyncMessageProcessorRunnerGroup() {
+        when(kafkaConsumerServiceFactory.createConsumerService()).thenReturn(mock(KafkaConsumerService.class));
+
+        MessageProcessorRunnerGroup messageProcessorRunnerGroup = createRunnerGroup(1, true);
+
+        assertEquals(1, messageProcessorRunnerGroup.getRunners().size());
+    }
+
+    @Test
+    @DisplayName("Get the bean for MessageProcessorRunnerGroup fails when the pause watermark isn't above the resume one")
+    void getBeanForAsyncMessageProcessorRunnerGroupWithInvalidWatermarks() {
+        assertThrows(IllegalArgumentException.class, () -> messageProcessorConfiguration.messageProcessorRunnerGroup(1,
+                true, 100, 10, 250, 250, "", 100, 1000, messageProcessingExecutor, kafkaConsumerServiceFactory,
+                kafkaProducerService, messageService, generateDocument, avroCodecRegistry, metrics, consumerProgress,
+                RetryPolicy.noRetries(), completedRequestCache, new SimpleMeterRegistry()));
+    }
+
+    @Test
+    @DisplayName("Get the bean for MessageProcessorRunnerGroup fails when a processing lane has no limit")
+    void getBeanForAsyncMessageProcessorRunnerGroupWithInvalidLanes() {
+        assertThrows(IllegalArgumentException.class,
+                () -> createRunnerGroup(1, true, RetryPolicy.noRetries(), "ACCOUNTS:5,CONFIRMATION_STATEMENT"));
+    }
+
+    @Test
+    @DisplayName("Get the bean for MessageProcessorRunnerGroup with a runner for the retry topic")
+    void getBeanForMessageProcessorRunnerGroupWithRetryTopic() {
+        KafkaConsumerService retryConsumerService = mock(KafkaConsumerService.class);
+        when(kafkaConsumerServiceFactory.createConsumerService()).thenReturn(mock(KafkaConsumerService.class));
+        when(kafkaConsumerServiceFactory.createRetryConsumerService("render-submitted-data-document-retry"))
+                .thenReturn(retryConsumerService);
+
+        MessageProcessorRunnerGroup messageProcessorRunnerGroup = createRunnerGroup(1, false,
+                messageProcessorConfiguration.retryPolicy(3, 200, 2000, "render-submitted-data-document-retry", 5,
+                        30000, 600000, ""));
+
+        assertEquals(2, messageProcessorRunnerGroup.getRunners().size());
+        assertSame(retryConsumerService, messageProcessorRunnerGroup.getRunners().get(1).getKafkaConsumerService());
+    }
+
+    @Test
+    @DisplayName("Get the bean for the retry policy without a retry topic")
+    void getBeanForRetryPolicyWithoutRetryTopic() {
+        RetryPolicy retryPolicy = messageProcessorConfiguration.retryPolicy(3, 200, 2000, "", 5, 30000, 600000, "");
+
+        assertFalse(retryPolicy.isRetryTopicEnabled());
+        assertFalse(retryPolicy.isDeadLetterTopicEnabled());
+        assertTrue(retryPolicy.shouldRetry(2));
+        assertFalse(retryPolicy.shouldRetry(3));
+    }
+
     @Test
-    @DisplayName("Get the bean for MessageProcessorRunner")
-    void getBeanForMessageProcessorRunner() {
-        MessageProcessorConfiguration messageProcessorConfiguration = new MessageProcessorConfiguration();
-        MessageProcessorRunner messageProcessorBean = messageProcessorConfiguration.messageProcessorRunner();
+    @DisplayName("Get the bean for the completed request cache held in memory only")
+    void getBeanForCompletedRequestCache() {
+        CompletedRequestCache cache = messageProcessorConfiguration.completedRequestCache(10, 60000, "",
+                new SimpleMeterRegistry());
+
+        cache.put("id", new GenerateDocumentResponse());
+
+        assertEquals(1, cache.size());
+        cache.close();
+    }
+
+    @Test
+    @DisplayName("Get the bean for the message processing executor")
+    void getBeanForMessageProcessingExecutor() {
+        ExecutorService executor = messageProcessorConfiguration.messageProcessingExecutor();
+        assertNotNull(executor);
+        executor.shutdown();
+    }
+
+    private MessageProcessorRunnerGroup createRunnerGroup(int concurrency, boolean asyncProcessing) {
+        return createRunnerGroup(concurrency, asyncProcessing, RetryPolicy.noRetries());
+    }
+
+    private MessageProcessorRunnerGroup createRunnerGroup(int concurrency, boolean asyncProcessing,
+            RetryPolicy retryPolicy) {
+        return createRunnerGroup(concurrency, asyncProcessing, retryPolicy, "");
+    }
 
-        assertNotNull(messageProcessorBean);
+    private MessageProcessorRunnerGroup createRunnerGroup(int concurrency, boolean asyncProcessing,
+            RetryPolicy retryPolicy, String lanes) {
+        return messageProcessorConfiguration.messageProcessorRunnerGroup(concurrency, asyncProcessing, 100, 10, 500, 250,
+                lanes, 100, 1000, messageProcessingExecutor, kafkaConsumerServiceFactory, kafkaProducerService,
+                messageService, generateDocument, avroCodecRegistry, metrics, consumerProgress, retryPolicy,
+                completedRequestCache, new SimpleMeterRegistry());
     }
 }
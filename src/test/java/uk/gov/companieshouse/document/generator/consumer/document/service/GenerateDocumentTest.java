@@ -3,34 +3,49 @@ package uk.gov.companieshouse.document.generator.consumer.document.service;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.net.URI;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 import uk.gov.companieshouse.document.generation.request.RenderSubmittedDataDocument;
 import uk.gov.companieshouse.document.generator.consumer.DocumentGeneratorConsumerProperties;
-import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentRequest;
+import uk.gov.companieshouse.document.generator.consumer.coalescer.RequestCoalescer;
 import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentResponse;
 import uk.gov.companieshouse.document.generator.consumer.document.models.Links;
 import uk.gov.companieshouse.document.generator.consumer.document.service.impl.GenerateDocumentImpl;
 import uk.gov.companieshouse.document.generator.consumer.exception.GenerateDocumentException;
+import uk.gov.companieshouse.document.generator.consumer.limiter.AdaptiveConcurrencyLimiter;
 import uk.gov.companieshouse.environment.EnvironmentReader;
 
 
@@ -38,9 +53,10 @@ import uk.gov.companieshouse.environment.EnvironmentReader;
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class GenerateDocumentTest {
 
-    @InjectMocks
     private GenerateDocumentImpl generateDocument;
 
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
     @Mock
     private DocumentGeneratorConsumerProperties mockDocumentGeneratorConsumerProperties;
 
@@ -50,6 +66,13 @@ public class GenerateDocumentTest {
     @Mock
     private EnvironmentReader mockReader;
 
+    @BeforeEach
+    void setUp() {
+        concurrencyLimiter = createConcurrencyLimiter(10);
+        generateDocument = new GenerateDocumentImpl(mockRestTemplate, mockDocumentGeneratorConsumerProperties,
+                mockReader, concurrencyLimiter, createRequestCoalescer(false));
+    }
+
     @Test
     @DisplayName("Test that document generated when valid call made")
     void testDocumentGeneratedWhenValidCallMade() throws GenerateDocumentException {
@@ -57,14 +80,43 @@ public class GenerateDocumentTest {
         when(mockDocumentGeneratorConsumerProperties.getBaseUrl()).thenReturn("base_url");
         when(mockDocumentGeneratorConsumerProperties.getRootUri()).thenReturn("root_url");
         when(mockReader.getMandatoryString(anyString())).thenReturn("api_url");
-        when(mockRestTemplate.postForEntity(anyString(), any(HttpEntity.class),
-                eq(GenerateDocumentResponse.class))).thenReturn(createResponse());
+        when(mockRestTemplate.execute(any(URI.class), eq(HttpMethod.POST), any(RequestCallback.class), any())).thenReturn(createResponse());
 
         ResponseEntity<GenerateDocumentResponse> response =
                 generateDocument.requestGenerateDocument(createRenderSubmittedDataDocument());
 
         assertNotNull(response.getBody());
         assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals(0, concurrencyLimiter.getInFlight());
+    }
+
+    @Test
+    @DisplayName("Test the request body is streamed as JSON, with the URI and headers built once for every request")
+    void testRequestWrittenFromTemplate() throws Exception {
+
+        when(mockDocumentGeneratorConsumerProperties.getBaseUrl()).thenReturn("/private/documents/generate");
+        when(mockDocumentGeneratorConsumerProperties.getRootUri()).thenReturn("http://document-generator");
+        when(mockReader.getMandatoryString(anyString())).thenReturn("api_key");
+        when(mockRestTemplate.execute(any(URI.class), eq(HttpMethod.POST), any(RequestCallback.class), any()))
+                .thenReturn(createResponse());
+
+        generateDocument.requestGenerateDocument(createRenderSubmittedDataDocument());
+        generateDocument.requestGenerateDocument(createRenderSubmittedDataDocument());
+
+        ArgumentCaptor<RequestCallback> requestCallback = ArgumentCaptor.forClass(RequestCallback.class);
+        verify(mockRestTemplate, times(2)).execute(
+                eq(URI.create("http://document-generator/private/documents/generate")), eq(HttpMethod.POST),
+                requestCallback.capture(), any());
+        verify(mockReader, times(1)).getMandatoryString(anyString());
+
+        MockClientHttpRequest request = new MockClientHttpRequest();
+        requestCallback.getValue().doWithRequest(request);
+
+        assertEquals("api_key", request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+        assertEquals(MediaType.APPLICATION_JSON, request.getHeaders().getContentType());
+        assertEquals("{\"resource_uri\":\"testResource\",\"mime_type\":\"testContentType\","
+                + "\"document_type\":\"testDocumentType\",\"is_public_location_required\":true}",
+                request.getBodyAsString());
     }
 
     @Test
@@ -73,13 +125,83 @@ public class GenerateDocumentTest {
 
         when(mockDocumentGeneratorConsumerProperties.getBaseUrl()).thenReturn("base_url");
         when(mockDocumentGeneratorConsumerProperties.getRootUri()).thenReturn("root_url");
-        when(mockRestTemplate.postForEntity(anyString(), any(GenerateDocumentRequest.class),
-                eq(GenerateDocumentResponse.class))).thenThrow(RestClientException.class);
+        when(mockRestTemplate.execute(any(URI.class), eq(HttpMethod.POST), any(RequestCallback.class), any()))
+                .thenThrow(RestClientException.class);
 
         assertThrows(GenerateDocumentException.class, () ->
                 generateDocument.requestGenerateDocument(createRenderSubmittedDataDocument()));
     }
 
+    @Test
+    @DisplayName("Test concurrency limit lowered when Api call fails with a server error")
+    void testConcurrencyLimitLoweredWhenApiCallFailsWithServerError() {
+
+        when(mockDocumentGeneratorConsumerProperties.getBaseUrl()).thenReturn("base_url");
+        when(mockDocumentGeneratorConsumerProperties.getRootUri()).thenReturn("root_url");
+        when(mockReader.getMandatoryString(anyString())).thenReturn("api_url");
+        when(mockRestTemplate.execute(any(URI.class), eq(HttpMethod.POST), any(RequestCallback.class), any()))
+                .thenThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE));
+
+        GenerateDocumentException exception = assertThrows(GenerateDocumentException.class, () ->
+                generateDocument.requestGenerateDocument(createRenderSubmittedDataDocument()));
+
+        assertTrue(exception.isRetryable());
+        assertEquals(9.0, concurrencyLimiter.getLimit(), 0.001);
+        assertEquals(0, concurrencyLimiter.getInFlight());
+    }
+
+    @Test
+    @DisplayName("Test error thrown without calling Api when the concurrency limit is reached")
+    void testErrorThrownWhenConcurrencyLimitReached() throws InterruptedException {
+
+        concurrencyLimiter = createConcurrencyLimiter(1);
+        generateDocument = new GenerateDocumentImpl(mockRestTemplate, mockDocumentGeneratorConsumerProperties,
+                mockReader, concurrencyLimiter, createRequestCoalescer(false));
+        concurrencyLimiter.acquire();
+
+        when(mockDocumentGeneratorConsumerProperties.getBaseUrl()).thenReturn("base_url");
+        when(mockDocumentGeneratorConsumerProperties.getRootUri()).thenReturn("root_url");
+
+        GenerateDocumentException exception = assertThrows(GenerateDocumentException.class, () ->
+                generateDocument.requestGenerateDocument(createRenderSubmittedDataDocument()));
+
+        assertTrue(exception.isRetryable());
+        verify(mockRestTemplate, never()).execute(any(URI.class), any(HttpMethod.class), any(RequestCallback.class),
+                any());
+    }
+
+    @Test
+    @DisplayName("Test the Api is called once for identical requests made within the reuse period")
+    void testApiCalledOnceForIdenticalRequests() throws GenerateDocumentException {
+
+        generateDocument = new GenerateDocumentImpl(mockRestTemplate, mockDocumentGeneratorConsumerProperties,
+                mockReader, concurrencyLimiter, createRequestCoalescer(true));
+
+        when(mockDocumentGeneratorConsumerProperties.getBaseUrl()).thenReturn("base_url");
+        when(mockDocumentGeneratorConsumerProperties.getRootUri()).thenReturn("root_url");
+        when(mockReader.getMandatoryString(anyString())).thenReturn("api_url");
+        when(mockRestTemplate.execute(any(URI.class), eq(HttpMethod.POST), any(RequestCallback.class), any())).thenReturn(createResponse());
+
+        RenderSubmittedDataDocument resubmitted = createRenderSubmittedDataDocument();
+        resubmitted.setId("resubmittedId");
+
+        ResponseEntity<GenerateDocumentResponse> first =
+                generateDocument.requestGenerateDocument(createRenderSubmittedDataDocument());
+        ResponseEntity<GenerateDocumentResponse> second = generateDocument.requestGenerateDocument(resubmitted);
+
+        assertEquals(first.getBody(), second.getBody());
+        verify(mockRestTemplate, times(1)).execute(any(URI.class), eq(HttpMethod.POST), any(RequestCallback.class),
+                any());
+    }
+
+    private RequestCoalescer createRequestCoalescer(boolean enabled) {
+        return new RequestCoalescer(enabled, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    }
+
+    private AdaptiveConcurrencyLimiter createConcurrencyLimiter(int limit) {
+        return new AdaptiveConcurrencyLimiter(limit, 1, limit, 0.9, 2.0, 0, new SimpleMeterRegistry());
+    }
+
     private ResponseEntity createResponse() {
 
         GenerateDocumentResponse response = new GenerateDocumentResponse();
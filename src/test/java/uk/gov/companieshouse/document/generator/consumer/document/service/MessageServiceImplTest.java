@@ -24,11 +24,11 @@ import uk.gov.companieshouse.document.generator.consumer.document.models.Generat
 import uk.gov.companieshouse.document.generator.consumer.document.models.Links;
 import uk.gov.companieshouse.document.generator.consumer.document.service.impl.MessageServiceImpl;
 import uk.gov.companieshouse.document.generator.consumer.exception.MessageCreationException;
+import uk.gov.companieshouse.document.generator.consumer.kafka.AvroCodec;
+import uk.gov.companieshouse.document.generator.consumer.kafka.AvroCodecRegistry;
 import uk.gov.companieshouse.document.generator.consumer.transformers.DocumentGenerationTransformer;
 import uk.gov.companieshouse.kafka.exceptions.SerializationException;
 import uk.gov.companieshouse.kafka.message.Message;
-import uk.gov.companieshouse.kafka.serialization.AvroSerializer;
-import uk.gov.companieshouse.kafka.serialization.SerializerFactory;
 
 @ExtendWith(MockitoExtension.class)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
@@ -38,28 +38,25 @@ public class MessageServiceImplTest {
     private MessageServiceImpl messageService;
 
     @Mock
-    private SerializerFactory serializerFactory;
+    private AvroCodecRegistry avroCodecRegistry;
 
     @Mock
-    private AvroSerializer<DocumentGenerationStarted> startedSerializer;
+    private AvroCodec<DocumentGenerationStarted> startedCodec;
     
     @Mock
-    private AvroSerializer<DocumentGenerationCompleted> completedSerializer;
+    private AvroCodec<DocumentGenerationCompleted> completedCodec;
     
     @Mock
-    private AvroSerializer<DocumentGenerationFailed> failedSerializer;
+    private AvroCodec<DocumentGenerationFailed> failedCodec;
 
     @Mock
     private DocumentGenerationTransformer transformer;
 
-    @Mock
-    private DocumentGenerationStarted documentGenerationStarted;
+    private final DocumentGenerationStarted documentGenerationStarted = new DocumentGenerationStarted();
 
-    @Mock
-    private DocumentGenerationCompleted documentGenerationCompleted;
+    private final DocumentGenerationCompleted documentGenerationCompleted = new DocumentGenerationCompleted();
 
-    @Mock
-    private DocumentGenerationFailed documentGenerationFailed;
+    private final DocumentGenerationFailed documentGenerationFailed = new DocumentGenerationFailed();
 
     private static final String STARTED_PRODUCER_TOPIC = "document-generation-started";
     private static final String FAILED_PRODUCER_TOPIC = "document-generation-failed";
@@ -76,8 +73,8 @@ public class MessageServiceImplTest {
         RenderSubmittedDataDocument renderSubmittedDataDocument = createRenderSubmittedDataDocument();
 
         when(transformer.transformGenerationStarted(renderSubmittedDataDocument)).thenReturn(documentGenerationStarted);
-        when(serializerFactory.getSpecificRecordSerializer(DocumentGenerationStarted.class)).thenReturn(startedSerializer);
-        when(startedSerializer.toBinary(documentGenerationStarted)).thenReturn(STARTED_BYTES);
+        when(avroCodecRegistry.getCodec(DocumentGenerationStarted.class)).thenReturn(startedCodec);
+        when(startedCodec.encode(documentGenerationStarted)).thenReturn(STARTED_BYTES);
 
         Message message = messageService.createDocumentGenerationStarted(renderSubmittedDataDocument);
 
@@ -90,8 +87,8 @@ public class MessageServiceImplTest {
 
         RenderSubmittedDataDocument renderSubmittedDataDocument = createRenderSubmittedDataDocument();
         when(transformer.transformGenerationStarted(renderSubmittedDataDocument)).thenReturn(documentGenerationStarted);
-        when(serializerFactory.getSpecificRecordSerializer(DocumentGenerationStarted.class)).thenReturn(startedSerializer);
-        when(startedSerializer.toBinary(documentGenerationStarted)).thenThrow(new SerializationException("error"));
+        when(avroCodecRegistry.getCodec(DocumentGenerationStarted.class)).thenReturn(startedCodec);
+        when(startedCodec.encode(documentGenerationStarted)).thenThrow(new SerializationException("error"));
 
         assertThrows(MessageCreationException.class, () -> messageService.createDocumentGenerationStarted(renderSubmittedDataDocument));
     }
@@ -103,8 +100,8 @@ public class MessageServiceImplTest {
         GenerateDocumentResponse generateDocumentResponse = createResponse();
 
         when(transformer.transformGenerationFailed(renderSubmittedDataDocument, generateDocumentResponse)).thenReturn(documentGenerationFailed);
-        when(serializerFactory.getSpecificRecordSerializer(DocumentGenerationFailed.class)).thenReturn(failedSerializer);
-        when(failedSerializer.toBinary(documentGenerationFailed)).thenReturn(FAILED_BYTES);
+        when(avroCodecRegistry.getCodec(DocumentGenerationFailed.class)).thenReturn(failedCodec);
+        when(failedCodec.encode(documentGenerationFailed)).thenReturn(FAILED_BYTES);
 
         Message message = messageService.createDocumentGenerationFailed(renderSubmittedDataDocument, generateDocumentResponse);
 
@@ -118,8 +115,8 @@ public class MessageServiceImplTest {
         GenerateDocumentResponse generateDocumentResponse = null;
 
         when(transformer.transformGenerationFailed(renderSubmittedDataDocument, generateDocumentResponse)).thenReturn(documentGenerationFailed);
-        when(serializerFactory.getSpecificRecordSerializer(DocumentGenerationFailed.class)).thenReturn(failedSerializer);
-        when(failedSerializer.toBinary(documentGenerationFailed)).thenReturn(FAILED_BYTES);
+        when(avroCodecRegistry.getCodec(DocumentGenerationFailed.class)).thenReturn(failedCodec);
+        when(failedCodec.encode(documentGenerationFailed)).thenReturn(FAILED_BYTES);
 
         Message message = messageService.createDocumentGenerationFailed(renderSubmittedDataDocument, generateDocumentResponse);
 
@@ -133,8 +130,8 @@ public class MessageServiceImplTest {
         GenerateDocumentResponse generateDocumentResponse = null;
 
         when(transformer.transformGenerationFailed(renderSubmittedDataDocument, generateDocumentResponse)).thenReturn(documentGenerationFailed);
-        when(serializerFactory.getSpecificRecordSerializer(DocumentGenerationFailed.class)).thenReturn(failedSerializer);
-        when(failedSerializer.toBinary(documentGenerationFailed)).thenReturn(FAILED_BYTES);
+        when(avroCodecRegistry.getCodec(DocumentGenerationFailed.class)).thenReturn(failedCodec);
+        when(failedCodec.encode(documentGenerationFailed)).thenReturn(FAILED_BYTES);
 
         Message message = messageService.createDocumentGenerationFailed(renderSubmittedDataDocument, generateDocumentResponse);
 
@@ -148,8 +145,8 @@ public class MessageServiceImplTest {
         GenerateDocumentResponse generateDocumentResponse = createResponse();
 
         when(transformer.transformGenerationFailed(renderSubmittedDataDocument, generateDocumentResponse)).thenReturn(documentGenerationFailed);
-        when(serializerFactory.getSpecificRecordSerializer(DocumentGenerationFailed.class)).thenReturn(failedSerializer);
-        when(failedSerializer.toBinary(documentGenerationFailed)).thenThrow(new SerializationException("error"));
+        when(avroCodecRegistry.getCodec(DocumentGenerationFailed.class)).thenReturn(failedCodec);
+        when(failedCodec.encode(documentGenerationFailed)).thenThrow(new SerializationException("error"));
 
         assertThrows(MessageCreationException.class, () -> messageService.createDocumentGenerationFailed(renderSubmittedDataDocument, generateDocumentResponse));
     }
@@ -161,8 +158,8 @@ public class MessageServiceImplTest {
         GenerateDocumentResponse generateDocumentResponse = createResponse();
 
         when(transformer.transformGenerationCompleted(renderSubmittedDataDocument, generateDocumentResponse)).thenReturn(documentGenerationCompleted);
-        when(serializerFactory.getSpecificRecordSerializer(DocumentGenerationCompleted.class)).thenReturn(completedSerializer);
-        when(completedSerializer.toBinary(documentGenerationCompleted)).thenReturn(COMPLETED_BYTES);
+        when(avroCodecRegistry.getCodec(DocumentGenerationCompleted.class)).thenReturn(completedCodec);
+        when(completedCodec.encode(documentGenerationCompleted)).thenReturn(COMPLETED_BYTES);
 
         Message message = messageService.createDocumentGenerationCompleted(renderSubmittedDataDocument, generateDocumentResponse);
 
@@ -176,8 +173,8 @@ public class MessageServiceImplTest {
         GenerateDocumentResponse generateDocumentResponse = createResponse();
 
         when(transformer.transformGenerationCompleted(renderSubmittedDataDocument, generateDocumentResponse)).thenReturn(documentGenerationCompleted);
-        when(serializerFactory.getSpecificRecordSerializer(DocumentGenerationCompleted.class)).thenReturn(completedSerializer);
-        when(completedSerializer.toBinary(documentGenerationCompleted)).thenThrow(new SerializationException("error"));
+        when(avroCodecRegistry.getCodec(DocumentGenerationCompleted.class)).thenReturn(completedCodec);
+        when(completedCodec.encode(documentGenerationCompleted)).thenThrow(new SerializationException("error"));
 
         assertThrows(MessageCreationException.class, () -> messageService.createDocumentGenerationCompleted(renderSubmittedDataDocument, generateDocumentResponse));
     }
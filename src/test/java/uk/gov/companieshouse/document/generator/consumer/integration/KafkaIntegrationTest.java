@@ -20,7 +20,7 @@ import org.springframework.kafka.test.context.EmbeddedKafka;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import uk.gov.companieshouse.document.generation.request.RenderSubmittedDataDocument;
-import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaConsumerService;
+import uk.gov.companieshouse.document.generator.consumer.processor.MessageProcessorRunnerGroup;
 import uk.gov.companieshouse.kafka.deserialization.DeserializerFactory;
 import uk.gov.companieshouse.kafka.exceptions.DeserializationException;
 import uk.gov.companieshouse.kafka.exceptions.SerializationException;
@@ -47,14 +47,14 @@ class KafkaIntegrationTest {
     private DeserializerFactory deserializerFactory;
 
     @Autowired
-    private KafkaConsumerService consumer;
+    private MessageProcessorRunnerGroup messageProcessorRunnerGroup;
 
     private final CountDownLatch latch = new CountDownLatch(1);
     private Message receivedMessage;
 
     @BeforeEach
     void setUp() {
-        consumer.setCallback(message -> {
+        messageProcessorRunnerGroup.setCallback(message -> {
             receivedMessage = message;
             latch.countDown();
         });
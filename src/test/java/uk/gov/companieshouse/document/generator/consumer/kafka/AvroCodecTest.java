@@ -0,0 +1,116 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.message.BinaryMessageEncoder;
+import org.apache.avro.message.SchemaStore;
+import org.apache.avro.specific.SpecificData;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.companieshouse.document.generation.request.RenderSubmittedDataDocument;
+import uk.gov.companieshouse.document.generation.status.DocumentGenerationStarted;
+import uk.gov.companieshouse.kafka.exceptions.DeserializationException;
+import uk.gov.companieshouse.kafka.serialization.SerializerFactory;
+
+public class AvroCodecTest {
+
+    private final AvroCodec<RenderSubmittedDataDocument> codec = new AvroCodec<>(RenderSubmittedDataDocument.class,
+            RenderSubmittedDataDocument.getClassSchema());
+
+    @Test
+    @DisplayName("Test records are decoded and encoded repeatedly with reused state")
+    void testRoundTrip() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            RenderSubmittedDataDocument document = createDocument("id" + i);
+
+            assertEquals(document, codec.decode(codec.encode(document)));
+        }
+    }
+
+    @Test
+    @DisplayName("Test records written by the ch-kafka serializer are decoded")
+    void testDecodesSerializerOutput() throws Exception {
+        RenderSubmittedDataDocument document = createDocument("1234");
+        byte[] data = new SerializerFactory().getSpecificRecordSerializer(RenderSubmittedDataDocument.class)
+                .toBinary(document);
+
+        assertEquals(document, codec.decode(data));
+    }
+
+    @Test
+    @DisplayName("Test single object encoded records written with the codec's schema are decoded")
+    void testDecodesSingleObjectEncoding() throws Exception {
+        RenderSubmittedDataDocument document = createDocument("1234");
+        byte[] data = new BinaryMessageEncoder<RenderSubmittedDataDocument>(SpecificData.get(),
+                RenderSubmittedDataDocument.getClassSchema()).encode(document).array();
+
+        assertEquals(document, codec.decode(data));
+    }
+
+    @Test
+    @DisplayName("Test records written with a newer schema are resolved against the codec's schema")
+    void testDecodesWithWriterSchema() throws Exception {
+        Schema readerSchema = RenderSubmittedDataDocument.getClassSchema();
+        List<Schema.Field> fields = new ArrayList<>();
+        for (Schema.Field field : readerSchema.getFields()) {
+            fields.add(new Schema.Field(field, field.schema()));
+        }
+        fields.add(new Schema.Field("priority", Schema.create(Schema.Type.INT), null, 0));
+        Schema writerSchema = Schema.createRecord(readerSchema.getName(), null, readerSchema.getNamespace(), false,
+                fields);
+
+        RenderSubmittedDataDocument document = createDocument("1234");
+        GenericRecord written = new GenericData.Record(writerSchema);
+        for (Schema.Field field : readerSchema.getFields()) {
+            written.put(field.name(), document.get(field.pos()));
+        }
+        written.put("priority", 5);
+        byte[] data = new BinaryMessageEncoder<GenericRecord>(GenericData.get(), writerSchema).encode(written).array();
+
+        SchemaStore.Cache writerSchemas = new SchemaStore.Cache();
+        writerSchemas.addSchema(writerSchema);
+        AvroCodec<RenderSubmittedDataDocument> resolvingCodec = new AvroCodec<>(RenderSubmittedDataDocument.class,
+                readerSchema, writerSchemas);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(document, resolvingCodec.decode(data));
+        }
+        assertThrows(DeserializationException.class, () -> codec.decode(data));
+    }
+
+    @Test
+    @DisplayName("Test invalid data throws a DeserializationException and the codec can still be used")
+    void testInvalidData() throws Exception {
+        assertThrows(DeserializationException.class, () -> codec.decode(new byte[] {(byte) 0xFF}));
+
+        RenderSubmittedDataDocument document = createDocument("id");
+        assertEquals(document, codec.decode(codec.encode(document)));
+    }
+
+    @Test
+    @DisplayName("Test the registry returns the codec registered for a type")
+    void testRegistry() {
+        AvroCodecRegistry registry = new AvroCodecRegistry(List.of(codec));
+
+        assertEquals(codec, registry.getCodec(RenderSubmittedDataDocument.class));
+        assertThrows(IllegalArgumentException.class, () -> registry.getCodec(DocumentGenerationStarted.class));
+    }
+
+    private RenderSubmittedDataDocument createDocument(String id) {
+        return RenderSubmittedDataDocument.newBuilder()
+                .setId(id)
+                .setResource("my-resource")
+                .setContentType("text/html")
+                .setDocumentType("application/pdf")
+                .setUserId("userId")
+                .build();
+    }
+}
@@ -0,0 +1,54 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import uk.gov.companieshouse.document.generation.request.RenderSubmittedDataDocument;
+
+public class AvroSchemaDirectoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    @DisplayName("Test schemas are found by fingerprint, and a schema added later once the rescan interval has passed")
+    void testFindsSchemasAddedLater() throws Exception {
+        Schema schema = RenderSubmittedDataDocument.getClassSchema();
+        long fingerprint = SchemaNormalization.parsingFingerprint64(schema);
+        Files.writeString(tempDir.resolve("not-a-schema.avsc"), "{", StandardCharsets.UTF_8);
+
+        AvroSchemaDirectory schemaDirectory = new AvroSchemaDirectory(tempDir, Duration.ofMinutes(1), clock::get);
+        assertNull(schemaDirectory.findByFingerprint(fingerprint));
+
+        Files.writeString(tempDir.resolve("render-submitted-data-document.avsc"), schema.toString(),
+                StandardCharsets.UTF_8);
+        assertNull(schemaDirectory.findByFingerprint(fingerprint));
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertEquals(schema, schemaDirectory.findByFingerprint(fingerprint));
+    }
+
+    @Test
+    @DisplayName("Test a missing directory finds no schemas")
+    void testMissingDirectory() {
+        AvroSchemaDirectory schemaDirectory = new AvroSchemaDirectory(tempDir.resolve("missing"),
+                Duration.ofMinutes(1), clock::get);
+
+        assertNull(schemaDirectory.findByFingerprint(1L));
+    }
+}
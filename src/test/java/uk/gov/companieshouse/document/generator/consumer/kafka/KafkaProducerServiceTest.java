@@ -0,0 +1,122 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.companieshouse.document.generator.consumer.kafka.impl.KafkaProducerServiceImpl;
+import uk.gov.companieshouse.kafka.message.Message;
+
+public class KafkaProducerServiceTest {
+
+    private MockProducer<String, byte[]> producer;
+
+    private KafkaProducerService kafkaProducerService;
+
+    @BeforeEach
+    void setUp() {
+        producer = new MockProducer<>(false, new StringSerializer(), new ByteArraySerializer());
+        kafkaProducerService = new KafkaProducerServiceImpl(producer);
+    }
+
+    @Test
+    @DisplayName("Test send returns before the message is acknowledged")
+    void testSendDoesNotWaitForAcknowledgement() {
+        CompletableFuture<RecordMetadata> result = kafkaProducerService.send(createMessage());
+
+        assertFalse(result.isDone());
+        assertEquals(1, producer.history().size());
+        assertEquals("document-generation-started", producer.history().get(0).topic());
+
+        producer.completeNext();
+
+        assertTrue(result.isDone());
+        assertFalse(result.isCompletedExceptionally());
+    }
+
+    @Test
+    @DisplayName("Test a failed send completes the result exceptionally")
+    void testFailedSendCompletesExceptionally() {
+        CompletableFuture<RecordMetadata> result = kafkaProducerService.send(createMessage());
+
+        producer.errorNext(new RuntimeException("error"));
+
+        assertTrue(result.isCompletedExceptionally());
+    }
+
+    @Test
+    @DisplayName("Test flush completes all outstanding sends")
+    void testFlushCompletesOutstandingSends() {
+        CompletableFuture<RecordMetadata> first = kafkaProducerService.send(createMessage());
+        CompletableFuture<RecordMetadata> second = kafkaProducerService.send(createMessage());
+
+        kafkaProducerService.flush();
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+    }
+
+    @Test
+    @DisplayName("Test a retry message is sent with its attempt and not before time as headers")
+    void testRetryMessageSentWithHeaders() {
+        RetryMessage retryMessage = new RetryMessage();
+        retryMessage.setTopic("render-submitted-data-document-retry");
+        retryMessage.setTimestamp(System.currentTimeMillis());
+        retryMessage.setValue("value 1".getBytes());
+        retryMessage.setAttempt(2);
+        retryMessage.setNotBefore(1760000000000L);
+
+        kafkaProducerService.send(retryMessage);
+
+        RetryMessage received = new RetryMessage();
+        received.readHeaders(producer.history().get(0).headers());
+
+        assertEquals(2, received.getAttempt());
+        assertEquals(1760000000000L, received.getNotBefore());
+    }
+
+    @Test
+    @DisplayName("Test a dead letter message is sent with where it was consumed from and why it failed as headers")
+    void testDeadLetterMessageSentWithHeaders() {
+        Message consumed = createMessage();
+        consumed.setTopic("render-submitted-data-document");
+        consumed.setPartition(3);
+        consumed.setOffset(42L);
+
+        kafkaProducerService.send(new DeadLetterMessage("render-submitted-data-document-dlt", consumed,
+                new IllegalArgumentException("bad record")));
+
+        Headers headers = producer.history().get(0).headers();
+        assertEquals("render-submitted-data-document", header(headers, DeadLetterMessage.ORIGINAL_TOPIC_HEADER));
+        assertEquals("3", header(headers, DeadLetterMessage.ORIGINAL_PARTITION_HEADER));
+        assertEquals("42", header(headers, DeadLetterMessage.ORIGINAL_OFFSET_HEADER));
+        assertEquals(IllegalArgumentException.class.getName(), header(headers, DeadLetterMessage.ERROR_CLASS_HEADER));
+        assertEquals("bad record", header(headers, DeadLetterMessage.ERROR_MESSAGE_HEADER));
+    }
+
+    private String header(Headers headers, String key) {
+        return new String(headers.lastHeader(key).value(), StandardCharsets.UTF_8);
+    }
+
+    private Message createMessage() {
+        Message message = new Message();
+        message.setKey("test key");
+        message.setTopic("document-generation-started");
+        message.setTimestamp(System.currentTimeMillis());
+        message.setValue("value 1".getBytes());
+
+        return message;
+    }
+}
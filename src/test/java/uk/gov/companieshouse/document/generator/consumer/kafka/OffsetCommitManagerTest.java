@@ -0,0 +1,153 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.companieshouse.document.generator.consumer.kafka.impl.OffsetCommitManager;
+
+public class OffsetCommitManagerTest {
+
+    private static final TopicPartition PARTITION_ZERO = new TopicPartition("render-submitted-data-document", 0);
+    private static final TopicPartition PARTITION_ONE = new TopicPartition("render-submitted-data-document", 1);
+
+    private MockConsumer<String, byte[]> consumer;
+
+    private AtomicInteger beforeCommitCount;
+
+    @BeforeEach
+    void setUp() {
+        consumer = new MockConsumer<>(OffsetResetStrategy.LATEST);
+        beforeCommitCount = new AtomicInteger();
+    }
+
+    @Test
+    @DisplayName("Test offsets are not committed until the batch size is reached")
+    void testCommitsWhenBatchSizeReached() {
+        OffsetCommitManager offsetCommitManager = createManager(3, Long.MAX_VALUE);
+
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 10L);
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 11L);
+        offsetCommitManager.maybeCommit();
+        assertNull(committed(PARTITION_ZERO));
+
+        offsetCommitManager.markProcessed(PARTITION_ONE, 20L);
+        offsetCommitManager.maybeCommit();
+
+        assertEquals(12L, committed(PARTITION_ZERO).offset());
+        assertEquals(21L, committed(PARTITION_ONE).offset());
+    }
+
+    @Test
+    @DisplayName("Test offsets are committed once the commit interval has passed")
+    void testCommitsWhenIntervalReached() {
+        OffsetCommitManager offsetCommitManager = createManager(Integer.MAX_VALUE, 0L);
+
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 10L);
+        offsetCommitManager.maybeCommit();
+
+        assertEquals(11L, committed(PARTITION_ZERO).offset());
+    }
+
+    @Test
+    @DisplayName("Test pending offsets of revoked partitions are committed")
+    void testCommitsRevokedPartitions() {
+        OffsetCommitManager offsetCommitManager = createManager(Integer.MAX_VALUE, Long.MAX_VALUE);
+
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 10L);
+        offsetCommitManager.markProcessed(PARTITION_ONE, 20L);
+        offsetCommitManager.onPartitionsRevoked(List.of(PARTITION_ZERO));
+
+        assertEquals(11L, committed(PARTITION_ZERO).offset());
+        assertNull(committed(PARTITION_ONE));
+
+        // Offsets processed after the partition has been revoked are not committed
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 12L);
+        offsetCommitManager.commitSync();
+
+        assertEquals(11L, committed(PARTITION_ZERO).offset());
+        assertEquals(21L, committed(PARTITION_ONE).offset());
+    }
+
+    @Test
+    @DisplayName("Test pending offsets of lost partitions are discarded")
+    void testDiscardsLostPartitions() {
+        OffsetCommitManager offsetCommitManager = createManager(Integer.MAX_VALUE, Long.MAX_VALUE);
+
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 10L);
+        offsetCommitManager.onPartitionsLost(List.of(PARTITION_ZERO));
+        offsetCommitManager.commitSync();
+
+        assertNull(committed(PARTITION_ZERO));
+    }
+
+    @Test
+    @DisplayName("Test the before commit action runs only when there are offsets to commit")
+    void testRunsBeforeCommitActionBeforeCommitting() {
+        OffsetCommitManager offsetCommitManager = new OffsetCommitManager(consumer, Integer.MAX_VALUE,
+                Long.MAX_VALUE, () -> {
+                    // Nothing may be committed until the status messages have been acknowledged
+                    assertNull(committed(PARTITION_ZERO));
+                    beforeCommitCount.incrementAndGet();
+                });
+        offsetCommitManager.onPartitionsAssigned(List.of(PARTITION_ZERO));
+
+        offsetCommitManager.commitAsync();
+        offsetCommitManager.commitSync();
+        assertEquals(0, beforeCommitCount.get());
+
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 10L);
+        offsetCommitManager.commitAsync();
+
+        assertEquals(1, beforeCommitCount.get());
+        assertEquals(11L, committed(PARTITION_ZERO).offset());
+    }
+
+    @Test
+    @DisplayName("Test offsets are committed when closing after a wakeup meant for a poll")
+    void testCommitsAfterPendingWakeup() {
+        consumer = new MockConsumer<>(OffsetResetStrategy.LATEST) {
+            private boolean wakeupPending = true;
+
+            @Override
+            public synchronized void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+                if (wakeupPending) {
+                    wakeupPending = false;
+                    throw new WakeupException();
+                }
+                super.commitSync(offsets);
+            }
+        };
+        OffsetCommitManager offsetCommitManager = createManager(Integer.MAX_VALUE, Long.MAX_VALUE);
+
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 10L);
+        offsetCommitManager.commitSync();
+
+        assertEquals(11L, committed(PARTITION_ZERO).offset());
+    }
+
+    private OffsetCommitManager createManager(int batchSize, long intervalMillis) {
+        OffsetCommitManager offsetCommitManager = new OffsetCommitManager(consumer, batchSize, intervalMillis,
+                beforeCommitCount::incrementAndGet);
+        offsetCommitManager.onPartitionsAssigned(List.of(PARTITION_ZERO, PARTITION_ONE));
+
+        return offsetCommitManager;
+    }
+
+    private OffsetAndMetadata committed(TopicPartition partition) {
+        return consumer.committed(Set.of(partition)).get(partition);
+    }
+}
@@ -0,0 +1,120 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.companieshouse.document.generator.consumer.kafka.impl.RetryKafkaConsumerServiceImpl;
+import uk.gov.companieshouse.kafka.message.Message;
+
+public class RetryKafkaConsumerServiceTest {
+
+    private static final String RETRY_TOPIC = "render-submitted-data-document-retry";
+    private static final TopicPartition PARTITION_ZERO = new TopicPartition(RETRY_TOPIC, 0);
+    private static final TopicPartition PARTITION_ONE = new TopicPartition(RETRY_TOPIC, 1);
+
+    private MockConsumer<String, byte[]> consumer;
+
+    private KafkaConsumerService kafkaConsumerService;
+
+    @BeforeEach
+    void setUp() {
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafkaConsumerService = new RetryKafkaConsumerServiceImpl(consumer, List.of(RETRY_TOPIC), 100, 1000, () -> {});
+
+        consumer.assign(List.of(PARTITION_ZERO, PARTITION_ONE));
+        consumer.updateBeginningOffsets(Map.of(PARTITION_ZERO, 0L, PARTITION_ONE, 0L));
+    }
+
+    @Test
+    @DisplayName("Test a message that is due is returned with its retry attempt")
+    void testDueMessageReturned() {
+        consumer.addRecord(createRecord(PARTITION_ZERO, 0L, 3, System.currentTimeMillis() - 1000));
+
+        List<Message> messages = kafkaConsumerService.consume(Duration.ZERO);
+
+        assertEquals(1, messages.size());
+        RetryMessage retryMessage = assertInstanceOf(RetryMessage.class, messages.get(0));
+        assertEquals(3, retryMessage.getAttempt());
+        assertTrue(consumer.paused().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test the partition of a message that isn't due is paused at that message")
+    void testPartitionPausedUntilMessageDue() {
+        long later = System.currentTimeMillis() + Duration.ofHours(1).toMillis();
+        consumer.addRecord(createRecord(PARTITION_ZERO, 0L, 1, later));
+        consumer.addRecord(createRecord(PARTITION_ZERO, 1L, 1, 0L));
+        consumer.addRecord(createRecord(PARTITION_ONE, 0L, 1, 0L));
+
+        List<Message> messages = kafkaConsumerService.consume(Duration.ZERO);
+
+        assertEquals(1, messages.size());
+        assertEquals(1, messages.get(0).getPartition());
+        assertEquals(Set.of(PARTITION_ZERO), consumer.paused());
+        assertEquals(0L, consumer.position(PARTITION_ZERO));
+    }
+
+    @Test
+    @DisplayName("Test a message without retry headers is treated as due")
+    void testMessageWithoutHeadersIsDue() {
+        consumer.addRecord(new ConsumerRecord<>(RETRY_TOPIC, 0, 0L, "key", "value".getBytes()));
+
+        List<Message> messages = kafkaConsumerService.consume(Duration.ZERO);
+
+        assertEquals(1, messages.size());
+        assertEquals(1, ((RetryMessage) messages.get(0)).getAttempt());
+    }
+
+    @Test
+    @DisplayName("Test a partition waiting for its message to be due stays paused when the consumer is resumed")
+    void testPartitionWaitingForMessageStaysPausedOnResume() {
+        long later = System.currentTimeMillis() + Duration.ofHours(1).toMillis();
+        consumer.addRecord(createRecord(PARTITION_ZERO, 0L, 1, later));
+        kafkaConsumerService.consume(Duration.ZERO);
+
+        kafkaConsumerService.pause();
+        assertEquals(Set.of(PARTITION_ZERO, PARTITION_ONE), consumer.paused());
+
+        kafkaConsumerService.resume();
+        assertEquals(Set.of(PARTITION_ZERO), consumer.paused());
+    }
+
+    @Test
+    @DisplayName("Test the lag of each assigned partition is reported from the position fetched up to")
+    void testLagReportedForAssignedPartitions() {
+        consumer.updateEndOffsets(Map.of(PARTITION_ZERO, 5L, PARTITION_ONE, 2L));
+        consumer.addRecord(createRecord(PARTITION_ONE, 0L, 1, 0L));
+        consumer.addRecord(createRecord(PARTITION_ONE, 1L, 1, 0L));
+        kafkaConsumerService.consume(Duration.ZERO);
+
+        assertEquals(Map.of(PARTITION_ZERO, 5L, PARTITION_ONE, 0L), kafkaConsumerService.getLag());
+    }
+
+    private ConsumerRecord<String, byte[]> createRecord(TopicPartition partition, long offset, int attempt,
+            long notBefore) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(RetryMessage.ATTEMPT_HEADER, Integer.toString(attempt).getBytes(StandardCharsets.UTF_8));
+        headers.add(RetryMessage.NOT_BEFORE_HEADER, Long.toString(notBefore).getBytes(StandardCharsets.UTF_8));
+
+        return new ConsumerRecord<>(partition.topic(), partition.partition(), offset, System.currentTimeMillis(),
+                TimestampType.CREATE_TIME, 0, 0, "key", "value".getBytes(), headers, Optional.empty());
+    }
+}
@@ -0,0 +1,167 @@
+package uk.gov.companieshouse.document.generator.consumer.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.companieshouse.document.generator.consumer.kafka.impl.TransactionalKafkaProducerService;
+import uk.gov.companieshouse.document.generator.consumer.kafka.impl.TransactionalOffsetCommitManager;
+import uk.gov.companieshouse.kafka.message.Message;
+
+public class TransactionalOffsetCommitManagerTest {
+
+    private static final String TOPIC = "render-submitted-data-document";
+    private static final String STATUS_TOPIC = "document-generation-completed";
+    private static final TopicPartition PARTITION_ZERO = new TopicPartition(TOPIC, 0);
+    private static final TopicPartition PARTITION_ONE = new TopicPartition(TOPIC, 1);
+
+    private MockConsumer<String, byte[]> consumer;
+
+    private MockProducer<String, byte[]> producer;
+
+    private TransactionalKafkaProducerService transactionalProducerService;
+
+    private TransactionalOffsetCommitManager offsetCommitManager;
+
+    @BeforeEach
+    void setUp() {
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(List.of(PARTITION_ZERO, PARTITION_ONE));
+        consumer.updateBeginningOffsets(Map.of(PARTITION_ZERO, 0L, PARTITION_ONE, 0L));
+        producer = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+        transactionalProducerService = new TransactionalKafkaProducerService();
+
+        offsetCommitManager = new TransactionalOffsetCommitManager(consumer, Integer.MAX_VALUE, Long.MAX_VALUE,
+                () -> producer, transactionalProducerService);
+        offsetCommitManager.onPartitionsAssigned(List.of(PARTITION_ZERO, PARTITION_ONE));
+    }
+
+    @Test
+    @DisplayName("Test status messages are sent in the same transaction as the offsets of the messages they were sent for")
+    void testCommitsStatusMessagesWithOffsets() {
+        CompletableFuture<RecordMetadata> first = send(PARTITION_ZERO, 10L);
+        CompletableFuture<RecordMetadata> second = send(PARTITION_ONE, 20L);
+        CompletableFuture<RecordMetadata> notProcessed = send(PARTITION_ZERO, 11L);
+
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 10L);
+        offsetCommitManager.markProcessed(PARTITION_ONE, 20L);
+        assertFalse(first.isDone());
+
+        offsetCommitManager.commitSync();
+
+        assertTrue(producer.transactionCommitted());
+        assertEquals(2, producer.history().size());
+        assertEquals(List.of(Map.of(consumer.groupMetadata().groupId(), Map.of(
+                PARTITION_ZERO, new OffsetAndMetadata(11L), PARTITION_ONE, new OffsetAndMetadata(21L)))),
+                producer.consumerGroupOffsetsHistory());
+        assertTrue(first.isDone() && !first.isCompletedExceptionally());
+        assertTrue(second.isDone() && !second.isCompletedExceptionally());
+
+        // Held until the message it was sent for is processed and committed
+        assertFalse(notProcessed.isDone());
+    }
+
+    @Test
+    @DisplayName("Test a failed transaction is aborted and the consumer rewound to the first message in it")
+    void testRewindsAfterFailedTransaction() {
+        CompletableFuture<RecordMetadata> first = send(PARTITION_ZERO, 10L);
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 10L);
+        CompletableFuture<RecordMetadata> second = send(PARTITION_ZERO, 11L);
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 11L);
+
+        producer.commitTransactionException(new KafkaException("Transaction failed"));
+        offsetCommitManager.commitSync();
+
+        assertTrue(producer.transactionAborted());
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        assertEquals(10L, consumer.position(PARTITION_ZERO));
+
+        // Messages consumed before the rewind are ignored until the partition is polled again
+        CompletableFuture<RecordMetadata> stale = send(PARTITION_ZERO, 12L);
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 12L);
+        offsetCommitManager.beforePoll();
+        assertTrue(stale.isCompletedExceptionally());
+
+        producer.commitTransactionException(null);
+        CompletableFuture<RecordMetadata> redelivered = send(PARTITION_ZERO, 10L);
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 10L);
+        offsetCommitManager.commitSync();
+
+        assertTrue(redelivered.isDone() && !redelivered.isCompletedExceptionally());
+        assertEquals(List.of(Map.of(consumer.groupMetadata().groupId(), Map.of(
+                PARTITION_ZERO, new OffsetAndMetadata(11L)))), producer.consumerGroupOffsetsHistory());
+    }
+
+    @Test
+    @DisplayName("Test messages held for a lost partition are dropped")
+    void testDiscardsMessagesForLostPartitions() {
+        CompletableFuture<RecordMetadata> lost = send(PARTITION_ZERO, 10L);
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 10L);
+
+        offsetCommitManager.onPartitionsLost(List.of(PARTITION_ZERO));
+        offsetCommitManager.commitSync();
+
+        assertTrue(lost.isCompletedExceptionally());
+        assertTrue(producer.history().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test a retry message held for a transaction is sent with its attempt and not before time as headers")
+    void testRetryMessageSentWithHeaders() {
+        RetryMessage retryMessage = new RetryMessage();
+        retryMessage.setTopic("render-submitted-data-document-retry");
+        retryMessage.setTimestamp(System.currentTimeMillis());
+        retryMessage.setValue("value 1".getBytes());
+        retryMessage.setAttempt(2);
+        retryMessage.setNotBefore(1760000000000L);
+
+        transactionalProducerService.send(retryMessage, createMessage(TOPIC, 0, 10L));
+        offsetCommitManager.markProcessed(PARTITION_ZERO, 10L);
+        offsetCommitManager.commitSync();
+
+        RetryMessage received = new RetryMessage();
+        received.readHeaders(producer.history().get(0).headers());
+
+        assertEquals(2, received.getAttempt());
+        assertEquals(1760000000000L, received.getNotBefore());
+    }
+
+    @Test
+    @DisplayName("Test a message sent without the consumed message it was produced for fails")
+    void testSendWithoutConsumedMessageFails() {
+        assertTrue(transactionalProducerService.send(createMessage(STATUS_TOPIC, 0, 0L)).isCompletedExceptionally());
+    }
+
+    private CompletableFuture<RecordMetadata> send(TopicPartition consumedPartition, long consumedOffset) {
+        return transactionalProducerService.send(createMessage(STATUS_TOPIC, 0, 0L),
+                createMessage(consumedPartition.topic(), consumedPartition.partition(), consumedOffset));
+    }
+
+    private Message createMessage(String topic, int partition, long offset) {
+        Message message = new Message();
+        message.setTopic(topic);
+        message.setPartition(partition);
+        message.setOffset(offset);
+        message.setValue("value".getBytes());
+
+        return message;
+    }
+}
@@ -0,0 +1,156 @@
+package uk.gov.companieshouse.document.generator.consumer.limiter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private AtomicLong clock;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new AdaptiveConcurrencyLimiter(2, 1, 4, 0.5, 2.0, 0, meterRegistry, clock::get);
+    }
+
+    @Test
+    @DisplayName("Raise the limit when requests succeed with the limit in use")
+    void raiseLimitWhenRequestsSucceed() throws InterruptedException {
+        completeRound(LATENCY_NANOS);
+
+        // 2 + 1/2 + 1/2.5
+        assertEquals(2.9, limiter.getLimit(), 0.001);
+        assertEquals(2.9, meterRegistry.get(AdaptiveConcurrencyLimiter.LIMIT_METRIC).gauge().value(), 0.001);
+    }
+
+    @Test
+    @DisplayName("Don't raise the limit above the maximum")
+    void limitCappedAtMaximum() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            completeRound(LATENCY_NANOS);
+        }
+
+        assertEquals(4.0, limiter.getLimit(), 0.001);
+    }
+
+    @Test
+    @DisplayName("Don't raise the limit when it isn't in use")
+    void limitUnchangedWhenNotInUse() throws InterruptedException {
+        limiter = new AdaptiveConcurrencyLimiter(4, 1, 8, 0.5, 2.0, 0, new SimpleMeterRegistry(), clock::get);
+
+        limiter.acquire().orElseThrow().onSuccess();
+
+        assertEquals(4.0, limiter.getLimit(), 0.001);
+    }
+
+    @Test
+    @DisplayName("Cut the limit when a request is dropped, but not below the minimum")
+    void cutLimitWhenRequestDropped() throws InterruptedException {
+        limiter.acquire().orElseThrow().onDropped();
+        assertEquals(1.0, limiter.getLimit(), 0.001);
+
+        limiter.acquire().orElseThrow().onDropped();
+        assertEquals(1.0, limiter.getLimit(), 0.001);
+    }
+
+    @Test
+    @DisplayName("Cut the limit when a request is much slower than average")
+    void cutLimitWhenRequestSlow() throws InterruptedException {
+        completeRound(LATENCY_NANOS);
+        assertEquals(2.9, limiter.getLimit(), 0.001);
+
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire().orElseThrow();
+        clock.addAndGet(LATENCY_NANOS * 3);
+        permit.onSuccess();
+
+        assertEquals(1.45, limiter.getLimit(), 0.001);
+    }
+
+    @Test
+    @DisplayName("Leave the limit unchanged when a request is ignored")
+    void limitUnchangedWhenRequestIgnored() throws InterruptedException {
+        limiter.acquire().orElseThrow().onIgnore();
+
+        assertEquals(2.0, limiter.getLimit(), 0.001);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    @DisplayName("Give up waiting when the limit is reached and count the rejection")
+    void rejectWhenLimitReached() throws InterruptedException {
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire().orElseThrow();
+        limiter.acquire().orElseThrow();
+
+        assertEquals(Optional.empty(), limiter.acquire());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1.0, meterRegistry.get(AdaptiveConcurrencyLimiter.REJECTED_METRIC).counter().count());
+        assertEquals(3, meterRegistry.get(AdaptiveConcurrencyLimiter.QUEUE_METRIC).timer().count());
+
+        first.onSuccess();
+        assertTrue(limiter.acquire().isPresent());
+    }
+
+    @Test
+    @DisplayName("Wait for a permit to be released when the limit is reached")
+    void waitForPermitWhenLimitReached() throws Exception {
+        limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 2.0, 10_000, new SimpleMeterRegistry());
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire().orElseThrow();
+
+        List<Optional<AdaptiveConcurrencyLimiter.Permit>> acquired = new ArrayList<>();
+        Thread waiting = Thread.ofVirtual().start(() -> {
+            try {
+                acquired.add(limiter.acquire());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        first.onSuccess();
+        waiting.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertEquals(1, acquired.size());
+        assertTrue(acquired.get(0).isPresent());
+    }
+
+    @Test
+    @DisplayName("Reject limits that are out of order")
+    void rejectInvalidLimits() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new AdaptiveConcurrencyLimiter(10, 1, 5, 0.5, 2.0, 0, registry));
+        assertThrows(IllegalArgumentException.class,
+                () -> new AdaptiveConcurrencyLimiter(1, 1, 5, 1.0, 2.0, 0, registry));
+    }
+
+    /**
+     * Fill the limit and complete every request with the given latency
+     */
+    private void completeRound(long latencyNanos) throws InterruptedException {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < (int) limiter.getLimit(); i++) {
+            permits.add(limiter.acquire().orElseThrow());
+        }
+
+        clock.addAndGet(latencyNanos);
+        permits.forEach(AdaptiveConcurrencyLimiter.Permit::onSuccess);
+    }
+}
@@ -0,0 +1,62 @@
+package uk.gov.companieshouse.document.generator.consumer.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LogGuardTest {
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(LogGuard.isInfoEnabled());
+    }
+
+    @AfterEach
+    void tearDown() {
+        LogGuard.setMessageSampleRate(1.0);
+    }
+
+    @Test
+    @DisplayName("Test every request is logged by default and none once the sample rate is 0")
+    void testSampleRateBounds() {
+        assertTrue(LogGuard.isInfoSampled("request-1"));
+        assertTrue(LogGuard.isInfoSampled(null));
+
+        LogGuard.setMessageSampleRate(0.0);
+        assertFalse(LogGuard.isInfoSampled("request-1"));
+        assertFalse(LogGuard.isInfoSampled(null));
+    }
+
+    @Test
+    @DisplayName("Test the sampled fraction of requests follows the sample rate, and each request is always sampled the same way")
+    void testSampledFraction() {
+        LogGuard.setMessageSampleRate(0.25);
+
+        int sampled = 0;
+        for (int i = 0; i < 10000; i++) {
+            String requestId = "request-" + i;
+            boolean isSampled = LogGuard.isInfoSampled(requestId);
+            assertEquals(isSampled, LogGuard.isInfoSampled(requestId));
+            if (isSampled) {
+                sampled++;
+            }
+        }
+
+        assertTrue(sampled > 2250 && sampled < 2750, "Sampled " + sampled + " of 10000 requests");
+    }
+
+    @Test
+    @DisplayName("Test a sample rate outside 0 to 1 is rejected")
+    void testInvalidSampleRate() {
+        assertThrows(IllegalArgumentException.class, () -> LogGuard.setMessageSampleRate(1.5));
+        assertThrows(IllegalArgumentException.class, () -> LogGuard.setMessageSampleRate(-0.1));
+        assertThrows(IllegalArgumentException.class, () -> LogGuard.setMessageSampleRate(Double.NaN));
+    }
+}
@@ -0,0 +1,32 @@
+package uk.gov.companieshouse.document.generator.consumer.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Map;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class BacklogEndpointTest {
+
+    private static final String TOPIC = "render-submitted-data-document";
+
+    private static final String RETRY_TOPIC = "render-submitted-data-document-retry";
+
+    @Test
+    @DisplayName("Test the backlog reports the total lag of each topic alongside the lag of each partition")
+    void testBacklogTotalsLagByTopic() {
+        ConsumerProgress consumerProgress = new ConsumerProgress(new SimpleMeterRegistry());
+        consumerProgress.updateLag(new Object(), Map.of(new TopicPartition(TOPIC, 0), 400L,
+                new TopicPartition(TOPIC, 1), 800L));
+        consumerProgress.updateLag(new Object(), Map.of(new TopicPartition(RETRY_TOPIC, 0), 3L));
+        consumerProgress.messageStarted();
+
+        BacklogEndpoint.Backlog backlog = new BacklogEndpoint(consumerProgress).backlog();
+
+        assertEquals(Map.of(TOPIC, 1200L, RETRY_TOPIC, 3L), backlog.lag());
+        assertEquals(Map.of(TOPIC, Map.of(0, 400L, 1, 800L), RETRY_TOPIC, Map.of(0, 3L)), backlog.partitionLag());
+        assertEquals(1, backlog.inFlight());
+    }
+}
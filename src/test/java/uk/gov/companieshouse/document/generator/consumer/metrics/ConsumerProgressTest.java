@@ -0,0 +1,104 @@
+package uk.gov.companieshouse.document.generator.consumer.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ConsumerProgressTest {
+
+    private static final String TOPIC = "render-submitted-data-document";
+
+    private static final TopicPartition PARTITION_ZERO = new TopicPartition(TOPIC, 0);
+
+    private static final TopicPartition PARTITION_ONE = new TopicPartition(TOPIC, 1);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final Object firstConsumer = new Object();
+
+    private final Object secondConsumer = new Object();
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ConsumerProgress consumerProgress;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        consumerProgress = new ConsumerProgress(meterRegistry, clock::get);
+    }
+
+    @Test
+    @DisplayName("Test the lag of each partition is published and follows the partition between consumers")
+    void testLagFollowsAssignment() {
+        consumerProgress.updateLag(firstConsumer, Map.of(PARTITION_ZERO, 10L, PARTITION_ONE, 20L));
+
+        assertEquals(Map.of(TOPIC, Map.of(0, 10L, 1, 20L)), consumerProgress.getLag());
+        assertEquals(20.0, lagGauge(PARTITION_ONE));
+
+        // Partition one moves to the second consumer in a rebalance
+        consumerProgress.updateLag(secondConsumer, Map.of(PARTITION_ONE, 15L));
+        consumerProgress.updateLag(firstConsumer, Map.of(PARTITION_ZERO, 5L));
+
+        assertEquals(Map.of(TOPIC, Map.of(0, 5L, 1, 15L)), consumerProgress.getLag());
+        assertEquals(15.0, lagGauge(PARTITION_ONE));
+
+        consumerProgress.removeConsumer(secondConsumer);
+
+        assertEquals(Map.of(TOPIC, Map.of(0, 5L)), consumerProgress.getLag());
+        assertEquals(1, meterRegistry.find(ConsumerProgress.LAG_METRIC).gauges().size());
+    }
+
+    @Test
+    @DisplayName("Test the rate is averaged over the messages processed between updates")
+    void testRateAveragedOverUpdates() {
+        process(60);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        consumerProgress.updateRate();
+        assertEquals(0.0, consumerProgress.getRate());
+
+        // A steady 120 messages a second for five minutes
+        for (int second = 0; second < 300; second++) {
+            clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            consumerProgress.updateRate();
+            process(120);
+        }
+
+        double rate = consumerProgress.getRate();
+        assertTrue(rate > 115 && rate < 121, "Rate was " + rate);
+        assertEquals(rate, meterRegistry.get(ConsumerProgress.RATE_METRIC).gauge().value());
+    }
+
+    @Test
+    @DisplayName("Test messages are counted as in flight until they finish")
+    void testInFlight() {
+        consumerProgress.messageStarted();
+        consumerProgress.messageStarted();
+        consumerProgress.messageFinished();
+
+        assertEquals(1, consumerProgress.getInFlight());
+        assertEquals(1.0, meterRegistry.get(ConsumerProgress.IN_FLIGHT_METRIC).gauge().value());
+    }
+
+    private void process(int messages) {
+        for (int i = 0; i < messages; i++) {
+            consumerProgress.messageStarted();
+            consumerProgress.messageFinished();
+        }
+    }
+
+    private double lagGauge(TopicPartition partition) {
+        return meterRegistry.get(ConsumerProgress.LAG_METRIC)
+                .tag("topic", partition.topic())
+                .tag("partition", String.valueOf(partition.partition()))
+                .gauge().value();
+    }
+}
@@ -0,0 +1,215 @@
+package uk.gov.companieshouse.document.generator.consumer.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.InFlightTracker;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.ProcessingLanes;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.ProcessingLanes.Lane;
+import uk.gov.companieshouse.kafka.message.Message;
+
+public class InFlightTrackerTest {
+
+    private static final String TOPIC = "render-submitted-data-document";
+
+    private Semaphore processPermits;
+
+    private InFlightTracker inFlightTracker;
+
+    private Lane lane;
+
+    private Lane slowLane;
+
+    @BeforeEach
+    void setUp() {
+        processPermits = new Semaphore(3);
+        inFlightTracker = new InFlightTracker(processPermits, 2);
+        ProcessingLanes lanes = new ProcessingLanes(Map.of("slowDocumentType", 10), 10, new SimpleMeterRegistry());
+        lane = lanes.getDefaultLane();
+        slowLane = lanes.laneFor("slowDocumentType");
+    }
+
+    @Test
+    @DisplayName("Test offset is not committable until every earlier message in the partition has completed")
+    void testCommittableWaitsForEarlierMessages() throws Exception {
+        Message first = createMessage(0, 10L);
+        Message second = createMessage(0, 11L);
+
+        assertTrue(registerAndBegin(first));
+        assertTrue(registerAndBegin(second));
+
+        inFlightTracker.complete(second, lane);
+        assertTrue(inFlightTracker.drainCommittable().isEmpty());
+
+        inFlightTracker.complete(first, lane);
+        List<Message> committable = inFlightTracker.drainCommittable();
+
+        assertEquals(1, committable.size());
+        assertSame(second, committable.get(0));
+        assertEquals(0, inFlightTracker.getInFlight());
+    }
+
+    @Test
+    @DisplayName("Test offset is not committable past an earlier message still waiting to be dispatched")
+    void testCommittableWaitsForUndispatchedMessages() throws Exception {
+        Message waiting = createMessage(0, 10L);
+        Message dispatched = createMessage(0, 11L);
+
+        inFlightTracker.register(waiting);
+        assertTrue(registerAndBegin(dispatched));
+        inFlightTracker.complete(dispatched, lane);
+
+        assertTrue(inFlightTracker.drainCommittable().isEmpty());
+
+        assertTrue(inFlightTracker.begin(waiting, lane, 0, TimeUnit.MILLISECONDS));
+        inFlightTracker.complete(waiting, lane);
+
+        assertEquals(List.of(dispatched), inFlightTracker.drainCommittable());
+    }
+
+    @Test
+    @DisplayName("Test partitions are committed independently")
+    void testPartitionsCommittedIndependently() throws Exception {
+        Message partitionZero = createMessage(0, 10L);
+        Message partitionOne = createMessage(1, 20L);
+
+        assertTrue(registerAndBegin(partitionZero));
+        assertTrue(registerAndBegin(partitionOne));
+
+        inFlightTracker.complete(partitionOne, lane);
+        List<Message> committable = inFlightTracker.drainCommittable();
+
+        assertEquals(1, committable.size());
+        assertSame(partitionOne, committable.get(0));
+        assertEquals(1, inFlightTracker.getInFlight());
+    }
+
+    @Test
+    @DisplayName("Test per partition limit is applied")
+    void testPerPartitionLimit() throws Exception {
+        assertTrue(registerAndBegin(createMessage(0, 1L)));
+        assertTrue(registerAndBegin(createMessage(0, 2L)));
+        assertFalse(registerAndBegin(createMessage(0, 3L)));
+
+        assertTrue(registerAndBegin(createMessage(1, 1L)));
+        assertEquals(3, inFlightTracker.getInFlight());
+    }
+
+    @Test
+    @DisplayName("Test per partition limit is applied separately in each lane")
+    void testPerPartitionLimitPerLane() throws Exception {
+        Message slow = createMessage(0, 1L);
+        assertTrue(registerAndBegin(slow, slowLane));
+        assertTrue(registerAndBegin(createMessage(0, 2L), slowLane));
+        assertFalse(registerAndBegin(createMessage(0, 3L), slowLane));
+
+        assertTrue(registerAndBegin(createMessage(0, 4L)));
+        assertEquals(2, inFlightTracker.getInFlight(slowLane));
+        assertEquals(1, inFlightTracker.getInFlight(lane));
+
+        inFlightTracker.complete(slow, slowLane);
+        assertEquals(1, inFlightTracker.getInFlight(slowLane));
+    }
+
+    @Test
+    @DisplayName("Test process wide limit is applied and released on completion")
+    void testProcessLimit() throws Exception {
+        Message first = createMessage(0, 1L);
+
+        assertTrue(registerAndBegin(first));
+        assertTrue(registerAndBegin(createMessage(1, 1L)));
+        assertTrue(registerAndBegin(createMessage(2, 1L)));
+        assertFalse(registerAndBegin(createMessage(3, 1L)));
+
+        inFlightTracker.complete(first, lane);
+
+        assertTrue(registerAndBegin(createMessage(3, 1L)));
+        assertEquals(0, processPermits.availablePermits());
+    }
+
+    @Test
+    @DisplayName("Test waiting for idle returns once every message in flight has completed, or the timeout passes")
+    void testAwaitIdle() throws Exception {
+        Message first = createMessage(0, 1L);
+        Message second = createMessage(1, 1L);
+        assertTrue(registerAndBegin(first));
+        assertTrue(registerAndBegin(second));
+
+        inFlightTracker.complete(first, lane);
+        assertFalse(inFlightTracker.awaitIdle(10, TimeUnit.MILLISECONDS));
+
+        CompletableFuture.runAsync(() -> inFlightTracker.complete(second, lane));
+        assertTrue(inFlightTracker.awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals(0, inFlightTracker.getInFlight());
+    }
+
+    @Test
+    @DisplayName("Test waiting for a completion returns once a message completes after the count was read")
+    void testAwaitCompletion() throws Exception {
+        Message first = createMessage(0, 1L);
+        assertTrue(registerAndBegin(first));
+
+        long seen = inFlightTracker.getCompletions();
+        assertFalse(inFlightTracker.awaitCompletion(seen, 10, TimeUnit.MILLISECONDS));
+
+        CompletableFuture.runAsync(() -> inFlightTracker.complete(first, lane));
+        assertTrue(inFlightTracker.awaitCompletion(seen, 5, TimeUnit.SECONDS));
+        assertEquals(seen + 1, inFlightTracker.getCompletions());
+    }
+
+    @Test
+    @DisplayName("Test a removed partition's messages are never committable, and it starts afresh when reassigned")
+    void testRemovedPartition() throws Exception {
+        Message removed = createMessage(0, 10L);
+        assertTrue(registerAndBegin(removed));
+        assertTrue(registerAndBegin(createMessage(0, 11L)));
+
+        inFlightTracker.remove(List.of(new TopicPartition(TOPIC, 0)));
+
+        // Reassigned, the partition's per partition limit applies afresh
+        Message reassigned = createMessage(0, 11L);
+        assertTrue(registerAndBegin(reassigned));
+
+        inFlightTracker.complete(removed, lane);
+        assertTrue(inFlightTracker.drainCommittable().isEmpty());
+        assertEquals(1, processPermits.availablePermits());
+        assertEquals(2, inFlightTracker.getInFlight());
+
+        inFlightTracker.complete(reassigned, lane);
+        assertEquals(List.of(reassigned), inFlightTracker.drainCommittable());
+        assertEquals(1, inFlightTracker.getInFlight());
+    }
+
+    private boolean registerAndBegin(Message message) throws InterruptedException {
+        return registerAndBegin(message, lane);
+    }
+
+    private boolean registerAndBegin(Message message, Lane lane) throws InterruptedException {
+        inFlightTracker.register(message);
+        return inFlightTracker.begin(message, lane, 0, TimeUnit.MILLISECONDS);
+    }
+
+    private Message createMessage(int partition, long offset) {
+        Message message = new Message();
+        message.setTopic(TOPIC);
+        message.setPartition(partition);
+        message.setOffset(offset);
+        message.setValue("value".getBytes());
+
+        return message;
+    }
+}
@@ -0,0 +1,74 @@
+package uk.gov.companieshouse.document.generator.consumer.processor;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaConsumerService;
+
+@ExtendWith(MockitoExtension.class)
+public class MessageProcessorRunnerGroupTest {
+
+    @Mock
+    private MessageProcessor mockMessageProcessor;
+
+    @Mock
+    private KafkaConsumerService mockKafkaConsumerService;
+
+    private MessageProcessorRunnerGroup messageProcessorRunnerGroup;
+
+    @BeforeEach
+    void setUp() {
+        messageProcessorRunnerGroup = new MessageProcessorRunnerGroup(
+                List.of(new MessageProcessorRunner(mockMessageProcessor, mockKafkaConsumerService)));
+    }
+
+    @Test
+    @DisplayName("Test shutdown stops polling, drains the messages in flight and then closes the consumer")
+    void testShutdownDrainsThenClosesConsumer() throws Exception {
+        // Stands in for a poll that returns no messages
+        lenient().doAnswer(invocation -> {
+            Thread.sleep(5);
+            return null;
+        }).when(mockMessageProcessor).processKafkaMessage();
+        when(mockMessageProcessor.drain(any(Duration.class))).thenReturn(true);
+
+        messageProcessorRunnerGroup.start(new SimpleAsyncTaskExecutor());
+
+        assertTrue(messageProcessorRunnerGroup.shutdown(Duration.ofSeconds(5)));
+        assertFalse(messageProcessorRunnerGroup.isRunning());
+
+        verify(mockMessageProcessor).stop();
+        verify(mockKafkaConsumerService).wakeup();
+
+        InOrder inOrder = inOrder(mockMessageProcessor, mockKafkaConsumerService);
+        inOrder.verify(mockMessageProcessor).drain(any(Duration.class));
+        inOrder.verify(mockKafkaConsumerService).closeConsumer();
+    }
+
+    @Test
+    @DisplayName("Test shutdown returns straight away when the group was never started")
+    void testShutdownBeforeStart() throws Exception {
+        assertTrue(messageProcessorRunnerGroup.shutdown(Duration.ofSeconds(5)));
+
+        verify(mockMessageProcessor, never()).stop();
+        verify(mockKafkaConsumerService, never()).closeConsumer();
+    }
+}
@@ -1,38 +1,65 @@
 package uk.gov.companieshouse.document.generator.consumer.processor;
 
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
 import uk.gov.companieshouse.document.generation.request.RenderSubmittedDataDocument;
+import uk.gov.companieshouse.document.generator.consumer.cache.CompletedRequestCache;
 import uk.gov.companieshouse.document.generator.consumer.document.models.GenerateDocumentResponse;
 import uk.gov.companieshouse.document.generator.consumer.document.models.Links;
 import uk.gov.companieshouse.document.generator.consumer.document.service.GenerateDocument;
 import uk.gov.companieshouse.document.generator.consumer.document.service.MessageService;
+import uk.gov.companieshouse.document.generator.consumer.exception.GenerateDocumentException;
+import uk.gov.companieshouse.document.generator.consumer.kafka.AvroCodec;
+import uk.gov.companieshouse.document.generator.consumer.kafka.DeadLetterMessage;
 import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaConsumerService;
 import uk.gov.companieshouse.document.generator.consumer.kafka.KafkaProducerService;
+import uk.gov.companieshouse.document.generator.consumer.kafka.RetryMessage;
+import uk.gov.companieshouse.document.generator.consumer.metrics.ConsumerProgress;
+import uk.gov.companieshouse.document.generator.consumer.metrics.DocumentGeneratorMetrics;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.AdaptivePollTimeout;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.Backpressure;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.InFlightTracker;
 import uk.gov.companieshouse.document.generator.consumer.processor.impl.MessageProcessorImpl;
-import uk.gov.companieshouse.kafka.deserialization.AvroDeserializer;
-import uk.gov.companieshouse.kafka.deserialization.DeserializerFactory;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.ProcessingLanes;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.RetryPolicy;
 import uk.gov.companieshouse.kafka.exceptions.DeserializationException;
 import uk.gov.companieshouse.kafka.message.Message;
 
@@ -40,7 +67,6 @@ import uk.gov.companieshouse.kafka.message.Message;
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class MessageProcessorTest {
 
-    @InjectMocks
     private MessageProcessorImpl messageProcessor;
 
     @Mock
@@ -50,7 +76,7 @@ public class MessageProcessorTest {
     private KafkaProducerService mockKafkaProducerService;
 
     @Mock
-    private AvroDeserializer<RenderSubmittedDataDocument> mockAvroDeserializer;
+    private AvroCodec<RenderSubmittedDataDocument> mockRequestCodec;
 
     @Mock
     private GenerateDocument mockGenerateDocument;
@@ -61,20 +87,36 @@ public class MessageProcessorTest {
     @Mock
     private RenderSubmittedDataDocument mockRenderSubmittedDataDocument;
 
-    @Mock
-    private DeserializerFactory deserializerFactory;
-
     private List<Message> messages;
 
     private Message message;
 
+    private SimpleMeterRegistry meterRegistry;
+
+    private DocumentGeneratorMetrics metrics;
+
+    private ConsumerProgress consumerProgress;
+
+    private CompletedRequestCache completedRequestCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new DocumentGeneratorMetrics(meterRegistry);
+        consumerProgress = new ConsumerProgress(meterRegistry);
+        completedRequestCache = new CompletedRequestCache(100, Duration.ofHours(1), null, meterRegistry);
+        messageProcessor = new MessageProcessorImpl(mockMessageService, mockGenerateDocument,
+                mockKafkaConsumerService, mockKafkaProducerService, mockRequestCodec, createPollTimeout(), metrics,
+                consumerProgress, RetryPolicy.noRetries(), completedRequestCache);
+    }
+
     @Test
     @DisplayName("Test started and completed message generated on valid request")
     public void testsMessageProcessedCreatesStartedAndCompletedMessage() throws Exception {
 
-        when(mockKafkaConsumerService.consume()).thenReturn(createTestMessageList());
-        when(deserializerFactory.getSpecificRecordDeserializer(RenderSubmittedDataDocument.class)).thenReturn(mockAvroDeserializer);
-        when(mockAvroDeserializer.fromBinary(any(Message.class), eq(RenderSubmittedDataDocument.getClassSchema()))).thenReturn(createRenderSubmittedDataDocument());
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(createTestMessageList());
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(createRenderSubmittedDataDocument());
         when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
                 .thenReturn(createResponse());
 
@@ -85,20 +127,594 @@ public class MessageProcessorTest {
                 createRenderSubmittedDataDocument(), any(GenerateDocumentResponse.class)));
 
         verify(mockGenerateDocument).requestGenerateDocument(createRenderSubmittedDataDocument());
+
+        assertEquals(1, meterRegistry.get(DocumentGeneratorMetrics.STAGE_METRIC).tag("stage", "api_call")
+                .tag("document_type", "testDocumentType").tag("outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get(DocumentGeneratorMetrics.STAGE_METRIC).tag("stage", "started_send")
+                .timer().count());
+        assertEquals(1.0, meterRegistry.get(DocumentGeneratorMetrics.MESSAGES_METRIC)
+                .tag("document_type", "testDocumentType").tag("outcome", "completed").counter().count());
+        assertEquals(1, meterRegistry.get(DocumentGeneratorMetrics.COMMIT_METRIC).timer().count());
     }
 
     @Test
-    @DisplayName("Test failed message generated on error")
-    public void testsMessageProcessedCreatesFailedMessageOnError() throws Exception {
+    @DisplayName("Test message that can't be deserialised is skipped without a failed message when there is no dead letter topic")
+    public void testsMessageNotDeserialisedIsSkippedWithoutDeadLetterTopic() throws Exception {
 
-        when(mockKafkaConsumerService.consume()).thenReturn(createTestMessageList());
-        when(deserializerFactory.getSpecificRecordDeserializer(RenderSubmittedDataDocument.class)).thenReturn(mockAvroDeserializer);
-        when(mockAvroDeserializer.fromBinary(any(Message.class), eq(RenderSubmittedDataDocument.getClassSchema()))).thenThrow(new DeserializationException("error", new Exception()));
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(createTestMessageList());
+        when(mockRequestCodec.decode(any())).thenThrow(new DeserializationException("error", new Exception()));
 
         messageProcessor.processKafkaMessage();
 
-        assertEquals(any(Message.class), mockMessageService.createDocumentGenerationFailed(
-                createRenderSubmittedDataDocument(), any(GenerateDocumentResponse.class)));
+        verify(mockMessageService, never()).createDocumentGenerationFailed(any(), any());
+        verify(mockKafkaProducerService, never()).send(any(), any());
+        verify(mockKafkaConsumerService).commit(message);
+
+        assertEquals(1, meterRegistry.get(DocumentGeneratorMetrics.STAGE_METRIC).tag("stage", "deserialise")
+                .tag("document_type", "unknown").tag("outcome", "failure").timer().count());
+        assertEquals(1.0, meterRegistry.get(DocumentGeneratorMetrics.MESSAGES_METRIC)
+                .tag("document_type", "unknown").tag("outcome", "failed").counter().count());
+    }
+
+    @Test
+    @DisplayName("Test message that can't be deserialised is sent to the dead letter topic with where it came from")
+    public void testsMessageNotDeserialisedIsSentToDeadLetterTopic() throws Exception {
+
+        messageProcessor = new MessageProcessorImpl(mockMessageService, mockGenerateDocument,
+                mockKafkaConsumerService, mockKafkaProducerService, mockRequestCodec, createPollTimeout(), metrics,
+                consumerProgress, createRetryPolicy(null, "render-submitted-data-document-dlt"),
+                completedRequestCache);
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(createTestMessageList());
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenThrow(new DeserializationException("error", new Exception()));
+
+        messageProcessor.processKafkaMessage();
+
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        verify(mockKafkaProducerService).send(sent.capture(), eq(message));
+        DeadLetterMessage deadLetterMessage = assertInstanceOf(DeadLetterMessage.class, sent.getValue());
+        assertEquals("render-submitted-data-document-dlt", deadLetterMessage.getTopic());
+        assertEquals(message.getKey(), deadLetterMessage.getKey());
+        assertArrayEquals(message.getValue(), deadLetterMessage.getValue());
+
+        RecordHeaders headers = new RecordHeaders();
+        deadLetterMessage.writeHeaders(headers);
+        assertEquals("document-generation-started", header(headers, DeadLetterMessage.ORIGINAL_TOPIC_HEADER));
+        assertEquals("123", header(headers, DeadLetterMessage.ORIGINAL_PARTITION_HEADER));
+        assertEquals("100", header(headers, DeadLetterMessage.ORIGINAL_OFFSET_HEADER));
+        assertEquals(DeserializationException.class.getName(), header(headers, DeadLetterMessage.ERROR_CLASS_HEADER));
+
+        verify(mockMessageService, never()).createDocumentGenerationFailed(any(), any());
+        verify(mockKafkaConsumerService).commit(message);
+        assertEquals(1.0, meterRegistry.get(DocumentGeneratorMetrics.MESSAGES_METRIC)
+                .tag("document_type", "unknown").tag("outcome", "dead_lettered").counter().count());
+    }
+
+    @Test
+    @DisplayName("Test the offset commit is timed for each message processed on the polling thread")
+    public void testsCommitTimedWhenProcessedOnPollingThread() throws Exception {
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(createTestMessageList());
+        when(mockRequestCodec.decode(any())).thenThrow(new DeserializationException("error", new Exception()));
+
+        messageProcessor.processKafkaMessage();
+
+        verify(mockKafkaConsumerService).commit(message);
+        assertEquals(1, meterRegistry.get(DocumentGeneratorMetrics.COMMIT_METRIC).timer().count());
+    }
+
+    @Test
+    @DisplayName("Test message processed asynchronously is committed once complete")
+    public void testsMessageProcessedAsynchronouslyIsCommitted() throws Exception {
+
+        MessageProcessorImpl asyncMessageProcessor = new MessageProcessorImpl(mockMessageService, mockGenerateDocument,
+                mockKafkaConsumerService, mockKafkaProducerService, mockRequestCodec, createPollTimeout(), metrics,
+                consumerProgress, RetryPolicy.noRetries(), completedRequestCache, Runnable::run,
+                new InFlightTracker(new Semaphore(10), 1), new Backpressure(500, 250), createLanes(Map.of()));
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(createTestMessageList());
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(createRenderSubmittedDataDocument());
+        when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
+                .thenReturn(createResponse());
+
+        asyncMessageProcessor.processKafkaMessage();
+
+        verify(mockGenerateDocument).requestGenerateDocument(createRenderSubmittedDataDocument());
+        verify(mockKafkaConsumerService).commit(message);
+    }
+
+    @Test
+    @DisplayName("Test the rest of the consumed messages are neither processed nor committed once stopped")
+    public void testsRemainingMessagesLeftOnceStopped() throws Exception {
+
+        List<Message> consumed = createTestMessageList();
+        Message remaining = new Message();
+        remaining.setTopic(message.getTopic());
+        remaining.setPartition(message.getPartition());
+        remaining.setOffset(message.getOffset() + 1);
+        remaining.setValue("value 2".getBytes());
+        consumed.add(remaining);
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(consumed);
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(createRenderSubmittedDataDocument());
+        when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
+                .thenAnswer(invocation -> {
+                    messageProcessor.stop();
+                    return createResponse();
+                });
+
+        messageProcessor.processKafkaMessage();
+
+        verify(mockGenerateDocument, times(1)).requestGenerateDocument(any(RenderSubmittedDataDocument.class));
+        verify(mockKafkaConsumerService).commit(message);
+        verify(mockKafkaConsumerService, never()).commit(remaining);
+    }
+
+    @Test
+    @DisplayName("Test draining waits for messages processed asynchronously and commits them once complete")
+    public void testsDrainWaitsForMessagesInFlight() throws Exception {
+
+        List<Runnable> dispatched = new ArrayList<>();
+        Executor deferredExecutor = dispatched::add;
+        MessageProcessorImpl asyncMessageProcessor = new MessageProcessorImpl(mockMessageService, mockGenerateDocument,
+                mockKafkaConsumerService, mockKafkaProducerService, mockRequestCodec, createPollTimeout(), metrics,
+                consumerProgress, RetryPolicy.noRetries(), completedRequestCache, deferredExecutor,
+                new InFlightTracker(new Semaphore(10), 1), new Backpressure(500, 250), createLanes(Map.of()));
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(createTestMessageList());
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(createRenderSubmittedDataDocument());
+        when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
+                .thenReturn(createResponse());
+
+        asyncMessageProcessor.processKafkaMessage();
+        asyncMessageProcessor.stop();
+
+        assertFalse(asyncMessageProcessor.drain(Duration.ZERO));
+        verify(mockKafkaConsumerService, never()).commit(message);
+
+        CompletableFuture.runAsync(dispatched.get(0));
+        assertTrue(asyncMessageProcessor.drain(Duration.ofSeconds(5)));
+        verify(mockKafkaConsumerService).commit(message);
+    }
+
+    @Test
+    @DisplayName("Test consumer paused once the backlog reaches the high watermark and resumed at the low watermark")
+    public void testsConsumerPausedWhileBacklogged() throws Exception {
+
+        List<Runnable> dispatched = new ArrayList<>();
+        Executor deferredExecutor = dispatched::add;
+        MessageProcessorImpl asyncMessageProcessor = new MessageProcessorImpl(mockMessageService, mockGenerateDocument,
+                mockKafkaConsumerService, mockKafkaProducerService, mockRequestCodec, createPollTimeout(), metrics,
+                consumerProgress, RetryPolicy.noRetries(), completedRequestCache, deferredExecutor,
+                new InFlightTracker(new Semaphore(10), 1), new Backpressure(2, 1), createLanes(Map.of()));
+
+        List<Message> consumed = new ArrayList<>(createTestMessageList());
+        for (long offset = message.getOffset() + 1; offset <= message.getOffset() + 2; offset++) {
+            Message next = new Message();
+            next.setTopic(message.getTopic());
+            next.setPartition(message.getPartition());
+            next.setOffset(offset);
+            next.setValue("value".getBytes());
+            consumed.add(next);
+        }
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(consumed, List.of(), List.of());
+        when(mockKafkaConsumerService.isPaused()).thenReturn(false, true);
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(createRenderSubmittedDataDocument());
+        when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
+                .thenReturn(createResponse());
+
+        // Only one message from the partition is processed at a time, leaving two waiting
+        asyncMessageProcessor.processKafkaMessage();
+        assertEquals(1, dispatched.size());
+        verify(mockKafkaConsumerService).pause();
+
+        dispatched.get(0).run();
+        asyncMessageProcessor.processKafkaMessage();
+        assertEquals(2, dispatched.size());
+        verify(mockKafkaConsumerService).commit(consumed.get(0));
+        verify(mockKafkaConsumerService, never()).resume();
+
+        dispatched.get(1).run();
+        asyncMessageProcessor.processKafkaMessage();
+        assertEquals(3, dispatched.size());
+        verify(mockKafkaConsumerService).resume();
+
+        // The poll doesn't block while messages are waiting to be dispatched
+        verify(mockKafkaConsumerService, times(2)).consume(Duration.ZERO);
+    }
+
+    @Test
+    @DisplayName("Test a revoked partition's completed messages are committed and its queued messages never dispatched")
+    public void testsRevokedPartitionQueuedMessagesDropped() throws Exception {
+
+        List<Runnable> dispatched = new ArrayList<>();
+        Executor deferredExecutor = dispatched::add;
+        MessageProcessorImpl asyncMessageProcessor = new MessageProcessorImpl(mockMessageService, mockGenerateDocument,
+                mockKafkaConsumerService, mockKafkaProducerService, mockRequestCodec, createPollTimeout(), metrics,
+                consumerProgress, RetryPolicy.noRetries(), completedRequestCache, deferredExecutor,
+                new InFlightTracker(new Semaphore(10), 1), new Backpressure(500, 250), createLanes(Map.of()));
+
+        List<Message> consumed = new ArrayList<>(createTestMessageList());
+        for (long offset = message.getOffset() + 1; offset <= message.getOffset() + 2; offset++) {
+            Message next = new Message();
+            next.setTopic(message.getTopic());
+            next.setPartition(message.getPartition());
+            next.setOffset(offset);
+            next.setValue("value".getBytes());
+            consumed.add(next);
+        }
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(consumed, List.of());
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(createRenderSubmittedDataDocument());
+        when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
+                .thenReturn(createResponse());
+
+        // Only one message from the partition is processed at a time, leaving two waiting
+        asyncMessageProcessor.processKafkaMessage();
+        assertEquals(1, dispatched.size());
+
+        // The first completes during the poll in which the partition is revoked
+        dispatched.get(0).run();
+        asyncMessageProcessor.onPartitionsRevoked(List.of(new TopicPartition(message.getTopic(),
+                message.getPartition())));
+        verify(mockKafkaConsumerService).commit(consumed.get(0));
+        assertEquals(0.0, meterRegistry.get(ProcessingLanes.LANE_QUEUED_METRIC).gauge().value());
+
+        asyncMessageProcessor.processKafkaMessage();
+        assertEquals(1, dispatched.size());
+        verify(mockGenerateDocument, times(1)).requestGenerateDocument(any(RenderSubmittedDataDocument.class));
+        verify(mockKafkaConsumerService, never()).commit(consumed.get(1));
+        verify(mockKafkaConsumerService, never()).commit(consumed.get(2));
+    }
+
+    @Test
+    @DisplayName("Test a document type filling its lane doesn't hold up other document types, nor is committed past")
+    public void testsLaneFullDoesNotBlockOtherLanes() throws Exception {
+
+        List<Runnable> dispatched = new ArrayList<>();
+        Executor deferredExecutor = dispatched::add;
+        MessageProcessorImpl asyncMessageProcessor = new MessageProcessorImpl(mockMessageService, mockGenerateDocument,
+                mockKafkaConsumerService, mockKafkaProducerService, mockRequestCodec, createPollTimeout(), metrics,
+                consumerProgress, RetryPolicy.noRetries(), completedRequestCache, deferredExecutor,
+                new InFlightTracker(new Semaphore(10), 10), new Backpressure(500, 250),
+                createLanes(Map.of("slowDocumentType", 1)));
+
+        RenderSubmittedDataDocument slow = createRenderSubmittedDataDocument();
+        slow.setDocumentType("slowDocumentType");
+        List<Message> consumed = new ArrayList<>(createTestMessageList());
+        for (long offset = message.getOffset() + 1; offset <= message.getOffset() + 2; offset++) {
+            Message next = new Message();
+            next.setTopic(message.getTopic());
+            next.setPartition(message.getPartition());
+            next.setOffset(offset);
+            next.setValue(("value " + offset).getBytes());
+            consumed.add(next);
+        }
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(consumed, List.of());
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(slow, slow, createRenderSubmittedDataDocument());
+        when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
+                .thenReturn(createResponse());
+
+        // The second slow message waits for the first, but the message behind it in the default lane doesn't
+        asyncMessageProcessor.processKafkaMessage();
+        assertEquals(2, dispatched.size());
+        assertEquals(1.0, meterRegistry.get(ProcessingLanes.LANE_QUEUED_METRIC).tag("lane", "slowDocumentType")
+                .gauge().value());
+
+        // Its offset isn't committed while the slow messages before it are still waiting or being processed
+        dispatched.get(1).run();
+        asyncMessageProcessor.processKafkaMessage();
+        verify(mockKafkaConsumerService, never()).commit(any());
+
+        dispatched.get(0).run();
+        asyncMessageProcessor.processKafkaMessage();
+        assertEquals(3, dispatched.size());
+        verify(mockKafkaConsumerService).commit(consumed.get(0));
+
+        dispatched.get(2).run();
+        asyncMessageProcessor.processKafkaMessage();
+        verify(mockKafkaConsumerService).commit(consumed.get(2));
+
+        // Each message is only deserialised once
+        verify(mockRequestCodec, times(3)).decode(any());
+        assertEquals(2, meterRegistry.get(ProcessingLanes.LANE_WAIT_METRIC).tag("lane", "slowDocumentType")
+                .timer().count());
+    }
+
+    @Test
+    @DisplayName("Test a document type using all of a partition's capacity in its lane doesn't delay other document"
+            + " types from the partition, nor pause the consumer for them")
+    public void testsSaturatedLaneDoesNotBlockPartitionForOtherLanes() throws Exception {
+
+        List<Runnable> dispatched = new ArrayList<>();
+        Executor deferredExecutor = dispatched::add;
+        MessageProcessorImpl asyncMessageProcessor = new MessageProcessorImpl(mockMessageService, mockGenerateDocument,
+                mockKafkaConsumerService, mockKafkaProducerService, mockRequestCodec, createPollTimeout(), metrics,
+                consumerProgress, RetryPolicy.noRetries(), completedRequestCache, deferredExecutor,
+                new InFlightTracker(new Semaphore(10), 2), new Backpressure(4, 2),
+                createLanes(Map.of("slowDocumentType", 10)));
+
+        RenderSubmittedDataDocument slow = createRenderSubmittedDataDocument();
+        slow.setDocumentType("slowDocumentType");
+        List<Message> consumed = new ArrayList<>(createTestMessageList());
+        for (long offset = message.getOffset() + 1; offset <= message.getOffset() + 3; offset++) {
+            Message next = new Message();
+            next.setTopic(message.getTopic());
+            next.setPartition(message.getPartition());
+            next.setOffset(offset);
+            next.setValue(("value " + offset).getBytes());
+            consumed.add(next);
+        }
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(consumed);
+        when(mockRequestCodec.decode(any())).thenReturn(slow, slow, slow, createRenderSubmittedDataDocument());
+
+        // Two slow messages take the partition's capacity in their lane and the third waits, but the message behind
+        // them in the default lane is dispatched straight away
+        asyncMessageProcessor.processKafkaMessage();
+        assertEquals(3, dispatched.size());
+        assertEquals(1.0, meterRegistry.get(ProcessingLanes.LANE_QUEUED_METRIC).tag("lane", "slowDocumentType")
+                .gauge().value());
+        assertEquals(0.0, meterRegistry.get(ProcessingLanes.LANE_QUEUED_METRIC).tag("lane", "default")
+                .gauge().value());
+        assertEquals(1.0, meterRegistry.get(ProcessingLanes.LANE_IN_FLIGHT_METRIC).tag("lane", "default")
+                .gauge().value());
+
+        // Only the slow lane's own backlog counts towards pausing it, which is below the high watermark
+        verify(mockKafkaConsumerService, never()).pause();
+    }
+
+    @Test
+    @DisplayName("Test the consumer's lag is reported on each poll and the message counted once processed")
+    public void testsProgressReportedOnPoll() throws Exception {
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(createTestMessageList());
+        when(mockKafkaConsumerService.getLag()).thenReturn(Map.of(
+                new TopicPartition(message.getTopic(), message.getPartition()), 42L));
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(createRenderSubmittedDataDocument());
+        when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
+                .thenReturn(createResponse());
+
+        messageProcessor.processKafkaMessage();
+
+        assertEquals(Map.of(message.getTopic(), Map.of(message.getPartition(), 42L)), consumerProgress.getLag());
+        assertEquals(0, consumerProgress.getInFlight());
+
+        messageProcessor.drain(Duration.ZERO);
+
+        assertTrue(consumerProgress.getLag().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test messages fetched and waiting to be dispatched count towards their partition's lag")
+    public void testsPendingMessagesCountedInLag() throws Exception {
+
+        List<Runnable> dispatched = new ArrayList<>();
+        Executor deferredExecutor = dispatched::add;
+        MessageProcessorImpl asyncMessageProcessor = new MessageProcessorImpl(mockMessageService, mockGenerateDocument,
+                mockKafkaConsumerService, mockKafkaProducerService, mockRequestCodec, createPollTimeout(), metrics,
+                consumerProgress, RetryPolicy.noRetries(), completedRequestCache, deferredExecutor,
+                new InFlightTracker(new Semaphore(10), 1), new Backpressure(500, 250), createLanes(Map.of()));
+
+        List<Message> consumed = new ArrayList<>(createTestMessageList());
+        for (long offset = message.getOffset() + 1; offset <= message.getOffset() + 2; offset++) {
+            Message next = new Message();
+            next.setTopic(message.getTopic());
+            next.setPartition(message.getPartition());
+            next.setOffset(offset);
+            next.setValue("value".getBytes());
+            consumed.add(next);
+        }
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(consumed, List.of());
+        when(mockKafkaConsumerService.getLag()).thenReturn(Map.of(
+                new TopicPartition(message.getTopic(), message.getPartition()), 42L));
+
+        // Only one message from the partition is processed at a time, leaving two waiting
+        asyncMessageProcessor.processKafkaMessage();
+        asyncMessageProcessor.processKafkaMessage();
+
+        assertEquals(1, dispatched.size());
+        assertEquals(Map.of(message.getTopic(), Map.of(message.getPartition(), 44L)), consumerProgress.getLag());
+    }
+
+    @Test
+    @DisplayName("Test transient api failure retried in place before the document is completed")
+    public void testsTransientApiFailureRetried() throws Exception {
+
+        messageProcessor = new MessageProcessorImpl(mockMessageService, mockGenerateDocument,
+                mockKafkaConsumerService, mockKafkaProducerService, mockRequestCodec, createPollTimeout(), metrics,
+                consumerProgress, createRetryPolicy(null), completedRequestCache);
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(createTestMessageList());
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(createRenderSubmittedDataDocument());
+        when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
+                .thenThrow(new GenerateDocumentException("unavailable", true))
+                .thenReturn(createResponse());
+
+        messageProcessor.processKafkaMessage();
+
+        verify(mockGenerateDocument, times(2)).requestGenerateDocument(createRenderSubmittedDataDocument());
+        verify(mockMessageService, never()).createDocumentGenerationFailed(any(), any());
+        assertEquals(1, meterRegistry.get(DocumentGeneratorMetrics.STAGE_METRIC).tag("stage", "api_call")
+                .tag("outcome", "failure").timer().count());
+        assertEquals(1.0, meterRegistry.get(DocumentGeneratorMetrics.MESSAGES_METRIC)
+                .tag("outcome", "completed").counter().count());
+    }
+
+    @Test
+    @DisplayName("Test request processed asynchronously sent to the retry topic once retries in place are exhausted")
+    public void testsRequestSentToRetryTopicWhenRetriesExhausted() throws Exception {
+
+        messageProcessor = new MessageProcessorImpl(mockMessageService, mockGenerateDocument,
+                mockKafkaConsumerService, mockKafkaProducerService, mockRequestCodec, createPollTimeout(), metrics,
+                consumerProgress, createRetryPolicy("render-submitted-data-document-retry"), completedRequestCache,
+                Runnable::run, new InFlightTracker(new Semaphore(10), 1), new Backpressure(500, 250),
+                createLanes(Map.of()));
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(createTestMessageList());
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(createRenderSubmittedDataDocument());
+        when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
+                .thenThrow(new GenerateDocumentException("unavailable", true));
+
+        long start = System.currentTimeMillis();
+        messageProcessor.processKafkaMessage();
+
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        verify(mockKafkaProducerService, times(2)).send(sent.capture(), eq(message));
+        RetryMessage retryMessage = assertInstanceOf(RetryMessage.class, sent.getAllValues().get(1));
+
+        assertEquals("render-submitted-data-document-retry", retryMessage.getTopic());
+        assertEquals(1, retryMessage.getAttempt());
+        assertEquals(message.getValue(), retryMessage.getValue());
+        assertTrue(retryMessage.getNotBefore() >= start + 500);
+
+        verify(mockGenerateDocument, times(2)).requestGenerateDocument(createRenderSubmittedDataDocument());
+        verify(mockMessageService, never()).createDocumentGenerationFailed(any(), any());
+        verify(mockKafkaConsumerService).commit(message);
+        assertEquals(1.0, meterRegistry.get(DocumentGeneratorMetrics.MESSAGES_METRIC)
+                .tag("outcome", "retried").counter().count());
+    }
+
+    @Test
+    @DisplayName("Test request processed on the polling thread sent to the retry topic without retrying in place")
+    public void testsRequestSentToRetryTopicWithoutBlockingPartition() throws Exception {
+
+        messageProcessor = new MessageProcessorImpl(mockMessageService, mockGenerateDocument,
+                mockKafkaConsumerService, mockKafkaProducerService, mockRequestCodec, createPollTimeout(), metrics,
+                consumerProgress, createRetryPolicy("render-submitted-data-document-retry"), completedRequestCache);
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(createTestMessageList());
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(createRenderSubmittedDataDocument());
+        when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
+                .thenThrow(new GenerateDocumentException("unavailable", true));
+
+        messageProcessor.processKafkaMessage();
+
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        verify(mockKafkaProducerService, times(2)).send(sent.capture(), eq(message));
+        assertInstanceOf(RetryMessage.class, sent.getAllValues().get(1));
+
+        verify(mockGenerateDocument, times(1)).requestGenerateDocument(createRenderSubmittedDataDocument());
+        verify(mockKafkaConsumerService).commit(message);
+    }
+
+    @Test
+    @DisplayName("Test failed message generated without retrying when the api failure isn't transient")
+    public void testsPermanentApiFailureNotRetried() throws Exception {
+
+        messageProcessor = new MessageProcessorImpl(mockMessageService, mockGenerateDocument,
+                mockKafkaConsumerService, mockKafkaProducerService, mockRequestCodec, createPollTimeout(), metrics,
+                consumerProgress, createRetryPolicy("render-submitted-data-document-retry"), completedRequestCache);
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(createTestMessageList());
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(createRenderSubmittedDataDocument());
+        when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
+                .thenThrow(new GenerateDocumentException("bad request"));
+
+        messageProcessor.processKafkaMessage();
+
+        verify(mockGenerateDocument).requestGenerateDocument(createRenderSubmittedDataDocument());
+        verify(mockMessageService).createDocumentGenerationFailed(createRenderSubmittedDataDocument(), null);
+        assertEquals(1.0, meterRegistry.get(DocumentGeneratorMetrics.MESSAGES_METRIC)
+                .tag("outcome", "failed").counter().count());
+    }
+
+    @Test
+    @DisplayName("Test message from the retry topic doesn't send another started message")
+    public void testsRetriedMessageDoesNotSendStartedMessage() throws Exception {
+
+        RetryMessage retryMessage = new RetryMessage();
+        retryMessage.setTopic("render-submitted-data-document-retry");
+        retryMessage.setValue("value 1".getBytes());
+        retryMessage.setAttempt(2);
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(List.of(retryMessage));
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(createRenderSubmittedDataDocument());
+        when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
+                .thenReturn(createResponse());
+
+        messageProcessor.processKafkaMessage();
+
+        verify(mockMessageService, never()).createDocumentGenerationStarted(any());
+        verify(mockMessageService).createDocumentGenerationCompleted(any(), any());
+        verify(mockKafkaConsumerService).commit(retryMessage);
+    }
+
+    @Test
+    @DisplayName("Test completed message sent again without generating the document when a request is redelivered")
+    public void testsRedeliveredRequestNotGeneratedAgain() throws Exception {
+
+        RenderSubmittedDataDocument renderSubmittedDataDocument = createRenderSubmittedDataDocument();
+        renderSubmittedDataDocument.setId("testId");
+
+        when(mockKafkaConsumerService.consume(any(Duration.class)))
+                .thenReturn(createTestMessageList(), createTestMessageList());
+        when(mockKafkaProducerService.send(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(mockRequestCodec.decode(any())).thenReturn(renderSubmittedDataDocument);
+        when(mockGenerateDocument.requestGenerateDocument(any(RenderSubmittedDataDocument.class)))
+                .thenReturn(createResponse());
+
+        messageProcessor.processKafkaMessage();
+        messageProcessor.processKafkaMessage();
+
+        verify(mockGenerateDocument, times(1)).requestGenerateDocument(renderSubmittedDataDocument);
+        verify(mockMessageService, times(1)).createDocumentGenerationStarted(renderSubmittedDataDocument);
+        verify(mockMessageService, times(2)).createDocumentGenerationCompleted(any(), any());
+        assertEquals(1.0, meterRegistry.get(CompletedRequestCache.LOOKUP_METRIC).tag("result", "hit").counter()
+                .count());
+    }
+
+    @Test
+    @DisplayName("Test empty polls back off to the maximum poll timeout without sleeping")
+    public void testsEmptyPollsBackOffPollTimeout() throws Exception {
+
+        when(mockKafkaConsumerService.consume(any(Duration.class))).thenReturn(new ArrayList<>());
+
+        messageProcessor.processKafkaMessage();
+        messageProcessor.processKafkaMessage();
+        messageProcessor.processKafkaMessage();
+
+        InOrder inOrder = inOrder(mockKafkaConsumerService);
+        inOrder.verify(mockKafkaConsumerService).consume(Duration.ofMillis(100));
+        inOrder.verify(mockKafkaConsumerService).consume(Duration.ofMillis(200));
+        inOrder.verify(mockKafkaConsumerService).consume(Duration.ofMillis(250));
+    }
+
+    private RetryPolicy createRetryPolicy(String retryTopic) {
+        return createRetryPolicy(retryTopic, null);
+    }
+
+    private RetryPolicy createRetryPolicy(String retryTopic, String deadLetterTopic) {
+        return new RetryPolicy(2, Duration.ofMillis(1), Duration.ofMillis(1), retryTopic, 3,
+                Duration.ofMillis(1000), Duration.ofMillis(1000), deadLetterTopic);
+    }
+
+    private String header(RecordHeaders headers, String key) {
+        return new String(headers.lastHeader(key).value(), StandardCharsets.UTF_8);
+    }
+
+    private ProcessingLanes createLanes(Map<String, Integer> limits) {
+        return new ProcessingLanes(limits, 10, meterRegistry);
+    }
+
+    private AdaptivePollTimeout createPollTimeout() {
+        return new AdaptivePollTimeout(Duration.ofMillis(100), Duration.ofMillis(250));
     }
 
     private List<Message> createTestMessageList() {
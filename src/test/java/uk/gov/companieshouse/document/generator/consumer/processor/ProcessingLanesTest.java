@@ -0,0 +1,71 @@
+package uk.gov.companieshouse.document.generator.consumer.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.ProcessingLanes;
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.ProcessingLanes.Lane;
+
+public class ProcessingLanesTest {
+
+    @Test
+    @DisplayName("Test each configured document type gets its own lane, and every other type the default lane")
+    void testLaneForDocumentType() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ProcessingLanes lanes = new ProcessingLanes(ProcessingLanes.parse(" ACCOUNTS:5, CONFIRMATION_STATEMENT:20"),
+                100, meterRegistry);
+
+        assertEquals(List.of("ACCOUNTS", "CONFIRMATION_STATEMENT", ProcessingLanes.DEFAULT_LANE),
+                lanes.getLanes().stream().map(Lane::getName).toList());
+        assertEquals(5, lanes.laneFor("ACCOUNTS").getLimit());
+        assertSame(lanes.getDefaultLane(), lanes.laneFor("INCORPORATION"));
+        assertSame(lanes.getDefaultLane(), lanes.laneFor(null));
+
+        Lane accounts = lanes.laneFor("ACCOUNTS");
+        accounts.queued();
+        assertTrue(accounts.tryAcquire());
+        accounts.dispatched(System.nanoTime());
+
+        assertEquals(1.0, meterRegistry.get(ProcessingLanes.LANE_IN_FLIGHT_METRIC).tag("lane", "ACCOUNTS")
+                .gauge().value());
+        assertEquals(0.0, meterRegistry.get(ProcessingLanes.LANE_QUEUED_METRIC).tag("lane", "ACCOUNTS")
+                .gauge().value());
+    }
+
+    @Test
+    @DisplayName("Test a lane has no more capacity once its limit is reached")
+    void testLaneLimit() {
+        Lane lane = new ProcessingLanes(Map.of("ACCOUNTS", 1), 100, new SimpleMeterRegistry()).laneFor("ACCOUNTS");
+
+        assertTrue(lane.tryAcquire());
+        assertFalse(lane.tryAcquire());
+
+        lane.release();
+        assertTrue(lane.tryAcquire());
+    }
+
+    @Test
+    @DisplayName("Test no lanes are configured by default")
+    void testParseEmpty() {
+        assertTrue(ProcessingLanes.parse("").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test lanes without a valid limit, or configured twice, are rejected")
+    void testParseInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> ProcessingLanes.parse("ACCOUNTS"));
+        assertThrows(IllegalArgumentException.class, () -> ProcessingLanes.parse("ACCOUNTS:0"));
+        assertThrows(IllegalArgumentException.class, () -> ProcessingLanes.parse(":5"));
+        assertThrows(IllegalArgumentException.class, () -> ProcessingLanes.parse("default:5"));
+        assertThrows(IllegalArgumentException.class, () -> ProcessingLanes.parse("ACCOUNTS:5,ACCOUNTS:10"));
+    }
+}
@@ -0,0 +1,74 @@
+package uk.gov.companieshouse.document.generator.consumer.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.companieshouse.document.generator.consumer.processor.impl.RetryPolicy;
+
+public class RetryPolicyTest {
+
+    private final RetryPolicy retryPolicy = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofMillis(1000),
+            "render-submitted-data-document-retry", 2, Duration.ofSeconds(30), Duration.ofMinutes(10));
+
+    @Test
+    @DisplayName("Test requests are retried in place until the maximum attempts have been made")
+    void testRetriesInPlaceUntilMaxAttempts() {
+        assertTrue(retryPolicy.shouldRetry(1));
+        assertTrue(retryPolicy.shouldRetry(2));
+        assertFalse(retryPolicy.shouldRetry(3));
+    }
+
+    @Test
+    @DisplayName("Test the backoff doubles with each attempt, jittered between half and all of it, up to the maximum")
+    void testBackoffGrowsExponentiallyWithJitter() {
+        for (int i = 0; i < 100; i++) {
+            assertBetween(50, 100, retryPolicy.backoff(1));
+            assertBetween(100, 200, retryPolicy.backoff(2));
+            assertBetween(400, 800, retryPolicy.backoff(4));
+            assertBetween(500, 1000, retryPolicy.backoff(10));
+            assertBetween(500, 1000, retryPolicy.backoff(100));
+        }
+    }
+
+    @Test
+    @DisplayName("Test requests are sent to the retry topic until its maximum attempts have been made")
+    void testRetryLaterUntilMaxRetryTopicAttempts() {
+        assertTrue(retryPolicy.isRetryTopicEnabled());
+        assertTrue(retryPolicy.shouldRetryLater(0));
+        assertTrue(retryPolicy.shouldRetryLater(1));
+        assertFalse(retryPolicy.shouldRetryLater(2));
+
+        assertBetween(15000, 30000, retryPolicy.retryTopicDelay(1));
+        assertBetween(300000, 600000, retryPolicy.retryTopicDelay(20));
+    }
+
+    @Test
+    @DisplayName("Test no retries are made by the policy without retries")
+    void testNoRetries() {
+        RetryPolicy noRetries = RetryPolicy.noRetries();
+
+        assertFalse(noRetries.shouldRetry(1));
+        assertFalse(noRetries.isRetryTopicEnabled());
+        assertFalse(noRetries.shouldRetryLater(0));
+        assertEquals(Duration.ZERO, noRetries.backoff(1));
+    }
+
+    @Test
+    @DisplayName("Test at least one attempt is required")
+    void testRejectsZeroAttempts() {
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(0, Duration.ZERO, Duration.ZERO, null, 0,
+                Duration.ZERO, Duration.ZERO));
+    }
+
+    private static void assertBetween(long minMillis, long maxMillis, Duration actual) {
+        assertTrue(actual.toMillis() >= minMillis && actual.toMillis() <= maxMillis,
+                "Expected between " + minMillis + " and " + maxMillis + " ms but was " + actual.toMillis());
+    }
+}
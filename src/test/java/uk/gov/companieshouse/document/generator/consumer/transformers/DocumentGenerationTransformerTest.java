@@ -3,6 +3,10 @@ package uk.gov.companieshouse.document.generator.consumer.transformers;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -76,6 +80,20 @@ public class DocumentGenerationTransformerTest {
         assertEquals(DESCRIPTION_VALUE, descriptionValues.get(DESCRIPTION_KEY));
     }
 
+    @Test
+    @DisplayName("Test the document created date is the current day, formatted again once the day changes")
+    public void testDocumentCreatedAtFollowsClock() {
+        MutableClock clock = new MutableClock(Instant.parse("2024-03-31T23:59:59.999Z"));
+        transformer = new DocumentGenerationTransformer(clock);
+
+        assertEquals("2024-03-31", transformer.transformGenerationCompleted(createRenderDocument(), createResponse())
+                .getDocumentCreatedAt());
+
+        clock.instant = Instant.parse("2024-04-01T00:00:00Z");
+        assertEquals("2024-04-01", transformer.transformGenerationCompleted(createRenderDocument(), createResponse())
+                .getDocumentCreatedAt());
+    }
+
     private RenderSubmittedDataDocument createRenderDocument() {
         RenderSubmittedDataDocument renderSubmittedDataDocument = new RenderSubmittedDataDocument();
         renderSubmittedDataDocument.setId(ID);
@@ -100,4 +118,28 @@ public class DocumentGenerationTransformerTest {
 
         return response;
     }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
 }